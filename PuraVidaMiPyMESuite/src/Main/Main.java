@@ -29,17 +29,25 @@ public class Main extends JFrame {
 
         try {
             // Inicializar servicios
-            RepositorioCSV repoCSV = new RepositorioCSV();
+            AlmacenInventario almacen = FabricaAlmacenes.crearAlmacenConfigurado(); // -Dpuravida.almacen=csv|binario|registros|memoria
             ClienteRepositorio repoCliente = new ClienteRepositorio();
-            Catalogo catalogo = new Catalogo(repoCSV);
+            Catalogo catalogo = new Catalogo(almacen, 2000, 50); // Escritura diferida
             ClienteService clienteService = new ClienteService(repoCliente);
             FabricaPagos fabricaPagos = new FabricaPagos();
-            GestionOrdenes gestionOrdenes = new GestionOrdenes(catalogo, fabricaPagos);
+            RegistroOrdenes registroOrdenes = new RegistroOrdenes(); // data/ordenes
+            GestionOrdenes gestionOrdenes = new GestionOrdenes(catalogo, fabricaPagos, registroOrdenes);
             AnalisisService analisisService = new AnalisisService(
                 catalogo.getProductos(),
                 clienteService.obtenerTodos(),
-                new java.util.ArrayList<>() // Puedes cargar órdenes si las tienes
+                new java.util.ArrayList<>() // El historial se reproduce desde el registro
             );
+            analisisService.cargarHistorial(registroOrdenes);
+            registroOrdenes.agregarOyente(analisisService::registrarOrden);
+
+            // Respaldos incrementales en segundo plano (uno al iniciar y luego cada 30 minutos)
+            data.backups respaldos = new data.backups();
+            respaldos.respaldarEnSegundoPlano();
+            respaldos.iniciar(30, java.util.concurrent.TimeUnit.MINUTES);
 
             // Pestañas
             JTabbedPane tab = new JTabbedPane();
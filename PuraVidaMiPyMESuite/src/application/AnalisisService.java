@@ -7,7 +7,9 @@ import domain.Producto;
 import domain.Cliente;
 import domain.Orden;
 import domain.ItemOrden;
+import infrastructure.RegistroOrdenes;
 import workers.FidelizacionWorker;  
+import java.io.IOException;
 import java.util.*;
 
 
@@ -26,12 +28,21 @@ import java.util.*;
 /**
  * Servicio de análisis para generar métricas de negocio y ejecutar tareas pesadas.
  * Proporciona un dashboard textual y permite recalcular fidelización en segundo plano.
+ *
+ * Las métricas de ventas se acumulan por orden ({@link #registrarOrden}), así
+ * que el historial completo se puede reproducir desde el registro de órdenes
+ * sin tenerlo en memoria.
  */
 public class AnalisisService {
     private List<Producto> productos;
     private List<Cliente> clientes;
     private List<Orden> ordenes;
 
+    // Acumulados de ventas, protegidos por "this"
+    private final Map<String, Acumulado> ingresosPorProducto = new HashMap<>(); // código -> ingresos
+    private final Map<String, Acumulado> comprasPorCliente = new HashMap<>(); // cédula -> compras
+    private long ordenesRegistradas;
+
     /**
      * Crea un servicio de análisis con los datos actuales.
      * @param productos Lista de productos (puede ser null)
@@ -42,6 +53,34 @@ public class AnalisisService {
         this.productos = new ArrayList<>(productos != null ? productos : new ArrayList<>());
         this.clientes = new ArrayList<>(clientes != null ? clientes : new ArrayList<>());
         this.ordenes = new ArrayList<>(ordenes != null ? ordenes : new ArrayList<>());
+        for (Orden o : this.ordenes) {
+            registrarOrden(o);
+        }
+    }
+
+    /**
+     * Suma una orden a las métricas de ventas (sin guardarla en la lista de órdenes).
+     */
+    public synchronized void registrarOrden(Orden orden) {
+        for (ItemOrden i : orden.getItems()) {
+            Producto p = i.getProducto();
+            ingresosPorProducto.computeIfAbsent(p.getCodigo(), k -> new Acumulado()).sumar(p.getNombre(), i.getTotal());
+        }
+        Cliente c = orden.getCliente();
+        if (c != null) {
+            String clave = c.getCedula() != null ? c.getCedula() : c.getNombre();
+            comprasPorCliente.computeIfAbsent(clave, k -> new Acumulado()).sumar(c.getNombre(), 1);
+        }
+        ordenesRegistradas++;
+    }
+
+    /**
+     * Reproduce todo el registro de órdenes en las métricas, de a una orden por vez.
+     *
+     * @return Cantidad de órdenes reproducidas
+     */
+    public long cargarHistorial(RegistroOrdenes registro) throws IOException {
+        return registro.recorrer(this::registrarOrden);
     }
 
     /**
@@ -54,43 +93,35 @@ public class AnalisisService {
 
         // Top 5 productos por ingresos
         sb.append("TOP 5 PRODUCTOS POR INGRESOS\n");
-        Map<Producto, Double> ingresos = new HashMap<>();
-        for (Orden o : ordenes) {
-            for (ItemOrden i : o.getItems()) {
-                ingresos.merge(i.getProducto(), i.getTotal(), Double::sum);
-            }
+        List<Acumulado> top5;
+        List<Acumulado> frecuentes;
+        synchronized (this) {
+            top5 = ingresosPorProducto.values().stream()
+                    .sorted(Comparator.comparingDouble((Acumulado a) -> a.total).reversed())
+                    .limit(5)
+                    .map(Acumulado::copia)
+                    .toList();
+            frecuentes = comprasPorCliente.values().stream()
+                    .filter(a -> a.total >= 3)
+                    .sorted(Comparator.comparingDouble((Acumulado a) -> a.total).reversed())
+                    .map(Acumulado::copia)
+                    .toList();
         }
-        List<Map.Entry<Producto, Double>> top5 = ingresos.entrySet().stream()
-                .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
-                .limit(5)
-                .toList();
 
         if (top5.isEmpty()) {
             sb.append("No hay ventas registradas.\n");
         } else {
-            top5.forEach(e -> sb.append("• ").append(e.getKey().getNombre())
-                    .append(": $").append(String.format("%.2f", e.getValue())).append("\n"));
+            top5.forEach(a -> sb.append("• ").append(a.nombre)
+                    .append(": $").append(String.format("%.2f", a.total)).append("\n"));
         }
 
         // Clientes frecuentes
         sb.append("\nCLIENTES FRECUENTES (3+ compras)\n");
-        Map<Cliente, Integer> compras = new HashMap<>();
-        for (Orden o : ordenes) {
-            Cliente c = o.getCliente();
-            if (c != null) {
-                compras.merge(c, 1, Integer::sum);
-            }
-        }
-        List<Map.Entry<Cliente, Integer>> frecuentes = compras.entrySet().stream()
-                .filter(e -> e.getValue() >= 3)
-                .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
-                .toList();
-
         if (frecuentes.isEmpty()) {
             sb.append("No hay clientes frecuentes.\n");
         } else {
-            frecuentes.forEach(e -> sb.append("• ").append(e.getKey().getNombre())
-                    .append(": ").append(e.getValue()).append(" compras\n"));
+            frecuentes.forEach(a -> sb.append("• ").append(a.nombre)
+                    .append(": ").append((long) a.total).append(" compras\n"));
         }
 
         // Existencias críticas
@@ -135,5 +166,28 @@ public class AnalisisService {
 
     public List<Producto> getProductos() { return new ArrayList<>(productos); }
     public List<Cliente> getClientes() { return new ArrayList<>(clientes); }
+    /** @return Órdenes recibidas en el constructor (las del historial solo se acumulan) */
     public List<Orden> getOrdenes() { return new ArrayList<>(ordenes); }
+    public synchronized long getOrdenesRegistradas() { return ordenesRegistradas; }
+
+    /**
+     * Total acumulado de un producto (ingresos) o de un cliente (compras),
+     * con el último nombre visto.
+     */
+    private static class Acumulado {
+        String nombre;
+        double total;
+
+        void sumar(String nombre, double monto) {
+            this.nombre = nombre;
+            this.total += monto;
+        }
+
+        Acumulado copia() {
+            Acumulado a = new Acumulado();
+            a.nombre = nombre;
+            a.total = total;
+            return a;
+        }
+    }
 }
\ No newline at end of file
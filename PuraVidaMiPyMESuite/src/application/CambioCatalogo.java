@@ -0,0 +1,83 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package application;
+
+import domain.Producto;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Cambio puntual sobre un producto del catálogo, con sus valores anterior y nuevo.
+ * - AGREGADO: solo tiene valor nuevo.
+ * - ACTUALIZADO: tiene valor anterior y nuevo.
+ * - ELIMINADO: solo tiene valor anterior.
+ */
+public class CambioCatalogo {
+    public enum Tipo { AGREGADO, ACTUALIZADO, ELIMINADO }
+
+    private final Tipo tipo;
+    private final Producto anterior;
+    private final Producto nuevo;
+
+    private CambioCatalogo(Tipo tipo, Producto anterior, Producto nuevo) {
+        this.tipo = tipo;
+        this.anterior = anterior;
+        this.nuevo = nuevo;
+    }
+
+    public static CambioCatalogo agregado(Producto nuevo) {
+        return new CambioCatalogo(Tipo.AGREGADO, null, nuevo);
+    }
+
+    public static CambioCatalogo actualizado(Producto anterior, Producto nuevo) {
+        return new CambioCatalogo(Tipo.ACTUALIZADO, anterior, nuevo);
+    }
+
+    public static CambioCatalogo eliminado(Producto anterior) {
+        return new CambioCatalogo(Tipo.ELIMINADO, anterior, null);
+    }
+
+    /**
+     * Combina este cambio con uno posterior sobre el mismo producto.
+     *
+     * @param siguiente Cambio posterior sobre el mismo código
+     * @return Cambio equivalente a ambos, o null si se anulan (alta seguida de baja)
+     */
+    public CambioCatalogo combinar(CambioCatalogo siguiente) {
+        return switch (tipo) {
+            case AGREGADO -> siguiente.tipo == Tipo.ELIMINADO ? null : agregado(siguiente.nuevo);
+            case ACTUALIZADO -> siguiente.tipo == Tipo.ELIMINADO
+                    ? eliminado(anterior)
+                    : actualizado(anterior, siguiente.nuevo);
+            case ELIMINADO -> siguiente.tipo == Tipo.ELIMINADO
+                    ? this
+                    : actualizado(anterior, siguiente.nuevo);
+        };
+    }
+
+    // —————————————————————— GETTERS ——————————————————————
+
+    public Tipo getTipo() { return tipo; }
+    public Producto getAnterior() { return anterior; }
+    public Producto getNuevo() { return nuevo; }
+
+    /**
+     * @return Código del producto afectado
+     */
+    public String getCodigo() {
+        return nuevo != null ? nuevo.getCodigo() : anterior.getCodigo();
+    }
+
+    @Override
+    public String toString() {
+        return "CambioCatalogo{" +
+                "tipo=" + tipo +
+                ", anterior=" + anterior +
+                ", nuevo=" + nuevo +
+                '}';
+    }
+}
@@ -2,94 +2,447 @@ package application;
 import domain.Producto;
 import exception.ProductoDuplicadoException;
 import exception.ProductoNoEncontradoException;
-import infrastructure.RepositorioCSV;
+import exception.StockInsuficienteException;
+import infrastructure.AlmacenInventario;
 import java.io.IOException;
+import java.lang.invoke.VarHandle;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 /**
  * Clase principal del módulo Catálogo & Inventario.
  * Gestiona el alta, edición, baja, búsqueda, ordenamiento y detección de duplicados.
- * Usa RepositorioCSV para persistir en disco.
+ * Usa un AlmacenInventario (CSV, binario o memoria) para persistir.
  */
 /**
  * Gestiona el catálogo de productos: alta, edición, baja, búsqueda y persistencia.
  * Notifica a observadores cuando hay cambios (para refrescar la UI).
+ * Cada mutación se anexa al journal del almacén; la instantánea completa solo se
+ * reescribe al compactar (por umbral de registros o por la escritura diferida).
+ *
+ * Es seguro para hilos: las escrituras se serializan con un único cerrojo y
+ * las lecturas nunca lo toman. Las búsquedas por código usan un mapa
+ * concurrente y el listado completo se publica como una instantánea inmutable,
+ * que se copia la primera vez que se pide tras una mutación (una venta no paga
+ * copiar todo el catálogo). Los productos publicados no se modifican en el lugar:
+ * un cambio de stock reemplaza la instancia (ver {@link #ajustarStock}).
+ * Las consultas sobre los índices y la copia de la instantánea validan que
+ * ninguna mutación los tocó mientras se recorrían (ver {@link #leerIndices}),
+ * así que un lector nunca espera a un escritor que está sincronizando el
+ * journal con el disco.
  */
 public class Catalogo {
-    private List<Producto> productos;
-    private RepositorioCSV repositorio;
+    /**
+     * Indica que la mutación se persiste reescribiendo la instantánea completa
+     * en lugar de anexar al journal (lo usan las importaciones masivas).
+     */
+    private static final RegistroJournal GUARDAR_INSTANTANEA = () -> { };
+    private static final RegistroJournal GUARDAR_AL_FINAL = () -> { };
+
+    /**
+     * Productos en orden de inserción. Solo se modifica con el cerrojo de
+     * escritura; sin él solo se copia, validando la versión de los índices.
+     */
+    private final Map<String, Producto> productos;
+    /**
+     * Índice por código para lecturas sin cerrojo.
+     */
+    private final Map<String, Producto> indiceCodigo;
+    /**
+     * Última instantánea copiada (lista inmutable en orden de inserción) y la
+     * versión de los índices en que se copió. Si la versión ya no es la
+     * vigente, hubo mutaciones desde la copia.
+     */
+    private final AtomicReference<Instantanea> instantanea;
+    private final ReentrantLock cerrojoEscritura = new ReentrantLock();
+    /**
+     * Serializa las compactaciones (escritura diferida, gancho de apagado,
+     * importaciones, umbral del journal...). Se toma antes que el de escritura.
+     */
+    private final ReentrantLock cerrojoCompactacion = new ReentrantLock();
+    /**
+     * Cambios de la mutación en curso. Solo se accede con el cerrojo de escritura.
+     */
+    private List<CambioCatalogo> cambiosEnCurso = new ArrayList<>();
+    private final IndiceTrigramas indiceNombres = new IndiceTrigramas();
+    private final IndiceOrdenado<Double> indicePrecio = new IndiceOrdenado<>(Producto::getPrecio);
+    private final IndiceOrdenado<Integer> indiceStock = new IndiceOrdenado<>(Producto::getStock);
+    /**
+     * Versión de los índices: impar mientras una mutación los modifica. Solo la
+     * cambia quien tiene el cerrojo de escritura.
+     */
+    private volatile long versionIndices;
+    private AlmacenInventario repositorio;
     private List<ObservadorCatalogo> observadores;
+    private PersistenciaDiferida persistenciaDiferida; // null = escritura inmediata
 
-    public Catalogo(RepositorioCSV repositorio) {
+    public Catalogo(AlmacenInventario repositorio) {
         this.repositorio = repositorio;
-        this.productos = new ArrayList<>();
-        this.observadores = new ArrayList<>();
-        cargarDesdeCSV();
+        this.productos = new LinkedHashMap<>();
+        this.indiceCodigo = new ConcurrentHashMap<>();
+        this.instantanea = new AtomicReference<>(new Instantanea(-1, List.of()));
+        this.observadores = new CopyOnWriteArrayList<>();
+        cargarDesdeAlmacen();
+    }
+
+    /**
+     * Crea un catálogo en modo de escritura diferida: las mutaciones se agrupan
+     * y se guardan en un solo archivo por intervalo o cada {@code maxCambios} cambios.
+     *
+     * @param repositorio Almacén del inventario
+     * @param intervaloMs Tiempo máximo (ms) entre un cambio y su guardado
+     * @param maxCambios Cambios acumulados que fuerzan un guardado anticipado
+     */
+    public Catalogo(AlmacenInventario repositorio, long intervaloMs, int maxCambios) {
+        this(repositorio);
+        this.persistenciaDiferida = new PersistenciaDiferida(this::compactar, intervaloMs, maxCambios);
     }
 
     /**
      * Agrega un nuevo producto. Lanza excepción si ya existe.
      */
     public void agregarProducto(Producto producto) throws ProductoDuplicadoException {
-        if (existeProducto(producto.getCodigo())) {
-            throw new ProductoDuplicadoException("Producto duplicado: " + producto.getCodigo());
-        }
-        productos.add(producto);
-        guardarEnCSV();
-        notificarCambio();
+        escribir(() -> {
+            if (productos.containsKey(producto.getCodigo())) {
+                throw new ProductoDuplicadoException("Producto duplicado: " + producto.getCodigo());
+            }
+            validarParaAlmacen(producto);
+            colocar(producto);
+            return () -> repositorio.registrarAlta(producto);
+        });
     }
 
     /**
      * Actualiza un producto existente. Lanza excepción si no se encuentra.
      */
     public void editarProducto(Producto producto) throws ProductoNoEncontradoException {
-        for (int i = 0; i < productos.size(); i++) {
-            if (productos.get(i).getCodigo().equals(producto.getCodigo())) {
-                productos.set(i, producto);
-                guardarEnCSV();
-                notificarCambio();
-                return;
+        escribir(() -> {
+            Producto anterior = productos.get(producto.getCodigo());
+            if (anterior == null) {
+                throw new ProductoNoEncontradoException("Producto no encontrado: " + producto.getCodigo());
+            }
+            validarParaAlmacen(producto);
+            // put sobre una clave existente conserva su posición original
+            colocar(producto);
+            if (soloCambiaStock(anterior, producto)) {
+                return () -> repositorio.registrarStock(producto.getCodigo(), producto.getStock());
             }
+            return () -> repositorio.registrarEdicion(producto);
+        });
+    }
+
+    /**
+     * Suma {@code delta} al stock de un producto de forma atómica (lectura,
+     * validación y escritura bajo el cerrojo de escritura), de modo que dos
+     * hilos que descuentan a la vez nunca pierden una actualización.
+     * El producto se reemplaza por una copia con el nuevo stock.
+     *
+     * @param codigo Código del producto
+     * @param delta Cantidad a sumar (negativa para descontar)
+     * @return Stock resultante
+     * @throws ProductoNoEncontradoException Si el producto no existe
+     * @throws StockInsuficienteException Si el stock quedaría negativo
+     */
+    public int ajustarStock(String codigo, int delta)
+            throws ProductoNoEncontradoException, StockInsuficienteException {
+        int[] resultado = new int[1];
+        try {
+            escribir(() -> {
+                Producto actual = productos.get(codigo);
+                if (actual == null) {
+                    throw new ProductoNoEncontradoException("Producto no encontrado: " + codigo);
+                }
+                int nuevoStock = actual.getStock() + delta;
+                if (nuevoStock < 0) {
+                    throw new StockInsuficienteException(
+                        "Stock insuficiente para " + actual.getNombre() +
+                        ". Disponible: " + actual.getStock() + ", solicitado: " + (-delta)
+                    );
+                }
+                colocar(new Producto(actual.getCodigo(), actual.getNombre(), actual.getPrecio(), nuevoStock));
+                resultado[0] = nuevoStock;
+                return () -> repositorio.registrarStock(codigo, nuevoStock);
+            });
+        } catch (ProductoNoEncontradoException | StockInsuficienteException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e); // La mutación no lanza otras excepciones
+        }
+        return resultado[0];
+    }
+
+    /**
+     * Suma varios deltas de stock como una sola transacción (por ejemplo, todos
+     * los ítems de una orden). Bajo el cerrojo de escritura primero se validan
+     * todos los productos y solo si ninguno quedaría negativo se aplican; si uno
+     * falla no se modifica ninguno. El journal recibe un único registro por lote
+     * y los observadores una sola notificación.
+     *
+     * @param deltas Cantidad a sumar por código (negativa para descontar)
+     * @return Stock resultante por código, en el orden de {@code deltas}
+     * @throws ProductoNoEncontradoException Si algún producto no existe
+     * @throws StockInsuficienteException Si algún stock quedaría negativo
+     */
+    public Map<String, Integer> ajustarStockLote(Map<String, Integer> deltas)
+            throws ProductoNoEncontradoException, StockInsuficienteException {
+        Objects.requireNonNull(deltas, "Los deltas no pueden ser nulos");
+        Map<String, Integer> resultado = new LinkedHashMap<>(deltas.size() * 2);
+        if (deltas.isEmpty()) {
+            return resultado;
+        }
+        try {
+            escribir(() -> {
+                // 1. Validar todo antes de tocar nada
+                for (Map.Entry<String, Integer> e : deltas.entrySet()) {
+                    Producto actual = productos.get(e.getKey());
+                    if (actual == null) {
+                        throw new ProductoNoEncontradoException("Producto no encontrado: " + e.getKey());
+                    }
+                    int nuevoStock = actual.getStock() + e.getValue();
+                    if (nuevoStock < 0) {
+                        throw new StockInsuficienteException(
+                            "Stock insuficiente para " + actual.getNombre() +
+                            ". Disponible: " + actual.getStock() + ", solicitado: " + (-e.getValue())
+                        );
+                    }
+                    resultado.put(e.getKey(), nuevoStock);
+                }
+                // 2. Aplicar (no puede fallar: se sigue bajo el mismo cerrojo)
+                for (Map.Entry<String, Integer> e : resultado.entrySet()) {
+                    Producto actual = productos.get(e.getKey());
+                    colocar(new Producto(actual.getCodigo(), actual.getNombre(), actual.getPrecio(), e.getValue()));
+                }
+                Map<String, Integer> stocks = Collections.unmodifiableMap(resultado);
+                return () -> repositorio.registrarStocks(stocks);
+            });
+        } catch (ProductoNoEncontradoException | StockInsuficienteException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e); // La mutación no lanza otras excepciones
+        }
+        return resultado;
+    }
+
+    /**
+     * Agrega un lote de productos nuevos. Todo el lote se valida contra el índice
+     * (y contra sí mismo) antes de aplicarse; las filas inválidas o duplicadas se
+     * rechazan sin afectar a las demás. Se guarda una sola vez y se notifica
+     * una sola vez a los observadores.
+     *
+     * @param lote Productos a agregar
+     * @return Cantidad de filas aplicadas y detalle de rechazos
+     */
+    public ResultadoImportacion agregarProductos(Collection<Producto> lote) {
+        return importar(lote, new HashSet<>(), false, true);
+    }
+
+    /**
+     * Agrega o actualiza (upsert) un lote de productos: los códigos existentes se
+     * reemplazan conservando su posición y los nuevos se agregan al final.
+     * Se guarda una sola vez y se notifica una sola vez a los observadores.
+     *
+     * @param lote Productos a agregar o actualizar
+     * @return Cantidad de filas aplicadas y detalle de rechazos
+     */
+    public ResultadoImportacion agregarOActualizarProductos(Collection<Producto> lote) {
+        return importar(lote, new HashSet<>(), true, true);
+    }
+
+    /**
+     * Como {@link #agregarOActualizarProductos(Collection)}, pero sin guardar:
+     * para importaciones de muchos lotes que se guardan una sola vez al final
+     * con {@link #guardarImportacion()}.
+     *
+     * @param vistos Códigos ya leídos en los lotes anteriores de la misma
+     *        importación; se rechazan igual que un repetido dentro del lote y
+     *        se les agregan los de este
+     */
+    ResultadoImportacion agregarOActualizarSinGuardar(Collection<Producto> lote, Set<String> vistos) {
+        return importar(lote, vistos, true, false);
+    }
+
+    /**
+     * Guarda la instantánea completa tras una importación por lotes.
+     */
+    void guardarImportacion() {
+        guardarInstantanea();
+    }
+
+    private ResultadoImportacion importar(Collection<Producto> lote, Set<String> vistos,
+            boolean actualizarExistentes, boolean guardar) {
+        Objects.requireNonNull(lote, "El lote no puede ser nulo");
+        ResultadoImportacion resultado = new ResultadoImportacion();
+        escribir(() -> {
+            int fila = 0;
+            for (Producto p : lote) {
+                String motivo = validarParaImportar(p, vistos, actualizarExistentes);
+                if (motivo != null) {
+                    resultado.rechazar(fila, p != null ? p.getCodigo() : null, motivo);
+                } else if (productos.containsKey(p.getCodigo())) {
+                    colocar(p);
+                    resultado.sumarActualizado();
+                } else {
+                    colocar(p);
+                    resultado.sumarAgregado();
+                }
+                fila++;
+            }
+            // Un lote se persiste como una instantánea completa, no como N registros de journal
+            if (resultado.getAceptados() == 0) {
+                return null;
+            }
+            return guardar ? GUARDAR_INSTANTANEA : GUARDAR_AL_FINAL;
+        });
+        return resultado;
+    }
+
+    /**
+     * @return Motivo de rechazo, o null si la fila es válida
+     */
+    private String validarParaImportar(Producto p, Set<String> vistos, boolean actualizarExistentes) {
+        if (p == null) {
+            return "Producto nulo";
+        }
+        if (p.getCodigo() == null || p.getCodigo().trim().isEmpty()) {
+            return "Código vacío";
+        }
+        if (!vistos.add(p.getCodigo())) {
+            return "Código repetido en la importación";
+        }
+        if (Double.isNaN(p.getPrecio()) || p.getPrecio() < 0) {
+            return "Precio inválido: " + p.getPrecio();
+        }
+        if (p.getStock() < 0) {
+            return "Stock negativo: " + p.getStock();
+        }
+        if (!actualizarExistentes && productos.containsKey(p.getCodigo())) {
+            return "Producto duplicado: " + p.getCodigo();
+        }
+        return repositorio.validarProducto(p);
+    }
+
+    /**
+     * Rechaza un producto que el almacén no podría guardar (por ejemplo, un
+     * nombre más largo que un registro fijo) antes de tocar el catálogo.
+     *
+     * @throws IllegalArgumentException Con el motivo que da el almacén
+     */
+    private void validarParaAlmacen(Producto producto) {
+        String motivo = repositorio.validarProducto(producto);
+        if (motivo != null) {
+            throw new IllegalArgumentException(motivo);
         }
-        throw new ProductoNoEncontradoException("Producto no encontrado: " + producto.getCodigo());
     }
 
     /**
      * Elimina un producto por su código.
      */
     public void eliminarProducto(String codigo) {
-        boolean eliminado = productos.removeIf(p -> p.getCodigo().equals(codigo));
-        if (eliminado) {
-            guardarEnCSV();
-            notificarCambio();
-        }
+        escribir(() -> {
+            Producto anterior = productos.remove(codigo);
+            if (anterior == null) {
+                return null;
+            }
+            cambiosEnCurso.add(CambioCatalogo.eliminado(anterior));
+            indiceCodigo.remove(codigo);
+            desindexar(codigo);
+            return () -> repositorio.registrarBaja(codigo);
+        });
     }
 
     /**
-     * Busca productos por nombre (búsqueda parcial, insensible a mayúsculas).
+     * Busca productos por nombre (búsqueda parcial, insensible a mayúsculas y tildes).
+     * Usa el índice de trigramas, así que solo revisa los productos candidatos.
      */
     public List<Producto> buscarPorNombre(String nombre) {
-        return productos.stream()
-                .filter(p -> p.getNombre().toLowerCase().contains(nombre.toLowerCase()))
-                .collect(Collectors.toList());
+        return leerIndices(() -> indiceNombres.buscar(nombre));
     }
 
     /**
-     * Devuelve productos ordenados por precio ascendente.
+     * Devuelve productos ordenados por precio ascendente (recorre el índice de precio).
      */
     public List<Producto> ordenarPorPrecioAsc() {
-        return productos.stream()
-                .sorted(Comparator.comparing(Producto::getPrecio))
-                .collect(Collectors.toList());
+        return leerIndices(() -> indicePrecio.ascendente());
     }
 
     /**
-     * Devuelve productos ordenados por stock descendente.
+     * Devuelve productos ordenados por stock descendente (recorre el índice de stock).
      */
     public List<Producto> ordenarPorStockDesc() {
-        return productos.stream()
-                .sorted(Comparator.comparing(Producto::getStock).reversed())
-                .collect(Collectors.toList());
+        return leerIndices(() -> indiceStock.descendente());
+    }
+
+    /**
+     * Devuelve los productos con precio entre {@code minimo} y {@code maximo} (ambos incluidos),
+     * ordenados por precio.
+     */
+    public List<Producto> buscarPorRangoPrecio(double minimo, double maximo) {
+        return leerIndices(() -> indicePrecio.rango(minimo, maximo));
+    }
+
+    /**
+     * Devuelve una página de los productos con precio entre {@code minimo} y {@code maximo}.
+     * Llegar a la página recorre los productos que se omiten; para avanzar
+     * muchas páginas conviene {@link #buscarPorRangoPrecioDespuesDe}.
+     *
+     * @param pagina Número de página, empezando en 1
+     * @param tamanoPagina Productos por página
+     */
+    public List<Producto> buscarPorRangoPrecio(double minimo, double maximo, int pagina, int tamanoPagina) {
+        validarPagina(pagina, tamanoPagina);
+        int saltar = desplazamiento(pagina, tamanoPagina);
+        return leerIndices(() -> indicePrecio.rango(minimo, maximo, saltar, tamanoPagina));
+    }
+
+    /**
+     * Devuelve la página que sigue a {@code ultimo} entre los productos con
+     * precio entre {@code minimo} y {@code maximo}, sin recorrer las anteriores.
+     *
+     * @param ultimo Último producto de la página anterior, o null para la primera
+     * @param tamanoPagina Productos por página
+     */
+    public List<Producto> buscarPorRangoPrecioDespuesDe(double minimo, double maximo, Producto ultimo,
+            int tamanoPagina) {
+        validarPagina(1, tamanoPagina);
+        return leerIndices(() -> indicePrecio.rango(minimo, maximo, ultimo, tamanoPagina));
+    }
+
+    /**
+     * Devuelve los productos con stock entre {@code minimo} y {@code maximo} (ambos incluidos),
+     * ordenados por stock.
+     */
+    public List<Producto> buscarPorRangoStock(int minimo, int maximo) {
+        return leerIndices(() -> indiceStock.rango(minimo, maximo));
+    }
+
+    /**
+     * Devuelve una página de los productos con stock menor que {@code limite},
+     * ordenados de menor a mayor stock (ej: existencias críticas). Llegar a la
+     * página recorre los productos que se omiten; para avanzar muchas páginas
+     * conviene {@link #buscarStockMenorQueDespuesDe}.
+     *
+     * @param pagina Número de página, empezando en 1
+     * @param tamanoPagina Productos por página
+     */
+    public List<Producto> buscarStockMenorQue(int limite, int pagina, int tamanoPagina) {
+        validarPagina(pagina, tamanoPagina);
+        int saltar = desplazamiento(pagina, tamanoPagina);
+        return leerIndices(() -> indiceStock.menoresQue(limite, saltar, tamanoPagina));
+    }
+
+    /**
+     * Devuelve la página que sigue a {@code ultimo} entre los productos con
+     * stock menor que {@code limite}, sin recorrer las anteriores.
+     *
+     * @param ultimo Último producto de la página anterior, o null para la primera
+     * @param tamanoPagina Productos por página
+     */
+    public List<Producto> buscarStockMenorQueDespuesDe(int limite, Producto ultimo, int tamanoPagina) {
+        validarPagina(1, tamanoPagina);
+        return leerIndices(() -> indiceStock.menoresQue(limite, ultimo, tamanoPagina));
     }
 
     /**
@@ -97,7 +450,7 @@ public class Catalogo {
      */
     public boolean tieneDuplicados() {
         Set<String> codigos = new HashSet<>();
-        for (Producto p : productos) {
+        for (Producto p : getInstantanea()) {
             if (!codigos.add(p.getCodigo())) {
                 return true;
             }
@@ -106,11 +459,36 @@ public class Catalogo {
     }
 
     /**
-     * Carga los productos desde el archivo CSV.
+     * Carga los productos desde el almacén y reproduce encima los cambios
+     * del journal posteriores a la última instantánea.
      */
-    private void cargarDesdeCSV() {
+    private void cargarDesdeAlmacen() {
         try {
-            productos = repositorio.leerProductos();
+            Map<String, Producto> cargados = new LinkedHashMap<>();
+            for (Producto p : repositorio.leerProductos()) {
+                if (cargados.putIfAbsent(p.getCodigo(), p) != null) {
+                    System.err.println("Código duplicado ignorado al cargar inventario: " + p.getCodigo());
+                }
+            }
+            int reproducidos = repositorio.reproducirJournal(cargados);
+
+            cerrojoEscritura.lock();
+            versionIndices++;
+            try {
+                productos.clear();
+                productos.putAll(cargados);
+                indiceCodigo.clear();
+                indiceCodigo.putAll(cargados);
+                indiceNombres.reconstruir(cargados.values());
+                indicePrecio.reconstruir(cargados.values());
+                indiceStock.reconstruir(cargados.values());
+            } finally {
+                versionIndices++;
+                cerrojoEscritura.unlock();
+            }
+            if (reproducidos > 0) {
+                compactar();
+            }
         } catch (IOException e) {
             System.err.println("Error de E/S al cargar inventario: " + e.getMessage());
         } catch (Exception e) {
@@ -119,11 +497,145 @@ public class Catalogo {
     }
 
     /**
-     * Guarda todos los productos en el archivo CSV.
+     * Aplica una mutación bajo el cerrojo de escritura: la mutación modifica
+     * las estructuras y devuelve su registro de journal (o null si no cambió nada).
+     * El cambio de versión invalida la instantánea; luego se anexa el registro
+     * en el mismo orden en que se aplicaron los cambios y, ya fuera del cerrojo, se compacta si hace
+     * falta y se notifica a los observadores con los cambios concretos.
      */
-    private void guardarEnCSV() {
+    private <E extends Exception> void escribir(Mutacion<E> mutacion) throws E {
+        boolean compactarAhora;
+        List<CambioCatalogo> cambios;
+        cerrojoEscritura.lock();
         try {
-            repositorio.guardarProductos(productos);
+            cambiosEnCurso = new ArrayList<>();
+            RegistroJournal registro;
+            versionIndices++; // Impar: los lectores de índices reintentan
+            try {
+                registro = mutacion.aplicar();
+            } finally {
+                versionIndices++;
+            }
+            if (registro == null) {
+                return;
+            }
+            compactarAhora = persistirCambio(registro);
+            cambios = Collections.unmodifiableList(cambiosEnCurso);
+        } finally {
+            cerrojoEscritura.unlock();
+        }
+        if (compactarAhora) {
+            guardarInstantanea();
+        }
+        notificarCambio(cambios);
+    }
+
+    /**
+     * Consulta los índices sin cerrojo, al estilo de un seqlock: si una mutación
+     * los tocó durante el recorrido (la versión cambió o era impar), se repite.
+     * El resultado siempre corresponde a un único estado del catálogo (sin
+     * productos repetidos ni fuera de orden). El lector nunca toma el cerrojo de
+     * escritura: tras varios choques seguidos cede el procesador en lugar de
+     * esperar a que el escritor termine de sincronizar el journal.
+     */
+    private <T> T leerIndices(Supplier<T> consulta) {
+        for (int intento = 0; ; intento++) {
+            long version = versionIndices;
+            if ((version & 1) == 0) {
+                T resultado = consultarSinCerrojo(consulta);
+                VarHandle.acquireFence(); // Las lecturas de la consulta no pasan a después de revalidar
+                if (resultado != null && versionIndices == version) {
+                    return resultado;
+                }
+            }
+            esperarEscritor(intento);
+        }
+    }
+
+    /**
+     * Ejecuta una consulta que puede cruzarse con una mutación. Un recorrido
+     * cruzado puede fallar a medio camino; en ese caso se devuelve null y
+     * quien llama lo descarta al ver que la versión cambió.
+     */
+    private static <T> T consultarSinCerrojo(Supplier<T> consulta) {
+        try {
+            return consulta.get();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void esperarEscritor(int intento) {
+        if (intento < 4) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Inserta o reemplaza un producto en el almacén y en todos los índices.
+     */
+    private void colocar(Producto producto) {
+        Producto anterior = productos.put(producto.getCodigo(), producto);
+        cambiosEnCurso.add(anterior == null
+                ? CambioCatalogo.agregado(producto)
+                : CambioCatalogo.actualizado(anterior, producto));
+        indiceCodigo.put(producto.getCodigo(), producto);
+        indexar(producto);
+    }
+
+    /**
+     * Instantánea vigente, copiándola si hace falta. Se llama con el cerrojo de
+     * escritura tomado, así que la versión no cambia mientras se copia.
+     */
+    private List<Producto> instantaneaActual() {
+        Instantanea actual = instantanea.get();
+        if (actual.version == versionIndices) {
+            return actual.productos;
+        }
+        Instantanea nueva = new Instantanea(versionIndices, List.copyOf(productos.values()));
+        instantanea.set(nueva);
+        return nueva.productos;
+    }
+
+    /**
+     * Persiste el cambio recién aplicado anexándolo al journal. La instantánea
+     * completa se reescribe después: al superar el umbral del journal o, en modo de
+     * escritura diferida, cuando el hilo de fondo agrupa los cambios.
+     *
+     * @return true si hay que compactar el journal en la instantánea
+     */
+    private boolean persistirCambio(RegistroJournal registro) {
+        if (registro == GUARDAR_INSTANTANEA) {
+            return true;
+        }
+        if (registro == GUARDAR_AL_FINAL) {
+            return false; // Lo guarda quien importa, al terminar todos los lotes
+        }
+        try {
+            registro.anexar();
+        } catch (IOException e) {
+            // Sin journal no hay garantía de durabilidad: se guarda el inventario completo
+            System.err.println("Error de E/S al anexar al journal: " + e.getMessage());
+            return true;
+        }
+        if (repositorio.escribeEnSitio()) {
+            return false; // El almacén ya guardó el cambio en su lugar
+        }
+        if (persistenciaDiferida != null) {
+            persistenciaDiferida.marcarCambio();
+            return false;
+        }
+        return repositorio.necesitaCompactacion();
+    }
+
+    /**
+     * Guarda todos los productos en el almacén.
+     */
+    private void guardarInstantanea() {
+        try {
+            compactar();
         } catch (IOException e) {
             System.err.println("Error de E/S al guardar inventario: " + e.getMessage());
         } catch (Exception e) {
@@ -131,6 +643,99 @@ public class Catalogo {
         }
     }
 
+    /**
+     * Compacta el journal en una nueva instantánea. La copia de productos y
+     * la rotación del journal se hacen juntas, bajo el mismo cerrojo que las
+     * mutaciones, para que ningún registro quede fuera de ambas.
+     *
+     * Rotar, guardar y descartar el journal rotado ocurren bajo el cerrojo de
+     * compactación: dos compactaciones nunca se intercalan, así que una copia
+     * vieja no puede guardarse después de una nueva ni borrar su journal.
+     */
+    private void compactar() throws IOException {
+        cerrojoCompactacion.lock();
+        try {
+            List<Producto> copia;
+            cerrojoEscritura.lock();
+            try {
+                copia = instantaneaActual();
+                repositorio.rotarJournal();
+            } finally {
+                cerrojoEscritura.unlock();
+            }
+            repositorio.guardarProductos(copia);
+        } finally {
+            cerrojoCompactacion.unlock();
+        }
+    }
+
+    /**
+     * Agrega o reubica un producto en los índices secundarios.
+     */
+    private void indexar(Producto producto) {
+        indiceNombres.agregar(producto);
+        indicePrecio.agregar(producto);
+        indiceStock.agregar(producto);
+    }
+
+    /**
+     * Quita un producto de los índices secundarios.
+     */
+    private void desindexar(String codigo) {
+        indiceNombres.eliminar(codigo);
+        indicePrecio.eliminar(codigo);
+        indiceStock.eliminar(codigo);
+    }
+
+    private void validarPagina(int pagina, int tamanoPagina) {
+        if (pagina < 1) {
+            throw new IllegalArgumentException("La página debe ser mayor o igual a 1");
+        }
+        if (tamanoPagina <= 0) {
+            throw new IllegalArgumentException("El tamaño de página debe ser mayor a cero");
+        }
+    }
+
+    /**
+     * Productos a saltar para llegar a la página. Se calcula en long: una página
+     * más allá de {@code Integer.MAX_VALUE} productos simplemente queda vacía.
+     */
+    private static int desplazamiento(int pagina, int tamanoPagina) {
+        return (int) Math.min((long) (pagina - 1) * tamanoPagina, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Un producto que conserva nombre y precio solo necesita un registro de stock.
+     */
+    private boolean soloCambiaStock(Producto anterior, Producto nuevo) {
+        return anterior == nuevo
+                || (Objects.equals(anterior.getNombre(), nuevo.getNombre())
+                    && anterior.getPrecio() == nuevo.getPrecio());
+    }
+
+    /**
+     * Fuerza el guardado de los cambios pendientes (solo tiene efecto en modo diferido).
+     *
+     * @throws Exception Si el guardado falla
+     */
+    public void flush() throws Exception {
+        if (persistenciaDiferida != null) {
+            persistenciaDiferida.flush();
+        }
+    }
+
+    /**
+     * Detiene la escritura diferida guardando antes los cambios pendientes.
+     *
+     * @throws Exception Si el último guardado falla
+     */
+    public void cerrar() throws Exception {
+        if (persistenciaDiferida != null) {
+            persistenciaDiferida.cerrar();
+        }
+        repositorio.cerrarJournal();
+    }
+
     /**
      * Registra un observador para notificar cambios en el catálogo.
      */
@@ -139,11 +744,12 @@ public class Catalogo {
     }
 
     /**
-     * Notifica a todos los observadores que el catálogo cambió.
+     * Notifica a todos los observadores los cambios de una mutación.
+     * Se invoca fuera del cerrojo de escritura.
      */
-    private void notificarCambio() {
+    private void notificarCambio(List<CambioCatalogo> cambios) {
         for (ObservadorCatalogo obs : observadores) {
-            obs.catalogoActualizado();
+            obs.catalogoCambiado(cambios);
         }
     }
 
@@ -151,23 +757,80 @@ public class Catalogo {
      * Devuelve una copia de la lista de productos.
      */
     public List<Producto> getProductos() {
-        return new ArrayList<>(productos);
+        return new ArrayList<>(getInstantanea());
+    }
+
+    /**
+     * Devuelve la instantánea inmutable vigente, sin copiarla salvo la primera
+     * vez tras una mutación. Nunca toma el cerrojo de escritura: la copia se
+     * valida como las consultas de índices ({@link #leerIndices}) y se publica
+     * con compareAndSet, así que varios lectores pueden copiar a la vez y una
+     * copia vieja nunca reemplaza a una más nueva. Es consistente: refleja el
+     * catálogo completo tras una misma mutación.
+     */
+    public List<Producto> getInstantanea() {
+        for (int intento = 0; ; intento++) {
+            Instantanea actual = instantanea.get();
+            long version = versionIndices;
+            if (actual.version == version) {
+                return actual.productos;
+            }
+            if ((version & 1) == 0) {
+                List<Producto> copia = consultarSinCerrojo(() -> List.copyOf(productos.values()));
+                VarHandle.acquireFence();
+                if (copia != null && versionIndices == version) {
+                    // Si otro lector ya publicó esta versión (o una posterior), el CAS no la pisa
+                    instantanea.compareAndSet(actual, new Instantanea(version, copia));
+                    return copia;
+                }
+            }
+            esperarEscritor(intento);
+        }
     }
 
     /**
      * Verifica si existe un producto con el código dado.
      */
     public boolean existeProducto(String codigo) {
-        return productos.stream().anyMatch(p -> p.getCodigo().equals(codigo));
+        return indiceCodigo.containsKey(codigo);
     }
 
     /**
      * Obtiene un producto por su código, o null si no existe.
      */
     public Producto obtenerPorCodigo(String codigo) {
-        return productos.stream()
-                .filter(p -> p.getCodigo().equals(codigo))
-                .findFirst()
-                .orElse(null);
+        return indiceCodigo.get(codigo);
+    }
+
+    /**
+     * Copia de los productos tomada con los índices en una versión dada.
+     */
+    private static final class Instantanea {
+        final long version;
+        final List<Producto> productos;
+
+        Instantanea(long version, List<Producto> productos) {
+            this.version = version;
+            this.productos = productos;
+        }
+    }
+
+    /**
+     * Mutación aplicada bajo el cerrojo de escritura.
+     */
+    @FunctionalInterface
+    private interface Mutacion<E extends Exception> {
+        /**
+         * @return Registro de journal del cambio, o null si no hubo cambio
+         */
+        RegistroJournal aplicar() throws E;
+    }
+
+    /**
+     * Anexa al journal el registro de una mutación.
+     */
+    @FunctionalInterface
+    private interface RegistroJournal {
+        void anexar() throws IOException;
     }
-}
\ No newline at end of file
+}
@@ -35,15 +35,16 @@ public class ClienteService {
             throw new IllegalArgumentException("La cédula no puede estar vacía");
         }
 
-        // Evitar duplicados
+        // Evitar duplicados (compara índices ciegos, sin descifrar)
+        boolean existe;
         try {
-            Cliente existente = repositorio.buscarPorCedula(cliente.getCedula());
-            if (existente != null) {
-                throw new IllegalArgumentException("Ya existe un cliente con cédula: " + cliente.getCedula());
-            }
+            existe = repositorio.existeCedula(cliente.getCedula());
         } catch (Exception e) {
             throw new RuntimeException("Error al verificar duplicados", e);
         }
+        if (existe) {
+            throw new IllegalArgumentException("Ya existe un cliente con cédula: " + cliente.getCedula());
+        }
 
         try {
             repositorio.guardarCliente(cliente);
@@ -52,6 +53,74 @@ public class ClienteService {
         }
     }
 
+    /**
+     * Registra un lote de clientes nuevos con una sola escritura del archivo.
+     * Las filas sin cédula, repetidas dentro del lote o ya registradas se
+     * rechazan sin afectar a las demás.
+     *
+     * @param clientes Clientes a registrar
+     * @return Cantidad de clientes registrados y detalle de rechazos (el código es la cédula)
+     */
+    public ResultadoImportacion registrarClientes(Collection<Cliente> clientes) {
+        return registrarClientes(clientes, true);
+    }
+
+    /**
+     * Como {@link #registrarClientes(Collection)}, pero sin escribir el archivo
+     * si {@code escribir} es false: para importaciones de muchos lotes que se
+     * guardan una sola vez al final con {@link #guardarImportacion()}.
+     */
+    ResultadoImportacion registrarClientes(Collection<Cliente> clientes, boolean escribir) {
+        Objects.requireNonNull(clientes, "El lote no puede ser nulo");
+        ResultadoImportacion resultado = new ResultadoImportacion();
+        List<Cliente> aceptados = new ArrayList<>(clientes.size());
+        Set<String> vistos = new HashSet<>();
+        int fila = 0;
+        try {
+            for (Cliente c : clientes) {
+                String motivo;
+                if (c == null) {
+                    motivo = "Cliente nulo";
+                } else if (c.getCedula() == null || c.getCedula().trim().isEmpty()) {
+                    motivo = "La cédula no puede estar vacía";
+                } else if (!vistos.add(c.getCedula())) {
+                    motivo = "Cédula repetida dentro del lote";
+                } else if (repositorio.existeCedula(c.getCedula())) {
+                    motivo = "Ya existe un cliente con cédula: " + c.getCedula();
+                } else {
+                    motivo = null;
+                }
+                if (motivo != null) {
+                    resultado.rechazar(fila, c != null ? c.getCedula() : null, motivo);
+                } else {
+                    aceptados.add(c);
+                    resultado.sumarAgregado();
+                }
+                fila++;
+            }
+
+            if (escribir) {
+                repositorio.guardarClientes(aceptados);
+            } else {
+                repositorio.acumularClientes(aceptados);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Error al guardar clientes", e);
+        }
+        return resultado;
+    }
+
+    /**
+     * Escribe los clientes acumulados por una importación por lotes.
+     */
+    void guardarImportacion() {
+        try {
+            repositorio.escribirPendientes();
+        } catch (Exception e) {
+            throw new RuntimeException("Error al guardar clientes", e);
+        }
+    }
+
     /**
      * Actualiza un cliente existente.
      *
@@ -144,6 +213,12 @@ public class ClienteService {
      * @return true si existe, false en caso contrario
      */
     public boolean existeCliente(String cedula) {
-        return buscarPorCedula(cedula) != null;
+        if (cedula == null || cedula.trim().isEmpty()) return false;
+        try {
+            return repositorio.existeCedula(cedula);
+        } catch (Exception e) {
+            System.err.println("Error al verificar cliente: " + e.getMessage());
+            return false;
+        }
     }
 }
\ No newline at end of file
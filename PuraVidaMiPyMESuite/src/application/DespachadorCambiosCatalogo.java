@@ -0,0 +1,111 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package application;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Observador intermedio que agrupa (debounce) las ráfagas de cambios del catálogo.
+ * Acumula los cambios recibidos durante un intervalo (por ejemplo, un cuadro de
+ * pantalla), combina los que afectan al mismo producto y entrega un solo lote
+ * al observador destino mediante el ejecutor indicado.
+ *
+ * Ejemplo para Swing:
+ * <pre>
+ * catalogo.agregarObservador(new DespachadorCambiosCatalogo(panel, 16, SwingUtilities::invokeLater));
+ * </pre>
+ */
+public class DespachadorCambiosCatalogo implements ObservadorCatalogo {
+    private static final ScheduledExecutorService PLANIFICADOR =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread hilo = new Thread(r, "despachador-cambios-catalogo");
+                hilo.setDaemon(true);
+                return hilo;
+            });
+
+    private final ObservadorCatalogo destino;
+    private final long intervaloMs;
+    private final Executor entrega;
+
+    // Protegidos por "this"
+    private Map<String, CambioCatalogo> pendientes = new LinkedHashMap<>();
+    private boolean recargaCompleta;
+    private boolean programado;
+
+    /**
+     * @param destino Observador que recibirá los lotes
+     * @param intervaloMs Ventana de agrupación (16 ms ≈ un cuadro a 60 Hz)
+     * @param entrega Hilo en el que se entrega el lote (ej: SwingUtilities::invokeLater)
+     */
+    public DespachadorCambiosCatalogo(ObservadorCatalogo destino, long intervaloMs, Executor entrega) {
+        this.destino = Objects.requireNonNull(destino, "El observador destino no puede ser nulo");
+        this.entrega = Objects.requireNonNull(entrega, "El ejecutor de entrega no puede ser nulo");
+        if (intervaloMs < 0) {
+            throw new IllegalArgumentException("El intervalo no puede ser negativo");
+        }
+        this.intervaloMs = intervaloMs;
+    }
+
+    /**
+     * Un aviso sin detalle obliga a una recarga completa en el siguiente lote.
+     */
+    @Override
+    public synchronized void catalogoActualizado() {
+        recargaCompleta = true;
+        pendientes.clear();
+        programar();
+    }
+
+    @Override
+    public synchronized void catalogoCambiado(List<CambioCatalogo> cambios) {
+        if (!recargaCompleta) {
+            for (CambioCatalogo cambio : cambios) {
+                String codigo = cambio.getCodigo();
+                CambioCatalogo previo = pendientes.remove(codigo);
+                CambioCatalogo combinado = previo == null ? cambio : previo.combinar(cambio);
+                if (combinado != null) {
+                    pendientes.put(codigo, combinado);
+                }
+            }
+        }
+        programar();
+    }
+
+    private void programar() {
+        if (!programado) {
+            programado = true;
+            PLANIFICADOR.schedule(() -> entrega.execute(this::entregar), intervaloMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void entregar() {
+        List<CambioCatalogo> lote;
+        boolean recargar;
+        synchronized (this) {
+            lote = new ArrayList<>(pendientes.values());
+            recargar = recargaCompleta;
+            pendientes = new LinkedHashMap<>();
+            recargaCompleta = false;
+            programado = false;
+        }
+        if (recargar) {
+            destino.catalogoActualizado();
+        } else if (!lote.isEmpty()) {
+            destino.catalogoCambiado(lote);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package application;
+
+import infrastructure.AlmacenBinario;
+import infrastructure.AlmacenInventario;
+import infrastructure.AlmacenMemoria;
+import infrastructure.AlmacenRegistrosFijos;
+import infrastructure.RepositorioCSV;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Crea el motor de almacenamiento del inventario según su nombre.
+ * El tipo por defecto se toma de la propiedad del sistema {@value #PROPIEDAD}
+ * (ej: {@code -Dpuravida.almacen=binario}); si no está definida se usa CSV.
+ */
+public class FabricaAlmacenes {
+    public static final String PROPIEDAD = "puravida.almacen";
+    private static final String TIPO_POR_DEFECTO = "csv";
+
+    public static AlmacenInventario crearAlmacen(String tipo) {
+        if (tipo == null || tipo.trim().isEmpty()) {
+            throw new IllegalArgumentException("El tipo de almacén no puede ser nulo o vacío.");
+        }
+
+        return switch (tipo.toLowerCase().trim()) {
+            case "csv" -> new RepositorioCSV();
+            case "binario" -> new AlmacenBinario();
+            case "registros" -> new AlmacenRegistrosFijos();
+            case "memoria" -> new AlmacenMemoria();
+            default -> throw new IllegalArgumentException(
+                "Almacén de inventario no válido: '" + tipo + "'. " +
+                "Opciones permitidas: csv, binario, registros, memoria."
+            );
+        };
+    }
+
+    /**
+     * @return El almacén indicado por la propiedad {@value #PROPIEDAD}
+     */
+    public static AlmacenInventario crearAlmacenConfigurado() {
+        return crearAlmacen(System.getProperty(PROPIEDAD, TIPO_POR_DEFECTO));
+    }
+}
@@ -1,16 +1,17 @@
 package application;
 import domain.Producto;
 import exception.ProductoDuplicadoException;
-import infrastructure.ProductoRepositorio;  
+import infrastructure.AlmacenInventario;
 import java.util.*;
 import java.io.*;
 import java.util.stream.Collectors;
 
 public class GestionInventario {
     private List<Producto> productos;
-    private ProductoRepositorio repositorio;  
+    private final IndiceTrigramas indiceNombres = new IndiceTrigramas();
+    private AlmacenInventario repositorio;
 
-    public GestionInventario(ProductoRepositorio repositorio) {  
+    public GestionInventario(AlmacenInventario repositorio) {
         this.repositorio = repositorio;
         this.productos = new ArrayList<>();
         cargarDesdeCSV();
@@ -19,6 +20,7 @@ public class GestionInventario {
     private void cargarDesdeCSV() {
         try {
             productos = repositorio.leerProductos();
+            indiceNombres.reconstruir(productos);
         } catch (IOException e) {
             System.err.println("Error cargando inventario: " + e.getMessage());
         }
@@ -29,15 +31,19 @@ public class GestionInventario {
         if (productos.contains(producto)) {
             throw new ProductoDuplicadoException("Producto duplicado: " + producto.getCodigo());
         }
+        validarParaAlmacen(producto);
         productos.add(producto);
+        indiceNombres.agregar(producto);
         guardarEnCSV();
     }
 
     // Edición
     public void editarProducto(Producto producto) {
+        validarParaAlmacen(producto);
         for (int i = 0; i < productos.size(); i++) {
             if (productos.get(i).getCodigo().equals(producto.getCodigo())) {
                 productos.set(i, producto);
+                indiceNombres.actualizar(producto);
                 guardarEnCSV();
                 return;
             }
@@ -45,19 +51,26 @@ public class GestionInventario {
         throw new RuntimeException("Producto no encontrado: " + producto.getCodigo());
     }
 
+    // Rechaza lo que el almacén no podría guardar, antes de tocar la lista
+    private void validarParaAlmacen(Producto producto) {
+        String motivo = repositorio.validarProducto(producto);
+        if (motivo != null) {
+            throw new IllegalArgumentException(motivo);
+        }
+    }
+
     // Baja
     public void eliminarProducto(String codigo) {
         boolean eliminado = productos.removeIf(p -> p.getCodigo().equals(codigo));
         if (eliminado) {
+            indiceNombres.eliminar(codigo);
             guardarEnCSV();
         }
     }
 
-    // Búsqueda por nombre
+    // Búsqueda por nombre (índice de trigramas, insensible a mayúsculas y tildes)
     public List<Producto> buscarPorNombre(String nombre) {
-        return productos.stream()
-                .filter(p -> p.getNombre().toLowerCase().contains(nombre.toLowerCase()))
-                .collect(Collectors.toList());
+        return indiceNombres.buscar(nombre);
     }
 
     // Ordenar por precio ascendente
@@ -9,8 +9,11 @@ import domain.Cliente;
 import domain.ItemOrden;
 import domain.Orden;
 import domain.Producto;
+import exception.OrdenCobradaException;
 import exception.PagoInvalidoException;
 import exception.StockInsuficienteException;
+import infrastructure.RegistroOrdenes;
+import java.io.IOException;
 import java.util.Objects;
 
 /**
@@ -26,14 +29,30 @@ import java.util.Objects;
  * - Generación de facturas
  * 
  * Usa el patrón Strategy (pago) y colabora con Catalogo y ClienteService.
+ *
+ * Varias terminales pueden usar la misma instancia a la vez: cada ítem
+ * agregado reserva su stock (ver {@link ReservasStock}). La reserva se
+ * confirma antes de cobrar, se revierte si el cobro falla y se libera si la
+ * orden se cancela.
  */
 public class GestionOrdenes {
     private Catalogo catalogo;
     private FabricaPagos fabricaPagos;
+    private RegistroOrdenes registroOrdenes; // null = las órdenes no se guardan
+    private final ReservasStock reservas;
 
     public GestionOrdenes(Catalogo catalogo, FabricaPagos fabricaPagos) {
+        this(catalogo, fabricaPagos, null);
+    }
+
+    /**
+     * @param registroOrdenes Registro donde se anexan las órdenes finalizadas (puede ser null)
+     */
+    public GestionOrdenes(Catalogo catalogo, FabricaPagos fabricaPagos, RegistroOrdenes registroOrdenes) {
         this.catalogo = Objects.requireNonNull(catalogo, "El catálogo no puede ser nulo");
         this.fabricaPagos = Objects.requireNonNull(fabricaPagos, "La fábrica de pagos no puede ser nula");
+        this.registroOrdenes = registroOrdenes;
+        this.reservas = new ReservasStock(catalogo);
     }
 
     /**
@@ -57,12 +76,13 @@ public class GestionOrdenes {
     }
 
     /**
-     * Agrega un ítem a la orden verificando stock disponible.
+     * Agrega un ítem a la orden reservando su stock hasta que la orden se
+     * pague o se cancele.
      * 
      * @param orden Orden a la que se agregará el ítem
      * @param codigoProducto Código del producto (buscado en el catálogo)
      * @param cantidad Cantidad a agregar
-     * @throws StockInsuficienteException Si no hay suficiente stock
+     * @throws StockInsuficienteException Si no hay suficiente stock sin reservar
      * @throws IllegalArgumentException Si el producto no existe
      */
     public void agregarItemAOrden(Orden orden, String codigoProducto, int cantidad) 
@@ -77,7 +97,65 @@ public class GestionOrdenes {
             throw new IllegalArgumentException("Producto no encontrado: " + codigoProducto);
         }
 
-        orden.agregarItem(producto, cantidad);
+        reservas.reservar(orden, codigoProducto, cantidad);
+        try {
+            orden.agregarItem(producto, cantidad);
+        } catch (StockInsuficienteException | RuntimeException e) {
+            reservas.liberar(orden, codigoProducto, cantidad);
+            throw e;
+        }
+    }
+
+    /**
+     * Cambia la cantidad de un ítem de la orden, reservando las unidades que
+     * se suman o liberando las que se quitan.
+     *
+     * @param orden Orden que contiene el ítem
+     * @param codigoProducto Código del producto del ítem
+     * @param cantidad Nueva cantidad (mayor a cero)
+     * @throws StockInsuficienteException Si no hay suficiente stock sin reservar
+     * @throws IllegalArgumentException Si el producto no existe o no está en la orden
+     */
+    public void cambiarCantidadItem(Orden orden, String codigoProducto, int cantidad)
+            throws StockInsuficienteException, IllegalArgumentException {
+        Objects.requireNonNull(orden, "La orden no puede ser nula");
+        if (cantidad <= 0) {
+            throw new IllegalArgumentException("La cantidad debe ser mayor a cero");
+        }
+        ItemOrden item = orden.getItem(codigoProducto);
+        if (item == null) {
+            throw new IllegalArgumentException("El producto no está en la orden: " + codigoProducto);
+        }
+        Producto producto = catalogo.obtenerPorCodigo(codigoProducto);
+        if (producto == null) {
+            throw new IllegalArgumentException("Producto no encontrado: " + codigoProducto);
+        }
+
+        int diferencia = cantidad - item.getCantidad();
+        if (diferencia > 0) {
+            reservas.reservar(orden, codigoProducto, diferencia);
+        }
+        try {
+            orden.cambiarCantidad(producto, cantidad);
+        } catch (StockInsuficienteException | RuntimeException e) {
+            if (diferencia > 0) {
+                reservas.liberar(orden, codigoProducto, diferencia);
+            }
+            throw e;
+        }
+        if (diferencia < 0) {
+            reservas.liberar(orden, codigoProducto, -diferencia);
+        }
+    }
+
+    /**
+     * Descarta una orden abierta y libera el stock que tenía reservado.
+     *
+     * @param orden Orden que no se va a finalizar
+     */
+    public void cancelarOrden(Orden orden) {
+        Objects.requireNonNull(orden, "La orden no puede ser nula");
+        reservas.liberar(orden);
     }
 
     /**
@@ -106,11 +184,22 @@ public class GestionOrdenes {
     }
 
     /**
-     * Finaliza la orden: procesa pago, reduce stock y genera factura.
+     * Finaliza la orden: aparta su id en el registro, confirma sus reservas
+     * reduciendo el stock, procesa el pago, la anexa al registro de órdenes y
+     * genera la factura. El stock se descuenta antes de cobrar, así nunca se
+     * cobra una orden cuyo stock no se pudo descontar. Si la confirmación o el
+     * pago fallan, el stock queda como estaba, el id vuelve a quedar libre y la
+     * orden conserva sus reservas para reintentar o cancelarla
+     * ({@link #cancelarOrden}).
+     *
+     * Una vez cobrada, la orden no se deshace: si no se puede registrar o
+     * generar su factura se lanza {@link OrdenCobradaException}, el id queda
+     * tomado y el cierre se completa con {@link #reintentarCierre}.
      * 
      * @param orden Orden a finalizar
      * @param rutaFactura Ruta donde se guardará la factura (ej: "facturas/ORD-001.txt")
-     * @throws Exception Si ocurre cualquier error (pago, stock, escritura)
+     * @throws OrdenCobradaException Si la orden se cobró pero falta registrarla o facturarla
+     * @throws Exception Si ocurre cualquier error antes del cobro (pago, stock)
      */
     public void finalizarOrden(Orden orden, String rutaFactura) throws Exception {
         Objects.requireNonNull(orden, "La orden no puede ser nula");
@@ -122,21 +211,71 @@ public class GestionOrdenes {
         if (orden.getItems().isEmpty()) {
             throw new IllegalStateException("La orden no tiene ítems");
         }
+        // Apartar el id antes de cobrar: otra terminal con el mismo id no puede cobrar a la vez
+        if (registroOrdenes != null && !registroOrdenes.reservarId(orden.getId())) {
+            throw new IllegalArgumentException("Ya existe una orden con id: " + orden.getId());
+        }
+        try {
+            cobrarOrden(orden);
+        } catch (Exception e) {
+            if (registroOrdenes != null) {
+                registroOrdenes.liberarId(orden.getId());
+            }
+            throw e;
+        }
 
-        // 2. Procesar pago
-        if (!procesarPago(orden)) {
-            throw new PagoInvalidoException("El pago no pudo procesarse");
+        // Desde aquí la orden está cobrada: el id ya no se libera
+        reintentarCierre(orden, rutaFactura);
+    }
+
+    /**
+     * Completa el cierre de una orden ya cobrada: la anexa al registro si
+     * todavía no está y genera su factura. Se usa después de una
+     * {@link OrdenCobradaException}; repetirlo no vuelve a cobrar ni a
+     * registrar la orden.
+     *
+     * @throws OrdenCobradaException Si el registro o la factura vuelven a fallar
+     */
+    public void reintentarCierre(Orden orden, String rutaFactura) throws OrdenCobradaException {
+        // 4. Guardar en el historial primero: es lo que prueba que la orden se cobró
+        if (registroOrdenes != null && !registroOrdenes.contiene(orden.getId())) {
+            try {
+                registroOrdenes.anexar(orden);
+            } catch (IOException | RuntimeException e) {
+                throw new OrdenCobradaException(orden.getId(), "Orden " + orden.getId()
+                        + " cobrada pero sin registrar; reintente el cierre: " + e.getMessage(), e);
+            }
         }
 
-        // 3. Reducir stock en el catálogo
-        for (ItemOrden item : orden.getItems()) {
-            Producto p = item.getProducto();
-            p.setStock(p.getStock() - item.getCantidad());
-            catalogo.editarProducto(p);
+        // 5. Generar factura
+        try {
+            orden.generarFactura(rutaFactura);
+        } catch (Exception e) {
+            throw new OrdenCobradaException(orden.getId(), "Orden " + orden.getId()
+                    + " cobrada y registrada pero sin factura; reintente el cierre: " + e.getMessage(), e);
         }
+    }
+
+    /**
+     * Pasos de {@link #finalizarOrden} entre apartar el id y el cobro.
+     */
+    private void cobrarOrden(Orden orden) throws Exception {
+        // 2. Confirmar reservas antes de cobrar: todos los ítems se descuentan del
+        //    catálogo en una sola transacción, si uno no alcanza no se descuenta ninguno
+        reservas.confirmar(orden);
 
-        // 4. Generar factura
-        orden.generarFactura(rutaFactura);
+        // 3. Procesar pago (si falla, el stock vuelve y la orden recupera sus reservas)
+        boolean pagada;
+        try {
+            pagada = procesarPago(orden);
+        } catch (PagoInvalidoException | RuntimeException e) {
+            reservas.revertir(orden);
+            throw e;
+        }
+        if (!pagada) {
+            reservas.revertir(orden);
+            throw new PagoInvalidoException("El pago no pudo procesarse");
+        }
     }
 
     // —————————————————————— GETTERS ——————————————————————
@@ -148,4 +287,12 @@ public class GestionOrdenes {
     public FabricaPagos getFabricaPagos() {
         return fabricaPagos;
     }
+
+    public RegistroOrdenes getRegistroOrdenes() {
+        return registroOrdenes;
+    }
+
+    public ReservasStock getReservas() {
+        return reservas;
+    }
 }
@@ -0,0 +1,301 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package application;
+
+import domain.Cliente;
+import domain.Producto;
+import infrastructure.LectorJson;
+import infrastructure.LectorJson.Evento;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Importa productos y clientes desde JSON (un arreglo, como el que escribe
+ * {@code JsonManualSerializer}, o NDJSON con un objeto por línea).
+ *
+ * El archivo se recorre elemento a elemento con {@link LectorJson} y se
+ * entrega en lotes de tamaño fijo, así que en memoria solo hay un lote del
+ * documento a la vez. Los lotes se aplican sin guardar y el catálogo o el
+ * archivo de clientes se guarda una sola vez al final (también si la lectura
+ * falla a mitad de camino, para no perder los lotes ya aplicados).
+ *
+ * Campos reconocidos: productos {@code codigo, nombre, precio, stock};
+ * clientes {@code cedula, nombre, telefono, email}. Los demás se ignoran.
+ * Los clientes exportados por {@code JsonManualSerializer} no llevan cédula,
+ * así que solo se pueden importar exportaciones que la incluyan.
+ */
+public class ImportadorJson {
+    private static final int TAMANO_LOTE = 10_000;
+
+    private final Catalogo catalogo;
+    private final ClienteService clienteService;
+    private final int tamanoLote;
+
+    public ImportadorJson(Catalogo catalogo, ClienteService clienteService) {
+        this(catalogo, clienteService, TAMANO_LOTE);
+    }
+
+    /**
+     * @param tamanoLote Elementos que se acumulan antes de aplicarlos
+     */
+    public ImportadorJson(Catalogo catalogo, ClienteService clienteService, int tamanoLote) {
+        if (tamanoLote <= 0) {
+            throw new IllegalArgumentException("El tamaño de lote debe ser mayor a cero");
+        }
+        this.catalogo = catalogo;
+        this.clienteService = clienteService;
+        this.tamanoLote = tamanoLote;
+    }
+
+    // —————————————————————— PRODUCTOS ——————————————————————
+
+    /**
+     * Agrega o actualiza los productos del archivo (los códigos existentes se
+     * reemplazan). Un código que ya apareció antes en el archivo se rechaza,
+     * caiga en el mismo lote o en otro: queda la primera fila. Para eso se
+     * recuerdan los códigos leídos durante toda la importación.
+     *
+     * @return Filas aplicadas y rechazos, con la posición del elemento en el archivo
+     * @throws IOException Si falla la lectura o el JSON está mal formado
+     */
+    public ResultadoImportacion importarProductos(Path archivo) throws IOException {
+        try (Reader entrada = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            return importarProductos(entrada);
+        }
+    }
+
+    /**
+     * @see #importarProductos(Path)
+     */
+    public ResultadoImportacion importarProductos(InputStream entrada) throws IOException {
+        return importarProductos(new BufferedReader(new InputStreamReader(entrada, StandardCharsets.UTF_8)));
+    }
+
+    private ResultadoImportacion importarProductos(Reader entrada) throws IOException {
+        Objects.requireNonNull(catalogo, "No hay catálogo para importar productos");
+        ResultadoImportacion resultado = new ResultadoImportacion();
+        Set<String> vistos = new HashSet<>();
+        try {
+            recorrer(entrada, resultado, ImportadorJson::leerProducto,
+                    lote -> catalogo.agregarOActualizarSinGuardar(lote, vistos));
+        } finally {
+            if (resultado.getAceptados() > 0) {
+                catalogo.guardarImportacion();
+            }
+        }
+        return resultado;
+    }
+
+    // —————————————————————— CLIENTES ——————————————————————
+
+    /**
+     * Registra los clientes del archivo. Se rechazan los que no tienen cédula
+     * o ya están registrados (también si aparecieron antes en el mismo archivo).
+     *
+     * @return Clientes registrados y rechazos, con la posición del elemento en el archivo
+     * @throws IOException Si falla la lectura o el JSON está mal formado
+     */
+    public ResultadoImportacion importarClientes(Path archivo) throws IOException {
+        try (Reader entrada = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            return importarClientes(entrada);
+        }
+    }
+
+    /**
+     * @see #importarClientes(Path)
+     */
+    public ResultadoImportacion importarClientes(InputStream entrada) throws IOException {
+        return importarClientes(new BufferedReader(new InputStreamReader(entrada, StandardCharsets.UTF_8)));
+    }
+
+    private ResultadoImportacion importarClientes(Reader entrada) throws IOException {
+        Objects.requireNonNull(clienteService, "No hay servicio de clientes para importar clientes");
+        ResultadoImportacion resultado = new ResultadoImportacion();
+        try {
+            recorrer(entrada, resultado, ImportadorJson::leerCliente,
+                    lote -> clienteService.registrarClientes(lote, false));
+        } finally {
+            if (resultado.getAceptados() > 0) {
+                clienteService.guardarImportacion();
+            }
+        }
+        return resultado;
+    }
+
+    // —————————————————————— RECORRIDO ——————————————————————
+
+    /**
+     * Recorre los elementos del documento (los de un arreglo en el nivel
+     * superior o los objetos sueltos de un NDJSON) y los aplica por lotes.
+     * Los elementos que no se pueden convertir se rechazan aquí mismo.
+     */
+    private <T> void recorrer(Reader entrada, ResultadoImportacion resultado,
+            LectorElemento<T> lectorElemento, AplicadorLote<T> aplicador) throws IOException {
+        LectorJson lector = new LectorJson(entrada);
+        List<T> lote = new ArrayList<>(tamanoLote);
+        int[] filas = new int[tamanoLote];
+        String[] motivo = new String[1];
+        int fila = 0;
+
+        Evento evento;
+        while ((evento = lector.siguiente()) != Evento.FIN) {
+            boolean enArreglo = evento == Evento.INICIO_ARREGLO;
+            if (enArreglo) {
+                evento = lector.siguiente();
+            }
+            while (!enArreglo || evento != Evento.FIN_ARREGLO) {
+                motivo[0] = null;
+                T elemento = null;
+                if (evento == Evento.INICIO_OBJETO) {
+                    elemento = lectorElemento.leer(lector, motivo);
+                } else {
+                    if (evento == Evento.INICIO_ARREGLO) {
+                        lector.saltarHastaCerrar();
+                    }
+                    motivo[0] = "Se esperaba un objeto";
+                }
+
+                if (motivo[0] != null) {
+                    resultado.rechazar(fila, null, motivo[0]);
+                } else {
+                    filas[lote.size()] = fila;
+                    lote.add(elemento);
+                    if (lote.size() == tamanoLote) {
+                        resultado.acumular(aplicador.aplicar(lote), filas);
+                        lote.clear();
+                    }
+                }
+                fila++;
+                if (!enArreglo) {
+                    break;
+                }
+                evento = lector.siguiente();
+            }
+        }
+        if (!lote.isEmpty()) {
+            resultado.acumular(aplicador.aplicar(lote), Arrays.copyOf(filas, lote.size()));
+        }
+    }
+
+    /**
+     * Lee los campos de un producto (ya consumido el inicio del objeto).
+     */
+    private static Producto leerProducto(LectorJson lector, String[] motivo) throws IOException {
+        String codigo = null;
+        String nombre = null;
+        double precio = 0;
+        int stock = 0;
+        boolean hayPrecio = false;
+        boolean hayStock = false;
+        while (lector.siguiente() == Evento.NOMBRE) {
+            String campo = lector.getTexto();
+            Evento valor = lector.siguiente();
+            switch (campo) {
+                case "codigo" -> codigo = texto(lector, valor, campo, motivo);
+                case "nombre" -> nombre = texto(lector, valor, campo, motivo);
+                case "precio" -> {
+                    if (valor == Evento.NUMERO) {
+                        precio = lector.getDouble();
+                        hayPrecio = true;
+                    } else {
+                        rechazarCampo(lector, valor, campo, motivo);
+                    }
+                }
+                case "stock" -> {
+                    if (valor == Evento.NUMERO) {
+                        try {
+                            stock = lector.getEntero();
+                            hayStock = true;
+                        } catch (IOException e) {
+                            motivo[0] = "Stock inválido: " + lector.getTexto();
+                        }
+                    } else {
+                        rechazarCampo(lector, valor, campo, motivo);
+                    }
+                }
+                default -> saltar(lector, valor);
+            }
+        }
+        if (motivo[0] == null && !hayPrecio) {
+            motivo[0] = "Falta el precio";
+        }
+        if (motivo[0] == null && !hayStock) {
+            motivo[0] = "Falta el stock";
+        }
+        return motivo[0] == null ? new Producto(codigo, nombre, precio, stock) : null;
+    }
+
+    /**
+     * Lee los campos de un cliente (ya consumido el inicio del objeto).
+     */
+    private static Cliente leerCliente(LectorJson lector, String[] motivo) throws IOException {
+        String cedula = null;
+        String nombre = null;
+        String telefono = null;
+        String email = null;
+        while (lector.siguiente() == Evento.NOMBRE) {
+            String campo = lector.getTexto();
+            Evento valor = lector.siguiente();
+            switch (campo) {
+                case "cedula" -> cedula = texto(lector, valor, campo, motivo);
+                case "nombre" -> nombre = texto(lector, valor, campo, motivo);
+                case "telefono" -> telefono = texto(lector, valor, campo, motivo);
+                case "email" -> email = texto(lector, valor, campo, motivo);
+                default -> saltar(lector, valor);
+            }
+        }
+        return motivo[0] == null ? new Cliente(cedula, nombre, telefono, email) : null;
+    }
+
+    /**
+     * @return El texto del campo, o null si es null o de otro tipo (en ese caso anota el motivo)
+     */
+    private static String texto(LectorJson lector, Evento valor, String campo, String[] motivo) throws IOException {
+        if (valor == Evento.TEXTO) {
+            return lector.getTexto();
+        }
+        if (valor != Evento.NULO) {
+            rechazarCampo(lector, valor, campo, motivo);
+        }
+        return null;
+    }
+
+    private static void rechazarCampo(LectorJson lector, Evento valor, String campo, String[] motivo) throws IOException {
+        saltar(lector, valor);
+        if (motivo[0] == null) {
+            motivo[0] = "Valor inválido en \"" + campo + "\"";
+        }
+    }
+
+    private static void saltar(LectorJson lector, Evento valor) throws IOException {
+        if (valor == Evento.INICIO_OBJETO || valor == Evento.INICIO_ARREGLO) {
+            lector.saltarHastaCerrar();
+        }
+    }
+
+    private interface LectorElemento<T> {
+        T leer(LectorJson lector, String[] motivo) throws IOException;
+    }
+
+    private interface AplicadorLote<T> {
+        ResultadoImportacion aplicar(List<T> lote);
+    }
+}
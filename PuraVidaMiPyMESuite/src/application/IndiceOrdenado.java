@@ -0,0 +1,301 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package application;
+
+import domain.Producto;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Índice secundario ordenado de productos por un atributo (precio, stock...).
+ * Responde recorridos ordenados, rangos y páginas sin volver a ordenar el catálogo.
+ *
+ * Cada producto queda registrado con la clave que tenía al indexarse, así que
+ * una edición (incluso sobre la misma instancia, tras un setStock) lo reubica
+ * correctamente al llamar a {@link #actualizar(Producto)}.
+ *
+ * Los productos con la misma clave salen en el orden en que se indexaron por
+ * primera vez (el mismo orden estable que daba ordenar la lista del catálogo);
+ * reubicar un producto no le cambia ese turno. Así las páginas no se
+ * reordenan entre una consulta y otra.
+ *
+ * Las páginas se piden de dos formas: por desplazamiento ({@code saltar}), que
+ * recorre lo que omite, o por cursor (el último producto de la página
+ * anterior), que llega a la página en O(log n) sin importar cuán adelante esté.
+ *
+ * Admite un escritor a la vez (el llamador serializa las modificaciones) y
+ * cualquier cantidad de lectores concurrentes sin cerrojos. Un lector puede no
+ * ver un producto mientras se reubica, pero nunca lo ve duplicado ni con su
+ * clave vieja.
+ */
+public class IndiceOrdenado<K extends Comparable<K>> {
+    private final Function<Producto, K> extractor;
+    private final ConcurrentNavigableMap<K, Grupo> arbol = new ConcurrentSkipListMap<>();
+    private final Map<String, Ubicacion<K>> ubicaciones = new ConcurrentHashMap<>();
+    private long siguienteTurno; // Solo lo usa el escritor
+
+    /**
+     * @param extractor Atributo del producto por el que se ordena
+     */
+    public IndiceOrdenado(Function<Producto, K> extractor) {
+        this.extractor = Objects.requireNonNull(extractor, "El extractor no puede ser nulo");
+    }
+
+    /**
+     * Reemplaza el contenido del índice por los productos dados.
+     */
+    public void reconstruir(Collection<Producto> todos) {
+        arbol.clear();
+        ubicaciones.clear();
+        siguienteTurno = 0;
+        for (Producto p : todos) {
+            agregar(p);
+        }
+    }
+
+    /**
+     * Indexa un producto (si el código ya estaba indexado, lo reubica).
+     */
+    public void agregar(Producto producto) {
+        String codigo = producto.getCodigo();
+        K clave = extractor.apply(producto);
+        Ubicacion<K> anterior = ubicaciones.get(codigo);
+        long turno = anterior != null ? anterior.turno : siguienteTurno++;
+        // Se quita la posición vieja antes de insertar la nueva: un lector concurrente
+        // nunca ve el producto dos veces ni con la clave anterior
+        if (anterior != null && !anterior.clave.equals(clave)) {
+            quitarDeGrupo(anterior);
+        }
+        arbol.computeIfAbsent(clave, k -> new Grupo()).poner(turno, producto);
+        ubicaciones.put(codigo, new Ubicacion<>(clave, turno));
+    }
+
+    /**
+     * Reubica un producto cuyo atributo pudo haber cambiado.
+     */
+    public void actualizar(Producto producto) {
+        agregar(producto);
+    }
+
+    /**
+     * Quita un producto del índice.
+     */
+    public void eliminar(String codigo) {
+        Ubicacion<K> ubicacion = ubicaciones.remove(codigo);
+        if (ubicacion != null) {
+            quitarDeGrupo(ubicacion);
+        }
+    }
+
+    private void quitarDeGrupo(Ubicacion<K> ubicacion) {
+        Grupo iguales = arbol.get(ubicacion.clave);
+        if (iguales == null) {
+            return;
+        }
+        iguales.quitar(ubicacion.turno);
+        if (iguales.tamano == 0) {
+            arbol.remove(ubicacion.clave);
+        }
+    }
+
+    /**
+     * @return Todos los productos en orden ascendente de la clave
+     */
+    public List<Producto> ascendente() {
+        return aplanar(arbol.values(), 0, Integer.MAX_VALUE, new ArrayList<>());
+    }
+
+    /**
+     * @return Todos los productos en orden descendente de la clave
+     */
+    public List<Producto> descendente() {
+        return aplanar(arbol.descendingMap().values(), 0, Integer.MAX_VALUE, new ArrayList<>());
+    }
+
+    /**
+     * Productos con clave entre {@code desde} y {@code hasta} (ambos incluidos).
+     * Costo O(log n + k), siendo k la cantidad de resultados.
+     */
+    public List<Producto> rango(K desde, K hasta) {
+        return rango(desde, hasta, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Página de los productos con clave entre {@code desde} y {@code hasta} (ambos incluidos).
+     * Costo O(log n + saltar + k) en el peor caso: los grupos de claves iguales
+     * que caen completos dentro del salto se descartan sin recorrer sus
+     * productos, pero se visitan de a uno, y dentro de un grupo se salta de a
+     * un producto. Para avanzar muchas páginas conviene
+     * {@link #rango(Comparable, Comparable, Producto, int)}.
+     *
+     * @param saltar Cantidad de resultados a omitir
+     * @param limite Cantidad máxima de resultados
+     */
+    public List<Producto> rango(K desde, K hasta, int saltar, int limite) {
+        if (desde.compareTo(hasta) > 0) {
+            return new ArrayList<>();
+        }
+        return aplanar(arbol.subMap(desde, true, hasta, true).values(), saltar, limite, new ArrayList<>());
+    }
+
+    /**
+     * Página por cursor de los productos con clave entre {@code desde} y
+     * {@code hasta} (ambos incluidos). Costo O(log n + k).
+     *
+     * @param ultimo Último producto de la página anterior, tal como se
+     *        devolvió, o null para la primera página
+     * @param limite Cantidad máxima de resultados
+     */
+    public List<Producto> rango(K desde, K hasta, Producto ultimo, int limite) {
+        if (desde.compareTo(hasta) > 0) {
+            return new ArrayList<>();
+        }
+        return paginaDespuesDe(desde, hasta, true, ultimo, limite);
+    }
+
+    /**
+     * Página de los productos con clave estrictamente menor que {@code limiteClave},
+     * en orden ascendente. Mismo costo que {@link #rango(Comparable, Comparable, int, int)}.
+     *
+     * @param saltar Cantidad de resultados a omitir
+     * @param limite Cantidad máxima de resultados
+     */
+    public List<Producto> menoresQue(K limiteClave, int saltar, int limite) {
+        return aplanar(arbol.headMap(limiteClave, false).values(), saltar, limite, new ArrayList<>());
+    }
+
+    /**
+     * Página por cursor de los productos con clave estrictamente menor que
+     * {@code limiteClave}, en orden ascendente. Costo O(log n + k).
+     *
+     * @param ultimo Último producto de la página anterior, tal como se
+     *        devolvió, o null para la primera página
+     * @param limite Cantidad máxima de resultados
+     */
+    public List<Producto> menoresQue(K limiteClave, Producto ultimo, int limite) {
+        return paginaDespuesDe(null, limiteClave, false, ultimo, limite);
+    }
+
+    /**
+     * @return Cantidad de productos indexados
+     */
+    public int tamano() {
+        return ubicaciones.size();
+    }
+
+    /**
+     * Sigue el recorrido justo después de {@code ultimo}: su clave ubica el
+     * grupo con una búsqueda en el árbol y su turno (que no cambia mientras
+     * siga indexado, aunque se reubique) ubica la posición dentro del grupo.
+     * Si el producto ya no está indexado se sigue desde el primero con su
+     * misma clave, así que puede repetirse algún empate, pero nunca se omite
+     * un producto.
+     *
+     * @param desde Primera clave del tramo (incluida), o null para empezar por la menor
+     */
+    private List<Producto> paginaDespuesDe(K desde, K hasta, boolean incluirHasta, Producto ultimo, int limite) {
+        List<Producto> resultado = new ArrayList<>(Math.min(limite, 64));
+        K inicio = desde;
+        boolean incluirInicio = true;
+        if (ultimo != null) {
+            K clave = extractor.apply(ultimo);
+            if (desde == null || clave.compareTo(desde) >= 0) {
+                int comparacion = clave.compareTo(hasta);
+                if (comparacion > 0 || (comparacion == 0 && !incluirHasta)) {
+                    return resultado; // El cursor ya pasó el final del tramo
+                }
+                Grupo iguales = arbol.get(clave);
+                if (iguales != null) {
+                    Ubicacion<K> ubicacion = ubicaciones.get(ultimo.getCodigo());
+                    Collection<Producto> resto = ubicacion != null
+                            ? iguales.porTurno.tailMap(ubicacion.turno, false).values()
+                            : iguales.porTurno.values();
+                    for (Producto p : resto) {
+                        if (resultado.size() >= limite) {
+                            return resultado;
+                        }
+                        resultado.add(p);
+                    }
+                }
+                inicio = clave;
+                incluirInicio = false;
+            }
+        }
+        NavigableMap<K, Grupo> tramo = inicio == null
+                ? arbol.headMap(hasta, incluirHasta)
+                : arbol.subMap(inicio, incluirInicio, hasta, incluirHasta);
+        return aplanar(tramo.values(), 0, limite, resultado);
+    }
+
+    /**
+     * Recorre los grupos de claves iguales omitiendo {@code saltar} productos
+     * y agrega los siguientes a {@code resultado} hasta que tenga {@code limite}.
+     * Los grupos que caen completos dentro del salto se descartan sin recorrerlos.
+     */
+    private List<Producto> aplanar(Collection<Grupo> grupos, int saltar, int limite, List<Producto> resultado) {
+        if (resultado.size() >= limite) {
+            return resultado;
+        }
+        int pendientesDeSaltar = saltar;
+        for (Grupo iguales : grupos) {
+            int tamano = iguales.tamano;
+            if (pendientesDeSaltar >= tamano) {
+                pendientesDeSaltar -= tamano;
+                continue;
+            }
+            for (Producto p : iguales.porTurno.values()) {
+                if (pendientesDeSaltar > 0) {
+                    pendientesDeSaltar--;
+                    continue;
+                }
+                resultado.add(p);
+                if (resultado.size() >= limite) {
+                    return resultado;
+                }
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Productos con la misma clave, en orden de turno (orden de primera indexación).
+     */
+    private static final class Grupo {
+        final ConcurrentSkipListMap<Long, Producto> porTurno = new ConcurrentSkipListMap<>();
+        volatile int tamano; // Lo actualiza solo el escritor; evita contar el mapa al saltar
+
+        void poner(long turno, Producto producto) {
+            if (porTurno.put(turno, producto) == null) {
+                tamano++;
+            }
+        }
+
+        void quitar(long turno) {
+            if (porTurno.remove(turno) != null) {
+                tamano--;
+            }
+        }
+    }
+
+    /**
+     * Clave con la que está indexado un producto y su turno dentro del grupo.
+     */
+    private static final class Ubicacion<K> {
+        final K clave;
+        final long turno;
+
+        Ubicacion(K clave, long turno) {
+            this.clave = clave;
+            this.turno = turno;
+        }
+    }
+}
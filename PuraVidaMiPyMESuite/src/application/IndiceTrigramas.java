@@ -0,0 +1,180 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package application;
+
+import domain.Producto;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Índice invertido de trigramas sobre los nombres de productos.
+ * Los nombres se normalizan una sola vez al indexarlos (sin tildes ni diéresis
+ * y en minúsculas), de modo que una búsqueda parcial solo revisa los productos
+ * que comparten todos los trigramas de la consulta.
+ *
+ * Admite un escritor a la vez (el llamador serializa las modificaciones) y
+ * cualquier cantidad de lectores concurrentes sin cerrojos.
+ */
+public class IndiceTrigramas {
+    private static final int N = 3;
+    private static final Pattern MARCAS_DIACRITICAS = Pattern.compile("\\p{M}+");
+
+    private final Map<Long, Set<String>> listas = new ConcurrentHashMap<>();     // trigrama -> códigos
+    private final Map<String, String> nombresNormalizados = new ConcurrentHashMap<>(); // código -> nombre
+    private final Map<String, Producto> productos = new ConcurrentHashMap<>();
+
+    /**
+     * Reemplaza el contenido del índice por los productos dados.
+     */
+    public void reconstruir(Collection<Producto> todos) {
+        listas.clear();
+        nombresNormalizados.clear();
+        productos.clear();
+        for (Producto p : todos) {
+            agregar(p);
+        }
+    }
+
+    /**
+     * Indexa un producto (si el código ya estaba indexado, lo actualiza).
+     */
+    public void agregar(Producto producto) {
+        String codigo = producto.getCodigo();
+        String nombre = normalizar(producto.getNombre());
+        String anterior = nombresNormalizados.get(codigo);
+        productos.put(codigo, producto);
+        if (nombre.equals(anterior)) {
+            return; // Mismo nombre: los trigramas no cambian
+        }
+        if (anterior != null) {
+            quitarTrigramas(codigo, anterior);
+        }
+        nombresNormalizados.put(codigo, nombre);
+        for (long trigrama : trigramas(nombre)) {
+            listas.computeIfAbsent(trigrama, k -> ConcurrentHashMap.newKeySet()).add(codigo);
+        }
+    }
+
+    /**
+     * Actualiza un producto ya indexado.
+     */
+    public void actualizar(Producto producto) {
+        agregar(producto);
+    }
+
+    /**
+     * Quita un producto del índice.
+     */
+    public void eliminar(String codigo) {
+        String nombre = nombresNormalizados.remove(codigo);
+        productos.remove(codigo);
+        if (nombre != null) {
+            quitarTrigramas(codigo, nombre);
+        }
+    }
+
+    /**
+     * Busca productos cuyo nombre contenga el texto dado, sin distinguir
+     * mayúsculas ni tildes.
+     *
+     * @param texto Nombre o parte del nombre
+     * @return Productos que coinciden
+     */
+    public List<Producto> buscar(String texto) {
+        String consulta = normalizar(texto);
+        List<Producto> resultado = new ArrayList<>();
+
+        if (consulta.length() < N) {
+            // Consultas muy cortas no tienen trigramas: se recorren los nombres ya normalizados
+            for (Map.Entry<String, String> e : nombresNormalizados.entrySet()) {
+                if (e.getValue().contains(consulta)) {
+                    agregarSiSigue(resultado, e.getKey());
+                }
+            }
+            return resultado;
+        }
+
+        // Se parte de la lista más corta y se verifica cada candidato contra el nombre completo
+        Set<String> candidatos = null;
+        for (long trigrama : trigramas(consulta)) {
+            Set<String> lista = listas.get(trigrama);
+            if (lista == null) {
+                return resultado;
+            }
+            if (candidatos == null || lista.size() < candidatos.size()) {
+                candidatos = lista;
+            }
+        }
+        for (String codigo : candidatos) {
+            String nombre = nombresNormalizados.get(codigo);
+            if (nombre != null && nombre.contains(consulta)) {
+                agregarSiSigue(resultado, codigo);
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Un lector concurrente puede ver un código que se está eliminando en ese momento.
+     */
+    private void agregarSiSigue(List<Producto> resultado, String codigo) {
+        Producto p = productos.get(codigo);
+        if (p != null) {
+            resultado.add(p);
+        }
+    }
+
+    /**
+     * Normaliza un texto para búsqueda: descompone los caracteres acentuados,
+     * elimina las marcas diacríticas y pasa a minúsculas.
+     */
+    public static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String descompuesto = Normalizer.normalize(texto, Normalizer.Form.NFD);
+        return MARCAS_DIACRITICAS.matcher(descompuesto).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private void quitarTrigramas(String codigo, String nombre) {
+        for (long trigrama : trigramas(nombre)) {
+            Set<String> lista = listas.get(trigrama);
+            if (lista != null) {
+                lista.remove(codigo);
+                if (lista.isEmpty()) {
+                    listas.remove(trigrama);
+                }
+            }
+        }
+    }
+
+    /**
+     * Trigramas distintos del texto, codificados como tres caracteres de 16 bits
+     * en un long (evita crear un String por trigrama).
+     */
+    private static long[] trigramas(String texto) {
+        int cantidad = Math.max(0, texto.length() - N + 1);
+        long[] resultado = new long[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            resultado[i] = ((long) texto.charAt(i) << 32)
+                    | ((long) texto.charAt(i + 1) << 16)
+                    | texto.charAt(i + 2);
+        }
+        Arrays.sort(resultado);
+        int distintos = 0;
+        for (int i = 0; i < cantidad; i++) {
+            if (distintos == 0 || resultado[distintos - 1] != resultado[i]) {
+                resultado[distintos++] = resultado[i];
+            }
+        }
+        return distintos == cantidad ? resultado : Arrays.copyOf(resultado, distintos);
+    }
+}
@@ -4,10 +4,23 @@
  */
 package application;
 
+import java.util.List;
+
 /**
  *
  * @author Emesis
  */
 public interface ObservadorCatalogo {
     void catalogoActualizado();
-}
\ No newline at end of file
+
+    /**
+     * Recibe los cambios concretos de una mutación (o de un lote), para que el
+     * observador aplique O(cambios) en lugar de recargar todo el catálogo.
+     * Por defecto delega en {@link #catalogoActualizado()}.
+     *
+     * @param cambios Cambios en el orden en que se aplicaron
+     */
+    default void catalogoCambiado(List<CambioCatalogo> cambios) {
+        catalogoActualizado();
+    }
+}
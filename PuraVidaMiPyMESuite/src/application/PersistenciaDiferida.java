@@ -0,0 +1,128 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package application;
+
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Persistencia diferida (write-behind) con agrupación de escrituras.
+ * Cada mutación solo marca el estado como pendiente; un hilo de fondo ejecuta
+ * un único guardado por intervalo o en cuanto se acumulan N cambios.
+ * Un gancho de apagado garantiza que ningún cambio confirmado se pierda al cerrar la JVM.
+ */
+public class PersistenciaDiferida {
+    private final Guardado guardado;
+    private final int maxCambios;
+    private final ScheduledExecutorService planificador;
+    private final AtomicInteger cambiosPendientes = new AtomicInteger();
+    private final Object cerrojoGuardado = new Object();
+    private final Thread ganchoApagado;
+    private volatile boolean cerrado;
+
+    /**
+     * @param guardado Acción que persiste el estado completo
+     * @param intervaloMs Tiempo máximo (ms) que un cambio puede quedar sin guardar
+     * @param maxCambios Cantidad de cambios que fuerza un guardado anticipado
+     */
+    public PersistenciaDiferida(Guardado guardado, long intervaloMs, int maxCambios) {
+        this.guardado = Objects.requireNonNull(guardado, "La acción de guardado no puede ser nula");
+        if (intervaloMs <= 0) {
+            throw new IllegalArgumentException("El intervalo debe ser mayor a cero");
+        }
+        if (maxCambios <= 0) {
+            throw new IllegalArgumentException("La cantidad máxima de cambios debe ser mayor a cero");
+        }
+        this.maxCambios = maxCambios;
+        this.planificador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "persistencia-diferida");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        this.planificador.scheduleWithFixedDelay(this::guardarSinPropagar, intervaloMs, intervaloMs, TimeUnit.MILLISECONDS);
+
+        this.ganchoApagado = new Thread(this::guardarSinPropagar, "persistencia-diferida-apagado");
+        Runtime.getRuntime().addShutdownHook(ganchoApagado);
+    }
+
+    /**
+     * Registra un cambio pendiente. Debe llamarse después de aplicar la mutación
+     * en memoria, para que el siguiente guardado la incluya.
+     */
+    public void marcarCambio() {
+        if (cerrado) {
+            guardarSinPropagar();
+            return;
+        }
+        if (cambiosPendientes.incrementAndGet() >= maxCambios) {
+            planificador.execute(this::guardarSinPropagar);
+        }
+    }
+
+    /**
+     * Guarda inmediatamente si hay cambios pendientes.
+     *
+     * @throws Exception Si el guardado falla (los cambios siguen pendientes)
+     */
+    public void flush() throws Exception {
+        synchronized (cerrojoGuardado) {
+            int pendientes = cambiosPendientes.getAndSet(0);
+            if (pendientes == 0) {
+                return;
+            }
+            try {
+                guardado.guardar();
+            } catch (Exception e) {
+                // Se conservan como pendientes para el siguiente intento
+                cambiosPendientes.addAndGet(pendientes);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Detiene el hilo de fondo y realiza un último guardado.
+     */
+    public void cerrar() throws Exception {
+        cerrado = true;
+        planificador.shutdown();
+        try {
+            Runtime.getRuntime().removeShutdownHook(ganchoApagado);
+        } catch (IllegalStateException e) {
+            // La JVM ya se está apagando: el gancho hará el último guardado
+        }
+        flush();
+    }
+
+    /**
+     * @return Cantidad de cambios aún no persistidos
+     */
+    public int getCambiosPendientes() {
+        return cambiosPendientes.get();
+    }
+
+    private void guardarSinPropagar() {
+        try {
+            flush();
+        } catch (Exception e) {
+            System.err.println("Error en guardado diferido: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Acción de guardado que puede fallar con una excepción comprobada.
+     */
+    @FunctionalInterface
+    public interface Guardado {
+        void guardar() throws Exception;
+    }
+}
@@ -0,0 +1,439 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package application;
+
+import domain.ItemOrden;
+import domain.Orden;
+import domain.Producto;
+import exception.ProductoNoEncontradoException;
+import exception.StockInsuficienteException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Reservas de stock para varias terminales que venden sobre el mismo catálogo.
+ * Al agregar un ítem a una orden se reservan las unidades; antes de cobrar, la
+ * reserva se confirma descontando el stock del catálogo, y si el cobro falla se
+ * revierte (ver {@link #revertir}). Si la orden se cancela, se libera. Así dos
+ * órdenes abiertas no pueden vender la misma última unidad.
+ *
+ * Reservar no toma cerrojos: cada producto tiene un contador atómico de
+ * unidades reservadas que se actualiza con compare-and-set, de modo que las
+ * terminales solo compiten cuando reservan el mismo producto. El catálogo
+ * sigue siendo la fuente del stock; lo disponible es stock menos reservado.
+ *
+ * Las confirmaciones se agrupan: cada una se encola y el primer hilo que toma
+ * el cerrojo de aplicación descuenta todas las encoladas con un solo
+ * {@link Catalogo#ajustarStockLote}, de modo que varias terminales cobrando a
+ * la vez toman el cerrojo del catálogo una vez por grupo y no una por venta.
+ *
+ * Las reservas de una orden vencen si pasa el plazo de la reserva sin que la
+ * orden reserve, se confirme o se revierta: un hilo de fondo las libera, así
+ * una orden abandonada (una terminal que se cerró sin cancelarla) no retiene
+ * stock para siempre. Una orden vencida que intenta confirmarse falla como si
+ * no hubiera reservado.
+ */
+public class ReservasStock {
+    private static final long PLAZO_POR_DEFECTO_MS = 30 * 60 * 1000; // 30 minutos
+
+    private final Catalogo catalogo;
+    private final long plazoNanos;
+    /**
+     * Unidades reservadas por código de producto (órdenes abiertas).
+     */
+    private final ConcurrentHashMap<String, AtomicInteger> reservadoPorProducto = new ConcurrentHashMap<>();
+    /**
+     * Reserva de cada orden abierta. Las órdenes no redefinen equals, así que
+     * se distinguen por identidad. Cada reserva se modifica solo dentro de
+     * compute sobre este mapa, así que el hilo de vencimiento no puede
+     * retirarla a mitad de un cambio.
+     */
+    private final ConcurrentHashMap<Orden, Reserva> reservasPorOrden = new ConcurrentHashMap<>();
+    /**
+     * Confirmaciones que esperan ser descontadas del catálogo.
+     */
+    private final ConcurrentLinkedQueue<Confirmacion> porAplicar = new ConcurrentLinkedQueue<>();
+    /**
+     * Lo toma el hilo que descuenta el grupo de confirmaciones encoladas.
+     */
+    private final ReentrantLock cerrojoAplicacion = new ReentrantLock();
+    private final ScheduledExecutorService vencimientos;
+
+    public ReservasStock(Catalogo catalogo) {
+        this(catalogo, PLAZO_POR_DEFECTO_MS);
+    }
+
+    /**
+     * @param catalogo Catálogo sobre el que se reserva
+     * @param plazoMs Tiempo (ms) que una orden puede pasar sin actividad antes
+     *        de que se liberen sus reservas. Se revisa cada medio plazo, así que
+     *        una reserva puede durar hasta una vez y media el plazo.
+     */
+    public ReservasStock(Catalogo catalogo, long plazoMs) {
+        this.catalogo = Objects.requireNonNull(catalogo, "El catálogo no puede ser nulo");
+        if (plazoMs <= 0) {
+            throw new IllegalArgumentException("El plazo de las reservas debe ser mayor a cero");
+        }
+        this.plazoNanos = TimeUnit.MILLISECONDS.toNanos(plazoMs);
+        this.vencimientos = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "vencimiento-reservas");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        long periodo = Math.max(plazoMs / 2, 1);
+        this.vencimientos.scheduleWithFixedDelay(this::liberarVencidas, periodo, periodo, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reserva unidades de un producto para una orden.
+     *
+     * @param orden Orden que reserva
+     * @param codigo Código del producto
+     * @param cantidad Unidades a reservar (mayor a cero)
+     * @throws StockInsuficienteException Si el stock no reservado no alcanza
+     * @throws IllegalArgumentException Si el producto no existe
+     */
+    public void reservar(Orden orden, String codigo, int cantidad) throws StockInsuficienteException {
+        Objects.requireNonNull(orden, "La orden no puede ser nula");
+        if (cantidad <= 0) {
+            throw new IllegalArgumentException("La cantidad debe ser mayor a cero");
+        }
+        AtomicInteger reservado = reservadoPorProducto.computeIfAbsent(codigo, c -> new AtomicInteger());
+        while (true) {
+            // El reservado se lee antes que el stock: confirmar descuenta el stock
+            // antes de soltar la reserva, así que nunca se ve más disponible del real
+            int actual = reservado.get();
+            Producto producto = catalogo.obtenerPorCodigo(codigo);
+            if (producto == null) {
+                throw new IllegalArgumentException("Producto no encontrado: " + codigo);
+            }
+            int disponible = producto.getStock() - actual;
+            if (disponible < cantidad) {
+                throw new StockInsuficienteException(
+                    "Stock insuficiente para " + producto.getNombre() +
+                    ". Disponible: " + Math.max(disponible, 0) + ", solicitado: " + cantidad
+                );
+            }
+            if (reservado.compareAndSet(actual, actual + cantidad)) {
+                break;
+            }
+        }
+        anotar(orden, Map.of(codigo, cantidad));
+    }
+
+    /**
+     * Devuelve unidades reservadas por una orden (por ejemplo, si el ítem no
+     * llegó a agregarse).
+     */
+    public void liberar(Orden orden, String codigo, int cantidad) {
+        if (cantidad <= 0) {
+            return;
+        }
+        int[] liberadas = new int[1];
+        reservasPorOrden.computeIfPresent(orden, (o, reserva) -> {
+            reserva.unidades.computeIfPresent(codigo, (c, r) -> {
+                liberadas[0] = Math.min(r, cantidad); // No se libera más de lo que la orden reservó
+                return r > cantidad ? r - cantidad : null;
+            });
+            return reserva;
+        });
+        AtomicInteger reservado = reservadoPorProducto.get(codigo);
+        if (reservado != null && liberadas[0] > 0) {
+            reservado.addAndGet(-liberadas[0]);
+        }
+    }
+
+    /**
+     * Libera todas las reservas de una orden (pago fallido u orden cancelada).
+     */
+    public void liberar(Orden orden) {
+        Reserva reserva = reservasPorOrden.remove(orden);
+        if (reserva != null) {
+            soltar(reserva.unidades);
+        }
+    }
+
+    /**
+     * Libera las reservas de las órdenes cuyo plazo venció. La ejecuta el hilo
+     * de vencimiento.
+     */
+    private void liberarVencidas() {
+        long ahora = System.nanoTime();
+        for (Orden orden : reservasPorOrden.keySet()) {
+            Reserva[] vencida = new Reserva[1];
+            reservasPorOrden.computeIfPresent(orden, (o, reserva) -> {
+                if (ahora - reserva.vence < 0) {
+                    return reserva;
+                }
+                vencida[0] = reserva;
+                return null;
+            });
+            if (vencida[0] != null) {
+                soltar(vencida[0].unidades);
+            }
+        }
+    }
+
+    /**
+     * Detiene el hilo de vencimiento. Las reservas vigentes se conservan.
+     */
+    public void cerrar() {
+        vencimientos.shutdownNow();
+    }
+
+    /**
+     * Confirma la venta: descuenta del catálogo, en una sola transacción,
+     * exactamente las unidades de los ítems de la orden, que deben estar
+     * reservadas por ella, y luego suelta esas reservas. Lo que la orden
+     * reservó de más (productos que ya no tiene o cantidades que bajaron) se
+     * libera. Si el descuento falla, la orden conserva sus reservas.
+     *
+     * El descuento puede hacerlo otro hilo junto con las confirmaciones que
+     * esperaban a la vez; este método vuelve cuando el de esta orden terminó.
+     *
+     * @param orden Orden a confirmar
+     * @throws IllegalStateException Si algún ítem tiene más unidades que las que
+     *         la orden reservó; en ese caso la orden conserva sus reservas
+     * @throws ProductoNoEncontradoException Si algún producto ya no existe
+     * @throws StockInsuficienteException Si el stock cambió por fuera de las reservas
+     */
+    public void confirmar(Orden orden)
+            throws ProductoNoEncontradoException, StockInsuficienteException {
+        Map<String, Integer> unidades = tomarReservas(orden);
+        if (unidades.isEmpty()) {
+            return;
+        }
+        Confirmacion confirmacion = new Confirmacion(unidades);
+        porAplicar.add(confirmacion);
+        cerrojoAplicacion.lock();
+        try {
+            if (!confirmacion.terminada) {
+                aplicarPendientes(); // También aplica las que otros hilos encolaron
+            }
+        } finally {
+            cerrojoAplicacion.unlock();
+        }
+
+        Exception error = confirmacion.error;
+        if (error == null) {
+            return;
+        }
+        anotar(orden, unidades);
+        if (error instanceof ProductoNoEncontradoException e) {
+            throw e;
+        }
+        if (error instanceof StockInsuficienteException e) {
+            throw e;
+        }
+        if (error instanceof RuntimeException e) {
+            throw e;
+        }
+        throw new IllegalStateException(error);
+    }
+
+    /**
+     * Descuenta del catálogo todas las confirmaciones encoladas en un solo lote
+     * y luego suelta sus reservas (el stock baja antes que lo reservado, así
+     * nunca se ve más disponible del real). Si el lote falla, se aplican de a
+     * una para que solo la confirmación culpable reciba el error.
+     * Se llama con el cerrojo de aplicación tomado.
+     */
+    private void aplicarPendientes() {
+        List<Confirmacion> grupo = new ArrayList<>();
+        for (Confirmacion c; (c = porAplicar.poll()) != null; ) {
+            grupo.add(c);
+        }
+        if (grupo.size() > 1) {
+            Map<String, Integer> descuentos = new LinkedHashMap<>();
+            for (Confirmacion c : grupo) {
+                c.descuentos.forEach((codigo, delta) -> descuentos.merge(codigo, delta, Integer::sum));
+            }
+            try {
+                catalogo.ajustarStockLote(descuentos);
+                for (Confirmacion c : grupo) {
+                    terminar(c, null);
+                }
+                return;
+            } catch (ProductoNoEncontradoException | StockInsuficienteException | RuntimeException e) {
+                // Se repite de a una para aislar la que no alcanza
+            }
+        }
+        for (Confirmacion c : grupo) {
+            try {
+                catalogo.ajustarStockLote(c.descuentos);
+                terminar(c, null);
+            } catch (ProductoNoEncontradoException | StockInsuficienteException | RuntimeException e) {
+                terminar(c, e);
+            }
+        }
+    }
+
+    private void terminar(Confirmacion c, Exception error) {
+        if (error == null) {
+            soltar(c.unidades);
+        }
+        c.error = error;
+        c.terminada = true;
+    }
+
+    /**
+     * Retira las reservas de la orden y verifica que cubran cada ítem. Lo
+     * reservado de más se libera en el acto.
+     *
+     * @return Unidades por código a confirmar, en el orden de los ítems
+     */
+    private Map<String, Integer> tomarReservas(Orden orden) {
+        Map<String, Integer> unidades = unidadesDe(orden);
+        Reserva reserva = reservasPorOrden.remove(orden);
+        Map<String, Integer> reservas = reserva == null ? null : reserva.unidades;
+        Map<String, Integer> sobrante = reservas == null ? new HashMap<>() : new HashMap<>(reservas);
+        for (Map.Entry<String, Integer> e : unidades.entrySet()) {
+            int reservadas = sobrante.getOrDefault(e.getKey(), 0);
+            if (e.getValue() > reservadas) {
+                if (reservas != null) {
+                    anotar(orden, reservas);
+                }
+                throw new IllegalStateException("La orden " + orden.getId() + " tiene " + e.getValue()
+                        + " unidades de " + e.getKey() + " pero solo reservó " + reservadas);
+            }
+            sobrante.merge(e.getKey(), -e.getValue(), Integer::sum);
+        }
+        soltar(sobrante);
+        return unidades;
+    }
+
+    /**
+     * Deshace la confirmación de una orden cuyo cobro falló: la orden vuelve a
+     * reservar sus unidades y el stock se devuelve al catálogo, así puede
+     * cobrarse de nuevo o cancelarse. La reserva se rehace antes de devolver el
+     * stock, de modo que esas unidades nunca quedan libres para otra orden en
+     * el medio. Los productos eliminados desde la confirmación no se vuelven a
+     * reservar ni reciben stock; si uno se elimina mientras se revierte, su
+     * reserva se suelta.
+     *
+     * @param orden Orden confirmada con {@link #confirmar} y no cobrada
+     */
+    public void revertir(Orden orden) {
+        Map<String, Integer> devoluciones = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> e : unidadesDe(orden).entrySet()) {
+            if (catalogo.existeProducto(e.getKey())) {
+                devoluciones.put(e.getKey(), e.getValue());
+            }
+        }
+        for (Map.Entry<String, Integer> e : devoluciones.entrySet()) {
+            reservadoPorProducto.computeIfAbsent(e.getKey(), c -> new AtomicInteger()).addAndGet(e.getValue());
+        }
+        anotar(orden, devoluciones);
+
+        try {
+            catalogo.ajustarStockLote(devoluciones);
+        } catch (ProductoNoEncontradoException | StockInsuficienteException e) {
+            // Un producto se eliminó entre medio: se devuelve el resto de a uno
+            for (Map.Entry<String, Integer> d : devoluciones.entrySet()) {
+                try {
+                    catalogo.ajustarStock(d.getKey(), d.getValue());
+                } catch (ProductoNoEncontradoException | StockInsuficienteException ignorada) {
+                    liberar(orden, d.getKey(), d.getValue()); // Eliminado: tampoco queda reservado
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Unidades por código de los ítems de la orden, en su orden
+     */
+    private static Map<String, Integer> unidadesDe(Orden orden) {
+        Map<String, Integer> unidades = new LinkedHashMap<>();
+        for (ItemOrden item : orden.getItems()) {
+            unidades.merge(item.getProducto().getCodigo(), item.getCantidad(), Integer::sum);
+        }
+        return unidades;
+    }
+
+    /**
+     * Suma unidades a la reserva de la orden (nuevas o que se le retiraron) y
+     * renueva su plazo.
+     */
+    private void anotar(Orden orden, Map<String, Integer> reservas) {
+        long vence = System.nanoTime() + plazoNanos;
+        reservasPorOrden.compute(orden, (o, actual) -> {
+            Reserva reserva = actual != null ? actual : new Reserva();
+            reservas.forEach((codigo, cantidad) -> reserva.unidades.merge(codigo, cantidad, Integer::sum));
+            reserva.vence = vence;
+            return reserva;
+        });
+    }
+
+    /**
+     * Descuenta unidades de los contadores de reservado por producto.
+     */
+    private void soltar(Map<String, Integer> unidades) {
+        for (Map.Entry<String, Integer> e : unidades.entrySet()) {
+            AtomicInteger reservado = reservadoPorProducto.get(e.getKey());
+            if (reservado != null && e.getValue() > 0) {
+                reservado.addAndGet(-e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Unidades de un producto que todavía se pueden reservar.
+     */
+    public int disponible(String codigo) {
+        Producto producto = catalogo.obtenerPorCodigo(codigo);
+        if (producto == null) {
+            return 0;
+        }
+        return Math.max(producto.getStock() - reservado(codigo), 0);
+    }
+
+    /**
+     * Unidades de un producto reservadas por órdenes abiertas.
+     */
+    public int reservado(String codigo) {
+        AtomicInteger reservado = reservadoPorProducto.get(codigo);
+        return reservado == null ? 0 : reservado.get();
+    }
+
+    /**
+     * Unidades reservadas por una orden, por código de producto, y el momento
+     * (System.nanoTime) en que vencen.
+     */
+    private static class Reserva {
+        final Map<String, Integer> unidades = new HashMap<>();
+        long vence;
+    }
+
+    /**
+     * Venta de una orden que espera ser descontada del catálogo.
+     */
+    private static class Confirmacion {
+        final Map<String, Integer> unidades;
+        final Map<String, Integer> descuentos = new LinkedHashMap<>();
+        // Los escribe el hilo que aplica el grupo, con el cerrojo de aplicación tomado
+        Exception error;
+        boolean terminada;
+
+        Confirmacion(Map<String, Integer> unidades) {
+            this.unidades = unidades;
+            unidades.forEach((codigo, cantidad) -> descuentos.put(codigo, -cantidad));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package application;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Resultado de una importación masiva: cuántas filas se aplicaron y el
+ * detalle de las que se rechazaron (posición en el lote y motivo).
+ */
+public class ResultadoImportacion {
+    private int agregados;
+    private int actualizados;
+    private final List<Rechazo> rechazos = new ArrayList<>();
+
+    void sumarAgregado() { agregados++; }
+    void sumarActualizado() { actualizados++; }
+    void rechazar(int fila, String codigo, String motivo) {
+        rechazos.add(new Rechazo(fila, codigo, motivo));
+    }
+
+    /**
+     * Suma el resultado de un lote parcial, traduciendo sus filas a posiciones
+     * del origen completo.
+     *
+     * @param filas Posición en el origen de cada fila del lote
+     */
+    void acumular(ResultadoImportacion parcial, int[] filas) {
+        agregados += parcial.agregados;
+        actualizados += parcial.actualizados;
+        for (Rechazo r : parcial.rechazos) {
+            rechazos.add(new Rechazo(filas[r.getFila()], r.getCodigo(), r.getMotivo()));
+        }
+    }
+
+    // —————————————————————— GETTERS ——————————————————————
+
+    public int getAgregados() { return agregados; }
+    public int getActualizados() { return actualizados; }
+    public int getAceptados() { return agregados + actualizados; }
+    public List<Rechazo> getRechazos() { return Collections.unmodifiableList(rechazos); }
+    public boolean tieneRechazos() { return !rechazos.isEmpty(); }
+
+    @Override
+    public String toString() {
+        return "ResultadoImportacion{" +
+                "agregados=" + agregados +
+                ", actualizados=" + actualizados +
+                ", rechazos=" + rechazos.size() +
+                '}';
+    }
+
+    /**
+     * Fila rechazada de un lote.
+     */
+    public static class Rechazo {
+        private final int fila;
+        private final String codigo;
+        private final String motivo;
+
+        public Rechazo(int fila, String codigo, String motivo) {
+            this.fila = fila;
+            this.codigo = codigo;
+            this.motivo = motivo;
+        }
+
+        /** @return Posición de la fila en el lote (empezando en 0) */
+        public int getFila() { return fila; }
+        public String getCodigo() { return codigo; }
+        public String getMotivo() { return motivo; }
+
+        @Override
+        public String toString() {
+            return "Fila " + fila + " (" + codigo + "): " + motivo;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package data;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Resultado de un respaldo: qué instantánea quedó y cuánto trabajo hizo falta.
+ */
+public class ResultadoRespaldo {
+    private String instantanea;
+    private boolean sinCambios;
+    private int archivos;
+    private int archivosSinCambios;
+    private int bloquesNuevos;
+    private int bloquesReutilizados;
+    private long bytesLeidos;
+    private long bytesEscritos;
+
+    void setInstantanea(String instantanea) { this.instantanea = instantanea; }
+    void marcarSinCambios() { sinCambios = true; }
+    void sumarArchivo(boolean cambio) {
+        archivos++;
+        if (!cambio) archivosSinCambios++;
+    }
+    void sumarBloque(boolean nuevo, long leidos, long escritos) {
+        if (nuevo) bloquesNuevos++; else bloquesReutilizados++;
+        bytesLeidos += leidos;
+        bytesEscritos += escritos;
+    }
+
+    // —————————————————————— GETTERS ——————————————————————
+
+    /** @return Identificador de la instantánea (la anterior si no hubo cambios) */
+    public String getInstantanea() { return instantanea; }
+    /** @return true si ningún archivo cambió y no se escribió una instantánea nueva */
+    public boolean isSinCambios() { return sinCambios; }
+    public int getArchivos() { return archivos; }
+    public int getArchivosSinCambios() { return archivosSinCambios; }
+    public int getBloquesNuevos() { return bloquesNuevos; }
+    public int getBloquesReutilizados() { return bloquesReutilizados; }
+    /** @return Bytes leídos de archivos que cambiaron */
+    public long getBytesLeidos() { return bytesLeidos; }
+    /** @return Bytes comprimidos escritos en bloques nuevos */
+    public long getBytesEscritos() { return bytesEscritos; }
+
+    @Override
+    public String toString() {
+        return "ResultadoRespaldo{" +
+                "instantanea='" + instantanea + '\'' +
+                ", sinCambios=" + sinCambios +
+                ", archivos=" + archivos +
+                ", archivosSinCambios=" + archivosSinCambios +
+                ", bloquesNuevos=" + bloquesNuevos +
+                ", bloquesReutilizados=" + bloquesReutilizados +
+                ", bytesLeidos=" + bytesLeidos +
+                ", bytesEscritos=" + bytesEscritos +
+                '}';
+    }
+}
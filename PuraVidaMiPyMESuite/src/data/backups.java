@@ -4,10 +4,552 @@
  */
 package data;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
 /**
  *
  * @author TheJPlay2006
  */
+/**
+ * Motor de respaldos incrementales del inventario, los clientes y las facturas.
+ *
+ * Cada archivo se corta en bloques definidos por su contenido (un hash
+ * rodante decide los cortes), así que insertar o borrar una fila solo cambia
+ * los bloques vecinos y no todos los siguientes. Cada bloque se guarda una
+ * sola vez, comprimido con gzip y nombrado por su SHA-256:
+ * <pre>
+ * respaldos/bloques/ab/abcdef....gz
+ * respaldos/instantaneas/20250101-120000-000.txt
+ * </pre>
+ * Una instantánea es la lista de archivos con su tamaño, fecha, SHA-256 y
+ * bloques. Se escribe al final, cuando todos sus bloques ya están en disco,
+ * de modo que una instantánea visible siempre está completa.
+ *
+ * Un archivo con el mismo tamaño y fecha que en la instantánea anterior no se
+ * vuelve a leer. Si nada cambió, no se crea una instantánea nueva.
+ *
+ * Todo el trabajo corre en un hilo de fondo propio ({@link #iniciar}, y los
+ * métodos {@code *EnSegundoPlano}), nunca en el hilo de eventos de Swing.
+ * Al restaurar se comprueba el SHA-256 de cada bloque y de cada archivo.
+ */
 public class backups {
-    
+    private static final String CABECERA = "PVR1";
+    private static final DateTimeFormatter FORMATO_ID = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    private static final int TAMANO_BUFFER = 1 << 16;
+
+    /**
+     * Lo que respalda {@link #backups()}: el inventario de cualquiera de sus
+     * almacenes (CSV con su copia en columnas, binario o registros fijos) con
+     * sus journals, incluido el apartado durante una compactación, los
+     * clientes, el registro de órdenes y las facturas. Los que no existen se
+     * omiten.
+     */
+    public static final List<String> ORIGENES_POR_DEFECTO = List.of(
+            "data/inventario.csv", "data/inventario.col", "data/inventario.journal", "data/inventario.journal.1",
+            "data/inventario.bin", "data/inventario.bin.journal", "data/inventario.bin.journal.1",
+            "data/inventario.dat", "data/inventario.dat.lote",
+            "data/clientes.csv", "data/ordenes", "facturas");
+
+    // Cortes definidos por contenido: bloques de 64 KB a 1 MB, unos 320 KB en promedio
+    private static final int BLOQUE_MINIMO = 64 * 1024;
+    private static final int BLOQUE_MAXIMO = 1024 * 1024;
+    private static final long MASCARA_CORTE = -1L << (64 - 18);
+    private static final long[] ENGRANAJE = new long[256];
+
+    static {
+        SplittableRandom aleatorio = new SplittableRandom(0x5075726156696461L); // Fija: los cortes no deben cambiar
+        for (int i = 0; i < ENGRANAJE.length; i++) {
+            ENGRANAJE[i] = aleatorio.nextLong();
+        }
+    }
+
+    private final Path base;
+    private final Path dirBloques;
+    private final Path dirInstantaneas;
+    private final List<String> origenes;
+    private final ScheduledExecutorService planificador;
+    private ScheduledFuture<?> tareaPeriodica;
+
+    /**
+     * Respalda los {@link #ORIGENES_POR_DEFECTO} del directorio actual en "respaldos".
+     */
+    public backups() {
+        this(Paths.get("."), Paths.get("respaldos"), ORIGENES_POR_DEFECTO);
+    }
+
+    /**
+     * @param base Directorio contra el que se resuelven los orígenes
+     * @param destino Directorio de los respaldos
+     * @param origenes Archivos o carpetas (relativos a base) a respaldar; las carpetas se recorren completas
+     */
+    public backups(Path base, Path destino, List<String> origenes) {
+        this.base = base;
+        this.dirBloques = destino.resolve("bloques");
+        this.dirInstantaneas = destino.resolve("instantaneas");
+        this.origenes = List.copyOf(origenes);
+        this.planificador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "respaldos");
+            hilo.setDaemon(true);
+            hilo.setPriority(Thread.MIN_PRIORITY);
+            return hilo;
+        });
+    }
+
+    // —————————————————————— PLANIFICACIÓN ——————————————————————
+
+    /**
+     * Programa un respaldo periódico en el hilo de fondo (reemplaza al anterior).
+     */
+    public synchronized void iniciar(long intervalo, TimeUnit unidad) {
+        if (tareaPeriodica != null) {
+            tareaPeriodica.cancel(false);
+        }
+        tareaPeriodica = planificador.scheduleWithFixedDelay(this::respaldarSinPropagar, intervalo, intervalo, unidad);
+    }
+
+    /**
+     * Detiene los respaldos programados; un respaldo en curso termina igual.
+     */
+    public synchronized void detener() {
+        if (tareaPeriodica != null) {
+            tareaPeriodica.cancel(false);
+            tareaPeriodica = null;
+        }
+        planificador.shutdown();
+    }
+
+    public CompletableFuture<ResultadoRespaldo> respaldarEnSegundoPlano() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return respaldar();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, planificador);
+    }
+
+    public CompletableFuture<Integer> restaurarEnSegundoPlano(String instantanea, Path destino) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return restaurar(instantanea, destino);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, planificador);
+    }
+
+    private void respaldarSinPropagar() {
+        try {
+            respaldar();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error en respaldo programado: " + e.getMessage());
+        }
+    }
+
+    // —————————————————————— RESPALDO ——————————————————————
+
+    /**
+     * Toma una instantánea de los orígenes en el hilo que llama.
+     */
+    public synchronized ResultadoRespaldo respaldar() throws IOException {
+        ResultadoRespaldo resultado = new ResultadoRespaldo();
+        String anteriorId = ultimaInstantanea();
+        Map<String, Entrada> anterior = anteriorId == null ? Map.of() : leerInstantanea(anteriorId);
+
+        Map<String, Entrada> actual = new LinkedHashMap<>();
+        boolean huboCambios = false;
+        for (Path archivo : listarOrigenes()) {
+            String ruta = relativa(archivo);
+            long tamano = Files.size(archivo);
+            long modificacion = Files.getLastModifiedTime(archivo).toMillis();
+            Entrada previa = anterior.get(ruta);
+            if (previa != null && previa.tamano == tamano && previa.modificacion == modificacion) {
+                actual.put(ruta, previa);
+                resultado.sumarArchivo(false);
+                continue;
+            }
+            Entrada entrada = respaldarArchivo(archivo, ruta, modificacion, resultado);
+            actual.put(ruta, entrada);
+            boolean cambio = previa == null || !previa.hash.equals(entrada.hash);
+            resultado.sumarArchivo(cambio);
+            huboCambios |= cambio || previa.modificacion != modificacion;
+        }
+        huboCambios |= !actual.keySet().equals(anterior.keySet());
+
+        if (!huboCambios) {
+            resultado.setInstantanea(anteriorId);
+            resultado.marcarSinCambios();
+            return resultado;
+        }
+        String id = nuevoId(anteriorId);
+        escribirInstantanea(id, actual);
+        resultado.setInstantanea(id);
+        return resultado;
+    }
+
+    /**
+     * Corta el archivo en bloques y guarda los que todavía no existen.
+     */
+    private Entrada respaldarArchivo(Path archivo, String ruta, long modificacion, ResultadoRespaldo resultado)
+            throws IOException {
+        MessageDigest digestoArchivo = sha256();
+        List<String> bloques = new ArrayList<>();
+        ByteArrayOutputStream bloque = new ByteArrayOutputStream(BLOQUE_MAXIMO);
+        byte[] buffer = new byte[TAMANO_BUFFER];
+        long tamano = 0;
+        long hash = 0;
+        try (InputStream in = Files.newInputStream(archivo)) {
+            int leidos;
+            while ((leidos = in.read(buffer)) > 0) {
+                digestoArchivo.update(buffer, 0, leidos);
+                tamano += leidos;
+                int inicio = 0;
+                for (int i = 0; i < leidos; i++) {
+                    hash = (hash << 1) + ENGRANAJE[buffer[i] & 0xFF];
+                    int largo = bloque.size() + i - inicio + 1;
+                    if ((largo >= BLOQUE_MINIMO && (hash & MASCARA_CORTE) == 0) || largo >= BLOQUE_MAXIMO) {
+                        bloque.write(buffer, inicio, i - inicio + 1);
+                        bloques.add(guardarBloque(bloque, resultado));
+                        bloque.reset();
+                        inicio = i + 1;
+                        hash = 0;
+                    }
+                }
+                bloque.write(buffer, inicio, leidos - inicio);
+            }
+        }
+        if (bloque.size() > 0) {
+            bloques.add(guardarBloque(bloque, resultado));
+        }
+        return new Entrada(ruta, tamano, modificacion, HexFormat.of().formatHex(digestoArchivo.digest()), bloques);
+    }
+
+    /**
+     * @return SHA-256 del bloque, que es también su nombre
+     */
+    private String guardarBloque(ByteArrayOutputStream bloque, ResultadoRespaldo resultado) throws IOException {
+        byte[] datos = bloque.toByteArray();
+        String hash = HexFormat.of().formatHex(sha256().digest(datos));
+        Path destino = rutaBloque(hash);
+        if (Files.exists(destino)) {
+            resultado.sumarBloque(false, datos.length, 0);
+            return hash;
+        }
+        Files.createDirectories(destino.getParent());
+        Path temporal = destino.resolveSibling(destino.getFileName() + ".tmp");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temporal), TAMANO_BUFFER)) {
+            out.write(datos);
+        }
+        long escritos = Files.size(temporal);
+        mover(temporal, destino);
+        resultado.sumarBloque(true, datos.length, escritos);
+        return hash;
+    }
+
+    // —————————————————————— RESTAURACIÓN ——————————————————————
+
+    /**
+     * Restaura todos los archivos de una instantánea bajo {@code destino},
+     * verificando cada bloque y cada archivo. Un archivo solo se reemplaza si
+     * se reconstruyó completo y sin diferencias.
+     *
+     * @return Cantidad de archivos restaurados
+     * @throws IOException Si falta un bloque o algún contenido no coincide
+     */
+    public synchronized int restaurar(String instantanea, Path destino) throws IOException {
+        Map<String, Entrada> entradas = leerInstantanea(instantanea);
+        Path raiz = destino.toAbsolutePath().normalize();
+        for (Entrada entrada : entradas.values()) {
+            Path archivo = raiz.resolve(entrada.ruta).normalize();
+            if (!archivo.startsWith(raiz)) {
+                throw new IOException("Ruta fuera del destino en la instantánea: " + entrada.ruta);
+            }
+            Path dir = archivo.getParent();
+            if (dir != null) {
+                Files.createDirectories(dir);
+            }
+            Path temporal = archivo.resolveSibling(archivo.getFileName() + ".restaurando");
+            try (OutputStream out = Files.newOutputStream(temporal)) {
+                reconstruir(entrada, out);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temporal);
+                throw e;
+            }
+            mover(temporal, archivo);
+            Files.setLastModifiedTime(archivo, FileTime.fromMillis(entrada.modificacion));
+        }
+        return entradas.size();
+    }
+
+    /**
+     * Comprueba que todos los bloques de una instantánea estén presentes y
+     * reconstruyan exactamente cada archivo, sin escribir nada.
+     *
+     * @return Problemas encontrados (vacía si la instantánea está sana)
+     */
+    public synchronized List<String> verificar(String instantanea) throws IOException {
+        List<String> problemas = new ArrayList<>();
+        for (Entrada entrada : leerInstantanea(instantanea).values()) {
+            try {
+                reconstruir(entrada, OutputStream.nullOutputStream());
+            } catch (IOException e) {
+                problemas.add(entrada.ruta + ": " + e.getMessage());
+            }
+        }
+        return problemas;
+    }
+
+    /**
+     * Escribe el contenido de un archivo a partir de sus bloques, comprobando
+     * el hash de cada bloque, el tamaño y el hash del archivo completo.
+     */
+    private void reconstruir(Entrada entrada, OutputStream out) throws IOException {
+        MessageDigest digestoArchivo = sha256();
+        MessageDigest digestoBloque = sha256();
+        byte[] buffer = new byte[TAMANO_BUFFER];
+        long tamano = 0;
+        for (String hash : entrada.bloques) {
+            Path bloque = rutaBloque(hash);
+            if (!Files.exists(bloque)) {
+                throw new IOException("Falta el bloque " + hash);
+            }
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(bloque), TAMANO_BUFFER)) {
+                int leidos;
+                while ((leidos = in.read(buffer)) > 0) {
+                    digestoBloque.update(buffer, 0, leidos);
+                    digestoArchivo.update(buffer, 0, leidos);
+                    out.write(buffer, 0, leidos);
+                    tamano += leidos;
+                }
+            }
+            if (!hash.equals(HexFormat.of().formatHex(digestoBloque.digest()))) {
+                throw new IOException("Bloque dañado: " + hash);
+            }
+        }
+        if (tamano != entrada.tamano || !entrada.hash.equals(HexFormat.of().formatHex(digestoArchivo.digest()))) {
+            throw new IOException("El contenido reconstruido no coincide con el original");
+        }
+    }
+
+    // —————————————————————— INSTANTÁNEAS ——————————————————————
+
+    /**
+     * @return Identificadores de las instantáneas, de la más vieja a la más nueva
+     */
+    public List<String> listarInstantaneas() throws IOException {
+        if (!Files.isDirectory(dirInstantaneas)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> archivos = Files.list(dirInstantaneas)) {
+            return archivos.map(p -> p.getFileName().toString())
+                    .filter(n -> n.endsWith(".txt"))
+                    .map(n -> n.substring(0, n.length() - 4))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Conserva las {@code conservar} instantáneas más nuevas y borra las demás
+     * junto con los bloques que ya nadie usa.
+     *
+     * @return Cantidad de bloques borrados
+     */
+    public synchronized int podar(int conservar) throws IOException {
+        if (conservar < 1) {
+            throw new IllegalArgumentException("Hay que conservar al menos una instantánea");
+        }
+        List<String> ids = listarInstantaneas();
+        if (ids.size() <= conservar) {
+            return 0;
+        }
+        for (String id : ids.subList(0, ids.size() - conservar)) {
+            Files.delete(rutaInstantanea(id));
+        }
+        Set<String> usados = new HashSet<>();
+        for (String id : ids.subList(ids.size() - conservar, ids.size())) {
+            for (Entrada entrada : leerInstantanea(id).values()) {
+                usados.addAll(entrada.bloques);
+            }
+        }
+        int borrados = 0;
+        try (Stream<Path> archivos = Files.walk(dirBloques)) {
+            for (Path bloque : (Iterable<Path>) archivos.filter(Files::isRegularFile)::iterator) {
+                String nombre = bloque.getFileName().toString();
+                if (nombre.endsWith(".gz") && !usados.contains(nombre.substring(0, nombre.length() - 3))) {
+                    Files.delete(bloque);
+                    borrados++;
+                }
+            }
+        }
+        return borrados;
+    }
+
+    private String ultimaInstantanea() throws IOException {
+        List<String> ids = listarInstantaneas();
+        return ids.isEmpty() ? null : ids.get(ids.size() - 1);
+    }
+
+    private Map<String, Entrada> leerInstantanea(String id) throws IOException {
+        Path archivo = rutaInstantanea(id);
+        if (!Files.exists(archivo)) {
+            throw new IOException("No existe la instantánea: " + id);
+        }
+        Map<String, Entrada> entradas = new LinkedHashMap<>();
+        try (BufferedReader lector = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            if (!CABECERA.equals(lector.readLine())) {
+                throw new IOException("Instantánea con formato desconocido: " + id);
+            }
+            String linea;
+            while ((linea = lector.readLine()) != null) {
+                String[] campos = linea.split("\t", -1);
+                if (campos.length != 5) {
+                    throw new IOException("Instantánea dañada: " + id);
+                }
+                try {
+                    List<String> bloques = campos[4].isEmpty() ? List.of() : Arrays.asList(campos[4].split(","));
+                    entradas.put(campos[0], new Entrada(campos[0], Long.parseLong(campos[1]),
+                            Long.parseLong(campos[2]), campos[3], bloques));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Instantánea dañada: " + id, e);
+                }
+            }
+        }
+        return entradas;
+    }
+
+    private void escribirInstantanea(String id, Map<String, Entrada> entradas) throws IOException {
+        Files.createDirectories(dirInstantaneas);
+        Path archivo = rutaInstantanea(id);
+        Path temporal = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporal, StandardCharsets.UTF_8)) {
+            writer.write(CABECERA);
+            writer.newLine();
+            for (Entrada e : entradas.values()) {
+                writer.write(e.ruta + "\t" + e.tamano + "\t" + e.modificacion + "\t" + e.hash
+                        + "\t" + String.join(",", e.bloques));
+                writer.newLine();
+            }
+        }
+        mover(temporal, archivo);
+    }
+
+    // —————————————————————— AUXILIARES ——————————————————————
+
+    /**
+     * @return Archivos regulares de los orígenes que existen, en orden estable
+     */
+    private List<Path> listarOrigenes() throws IOException {
+        List<Path> archivos = new ArrayList<>();
+        for (String origen : origenes) {
+            Path ruta = base.resolve(origen);
+            if (Files.isRegularFile(ruta)) {
+                archivos.add(ruta);
+            } else if (Files.isDirectory(ruta)) {
+                try (Stream<Path> contenido = Files.walk(ruta)) {
+                    contenido.filter(Files::isRegularFile).sorted().forEach(archivos::add);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+        return archivos;
+    }
+
+    private String relativa(Path archivo) {
+        return base.relativize(archivo).normalize().toString().replace('\\', '/');
+    }
+
+    /**
+     * Identificador por fecha y hora; si coincide con el anterior (dos
+     * respaldos en el mismo milisegundo) se le agrega un sufijo.
+     */
+    private String nuevoId(String anteriorId) {
+        String id = LocalDateTime.now().format(FORMATO_ID);
+        int sufijo = 1;
+        String candidato = id;
+        while (anteriorId != null && candidato.compareTo(anteriorId) <= 0) {
+            candidato = id + "-" + sufijo++;
+        }
+        return candidato;
+    }
+
+    private Path rutaBloque(String hash) {
+        return dirBloques.resolve(hash.substring(0, 2)).resolve(hash + ".gz");
+    }
+
+    private Path rutaInstantanea(String id) {
+        return dirInstantaneas.resolve(id + ".txt");
+    }
+
+    private static void mover(Path origen, Path destino) throws IOException {
+        try {
+            Files.move(origen, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(origen, destino, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    /**
+     * Un archivo dentro de una instantánea.
+     */
+    private static class Entrada {
+        final String ruta;
+        final long tamano;
+        final long modificacion;
+        final String hash;
+        final List<String> bloques;
+
+        Entrada(String ruta, long tamano, long modificacion, String hash, List<String> bloques) {
+            this.ruta = ruta;
+            this.tamano = tamano;
+            this.modificacion = modificacion;
+            this.hash = hash;
+            this.bloques = bloques;
+        }
+    }
 }
@@ -4,13 +4,22 @@
  */
 package domain;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
 /**
  *
  * @author Emesis
  */
+/**
+ * Línea de una orden. El precio unitario se fija en centavos al crear el
+ * ítem. La cantidad de una línea se cambia desde su orden
+ * ({@link Orden#cambiarCantidad}), que valida el stock y mantiene sus totales.
+ */
 public class ItemOrden {
     private Producto producto;
     private int cantidad;
+    private final long precioCentavos;
 
     public ItemOrden(Producto producto, int cantidad) {
         if (producto == null) {
@@ -19,8 +28,12 @@ public class ItemOrden {
         if (cantidad <= 0) {
             throw new IllegalArgumentException("La cantidad debe ser mayor a cero.");
         }
+        if (Double.isNaN(producto.getPrecio()) || Double.isInfinite(producto.getPrecio())) {
+            throw new IllegalArgumentException("Precio inválido: " + producto.getPrecio());
+        }
         this.producto = producto;
         this.cantidad = cantidad;
+        this.precioCentavos = aCentavos(producto.getPrecio());
     }
 
     // Getters
@@ -32,8 +45,10 @@ public class ItemOrden {
         return cantidad;
     }
 
-    // Setters (opcional)
-    public void setCantidad(int cantidad) {
+    /**
+     * Solo la orden cambia la cantidad, después de ajustar sus totales.
+     */
+    void setCantidad(int cantidad) {
         if (cantidad <= 0) {
             throw new IllegalArgumentException("La cantidad debe ser mayor a cero.");
         }
@@ -42,7 +57,34 @@ public class ItemOrden {
 
     // Precio total del item
     public double getTotal() {
-        return producto.getPrecio() * cantidad;
+        return getTotalCentavos() / 100.0;
+    }
+
+    public long getPrecioCentavos() {
+        return precioCentavos;
+    }
+
+    public long getTotalCentavos() {
+        return totalCon(cantidad);
+    }
+
+    /**
+     * @return Total de la línea si tuviera esa cantidad
+     * @throws ArithmeticException Si no cabe en centavos
+     */
+    long totalCon(int cantidad) {
+        return Math.multiplyExact(precioCentavos, (long) cantidad);
+    }
+
+    /**
+     * Precio en centavos, redondeado como se muestra (dos decimales, medio centavo hacia arriba).
+     */
+    static long aCentavos(double precio) {
+        double centavos = precio * 100;
+        if (centavos == Math.rint(centavos) && Math.abs(centavos) < 0x1p53) {
+            return (long) centavos; // Caso común: el precio ya tiene a lo sumo dos decimales
+        }
+        return BigDecimal.valueOf(precio).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
     }
 
     @Override
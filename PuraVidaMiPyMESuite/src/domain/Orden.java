@@ -8,6 +8,8 @@ import exception.PagoInvalidoException;
 import exception.StockInsuficienteException;
 import infrastructure.ComprobanteGenerator;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
@@ -19,15 +21,31 @@ import java.util.*;
 /**
  * Representa una orden de venta con ítems, descuentos, impuestos y método de pago.
  * Genera una factura con código de control (HMAC-SHA256).
+ *
+ * Los montos se llevan en centavos enteros. El subtotal se actualiza al
+ * agregar ítems o cambiar cantidades, y descuento, impuesto y total se
+ * recalculan (con redondeo a medio centavo hacia arriba) solo cuando cambia
+ * alguno de sus datos, así que consultarlos no recorre los ítems.
+ *
+ * Hay una sola línea por producto: volver a agregar un código suma la
+ * cantidad a su línea, y el stock se valida contra la cantidad acumulada.
  */
 public class Orden {
     private String id;
     private Cliente cliente;
-    private List<ItemOrden> items;
+    private List<ItemOrden> items; // En el orden en que se agregaron
+    private final Map<String, ItemOrden> itemsPorCodigo = new HashMap<>();
+    private final List<ItemOrden> vistaItems;
     private double descuento; // %
     private EstrategiaPago metodoPago;
     private double impuesto; // % (13% por defecto)
 
+    // Totales en centavos, siempre al día
+    private long subtotalCentavos;
+    private long descuentoCentavos;
+    private long impuestoCentavos;
+    private long totalCentavos;
+
     /**
      * Crea una nueva orden.
      * @param id Identificador único de la orden
@@ -38,41 +56,132 @@ public class Orden {
         this.id = id;
         this.cliente = cliente;
         this.items = new ArrayList<>();
+        this.vistaItems = Collections.unmodifiableList(items);
         this.metodoPago = metodoPago;
         this.descuento = 0;
         this.impuesto = 0.13; // 13%
     }
 
     /**
-     * Agrega un ítem a la orden. Verifica stock.
+     * Agrega un ítem a la orden. Si el producto ya está en la orden, suma la
+     * cantidad a su línea (que conserva su precio). Verifica stock contra la
+     * cantidad total del producto en la orden.
      */
     public void agregarItem(Producto producto, int cantidad) throws StockInsuficienteException {
+        if (cantidad <= 0) {
+            throw new IllegalArgumentException("La cantidad debe ser mayor a cero.");
+        }
+        ItemOrden existente = itemsPorCodigo.get(producto.getCodigo());
+        int enOrden = existente != null ? existente.getCantidad() : 0;
+        long acumulada = (long) enOrden + cantidad;
+        if (producto.getStock() < acumulada) {
+            throw new StockInsuficienteException(
+                "Stock insuficiente para " + producto.getNombre() +
+                ". Disponible: " + producto.getStock() + ", solicitado: " + acumulada +
+                (enOrden > 0 ? " (ya en la orden: " + enOrden + ")" : "")
+            );
+        }
+        agregar(producto, cantidad);
+    }
+
+    /**
+     * Cambia la cantidad de la línea de un producto. El stock se valida contra
+     * la nueva cantidad, que es el total del producto en la orden.
+     *
+     * @param producto Producto de la línea, con su stock actual
+     * @param cantidad Nueva cantidad (mayor a cero)
+     * @throws IllegalArgumentException Si el producto no está en la orden
+     * @throws StockInsuficienteException Si el stock no alcanza para la nueva cantidad
+     */
+    public void cambiarCantidad(Producto producto, int cantidad) throws StockInsuficienteException {
+        if (cantidad <= 0) {
+            throw new IllegalArgumentException("La cantidad debe ser mayor a cero.");
+        }
+        ItemOrden item = itemsPorCodigo.get(producto.getCodigo());
+        if (item == null) {
+            throw new IllegalArgumentException("El producto no está en la orden: " + producto.getCodigo());
+        }
         if (producto.getStock() < cantidad) {
             throw new StockInsuficienteException(
                 "Stock insuficiente para " + producto.getNombre() +
                 ". Disponible: " + producto.getStock() + ", solicitado: " + cantidad
             );
         }
-        items.add(new ItemOrden(producto, cantidad));
+        cambiarLinea(item, cantidad);
+    }
+
+    /**
+     * Agrega un ítem ya vendido, sin verificar stock. Se usa al reconstruir
+     * una orden guardada en el registro de órdenes.
+     */
+    public void agregarItemRegistrado(Producto producto, int cantidad) {
+        agregar(producto, cantidad);
+    }
+
+    private void agregar(Producto producto, int cantidad) {
+        ItemOrden existente = itemsPorCodigo.get(producto.getCodigo());
+        if (existente != null) {
+            cambiarLinea(existente, Math.addExact(existente.getCantidad(), cantidad));
+            return;
+        }
+        ItemOrden item = new ItemOrden(producto, cantidad);
+        fijarTotales(Math.addExact(subtotalCentavos, item.getTotalCentavos()), descuento, impuesto);
+        items.add(item);
+        itemsPorCodigo.put(producto.getCodigo(), item);
+    }
+
+    /**
+     * Ajusta los totales a la nueva cantidad de la línea y recién entonces la
+     * cambia: si algo desborda, ni la línea ni la orden cambian.
+     */
+    private void cambiarLinea(ItemOrden item, int cantidad) {
+        long diferencia = Math.subtractExact(item.totalCon(cantidad), item.getTotalCentavos());
+        fijarTotales(Math.addExact(subtotalCentavos, diferencia), descuento, impuesto);
+        item.setCantidad(cantidad);
+    }
+
+    /**
+     * Calcula descuento, impuesto y total para el subtotal y las tasas dadas y
+     * solo entonces los asigna, junto con el subtotal y las tasas: si alguna
+     * cuenta desborda, la orden queda como estaba. El descuento se aplica
+     * sobre el subtotal y el impuesto sobre el monto ya descontado, cada uno
+     * redondeado al centavo.
+     *
+     * @throws ArithmeticException Si algún monto no cabe en centavos
+     */
+    private void fijarTotales(long subtotal, double descuento, double impuesto) {
+        long descuentoNuevo = porcentaje(subtotal, BigDecimal.valueOf(descuento).movePointLeft(2));
+        long base = Math.subtractExact(subtotal, descuentoNuevo);
+        long impuestoNuevo = porcentaje(base, BigDecimal.valueOf(impuesto));
+        long total = Math.addExact(base, impuestoNuevo);
+
+        this.subtotalCentavos = subtotal;
+        this.descuento = descuento;
+        this.impuesto = impuesto;
+        this.descuentoCentavos = descuentoNuevo;
+        this.impuestoCentavos = impuestoNuevo;
+        this.totalCentavos = total;
+    }
+
+    private static long porcentaje(long centavos, BigDecimal tasa) {
+        if (centavos == 0 || tasa.signum() == 0) {
+            return 0;
+        }
+        return BigDecimal.valueOf(centavos).multiply(tasa).setScale(0, RoundingMode.HALF_UP).longValueExact();
     }
 
     /**
      * Calcula el subtotal (sin descuentos ni impuestos).
      */
     public double calcularSubtotal() {
-        return items.stream()
-                .mapToDouble(item -> item.getProducto().getPrecio() * item.getCantidad())
-                .sum();
+        return subtotalCentavos / 100.0;
     }
 
     /**
      * Calcula el total final (con descuento e impuesto).
      */
     public double calcularTotal() {
-        double subtotal = calcularSubtotal();
-        double conDescuento = subtotal * (1 - descuento / 100);
-        double conImpuesto = conDescuento * (1 + impuesto);
-        return conImpuesto;
+        return totalCentavos / 100.0;
     }
 
     /**
@@ -82,7 +191,7 @@ public class Orden {
      */
     public boolean procesarPago() throws PagoInvalidoException {
         double monto = calcularTotal();
-        if (monto <= 0) {
+        if (totalCentavos <= 0) {
             throw new PagoInvalidoException("El monto a pagar no puede ser cero o negativo.");
         }
         boolean exito = metodoPago.procesarPago(monto);
@@ -107,7 +216,7 @@ public class Orden {
             Producto p = item.getProducto();
             factura.append("- ").append(p.getNombre())
                    .append(" x").append(item.getCantidad())
-                   .append(" = $").append(String.format("%.2f", p.getPrecio() * item.getCantidad()))
+                   .append(" = $").append(String.format("%.2f", item.getTotal()))
                    .append("\n");
         }
         factura.append("Subtotal: $").append(String.format("%.2f", calcularSubtotal())).append("\n");
@@ -134,8 +243,18 @@ public class Orden {
         return cliente;
     }
 
+    /**
+     * @return Vista de solo lectura de las líneas (una por producto), sin copiar
+     */
     public List<ItemOrden> getItems() {
-        return new ArrayList<>(items);
+        return vistaItems;
+    }
+
+    /**
+     * @return La línea del producto, o null si no está en la orden
+     */
+    public ItemOrden getItem(String codigoProducto) {
+        return itemsPorCodigo.get(codigoProducto);
     }
 
     public double getDescuento() {
@@ -146,7 +265,7 @@ public class Orden {
         if (descuento < 0) {
             throw new IllegalArgumentException("El descuento no puede ser negativo");
         }
-        this.descuento = descuento;
+        fijarTotales(subtotalCentavos, descuento, impuesto);
     }
 
     public double getImpuesto() {
@@ -157,10 +276,26 @@ public class Orden {
         if (impuesto < 0) {
             throw new IllegalArgumentException("El impuesto no puede ser negativo");
         }
-        this.impuesto = impuesto;
+        fijarTotales(subtotalCentavos, descuento, impuesto);
     }
 
     public EstrategiaPago getMetodoPago() {
         return metodoPago;
     }
+
+    public long getSubtotalCentavos() {
+        return subtotalCentavos;
+    }
+
+    public long getDescuentoCentavos() {
+        return descuentoCentavos;
+    }
+
+    public long getImpuestoCentavos() {
+        return impuestoCentavos;
+    }
+
+    public long getTotalCentavos() {
+        return totalCentavos;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package exception;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Excepción que se lanza cuando una orden ya se cobró pero no se pudo
+ * registrar o generar su factura. La orden no se deshace: el cobro y el stock
+ * descontado se mantienen y el paso que falló se reintenta con
+ * {@code GestionOrdenes.reintentarCierre}.
+ */
+public class OrdenCobradaException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final String idOrden;
+
+    /**
+     * @param idOrden Id de la orden cobrada.
+     * @param mensaje Explicación del paso que falló.
+     * @param causa   La excepción original.
+     */
+    public OrdenCobradaException(String idOrden, String mensaje, Throwable causa) {
+        super(mensaje, causa);
+        this.idOrden = idOrden;
+    }
+
+    /**
+     * @return Id de la orden cobrada que falta cerrar.
+     */
+    public String getIdOrden() {
+        return idOrden;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package infrastructure;
+
+import domain.Producto;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Almacén del inventario en un archivo binario compacto. Cada producto ocupa
+ * código y nombre en UTF modificado, el precio como double y el stock como int,
+ * sin separadores ni conversión de texto a número al cargar.
+ *
+ * Usa el mismo journal que el CSV, guardado junto al archivo binario.
+ */
+public class AlmacenBinario implements AlmacenInventario {
+    private static final String RUTA_ARCHIVO = "data/inventario.bin";
+    private static final int MAGICO = 0x50564931; // "PVI1"
+    private static final int TAMANO_BUFFER = 1 << 16;
+
+    private final Path ruta;
+    private final JournalInventario journal;
+
+    public AlmacenBinario() {
+        this(Paths.get(RUTA_ARCHIVO));
+    }
+
+    /**
+     * @param ruta Archivo binario; el journal se guarda al lado con sufijo .journal
+     */
+    public AlmacenBinario(Path ruta) {
+        this.ruta = ruta;
+        this.journal = new JournalInventario(ruta.resolveSibling(ruta.getFileName() + ".journal"));
+    }
+
+    @Override
+    public List<Producto> leerProductos() throws IOException {
+        if (!Files.exists(ruta)) {
+            return new ArrayList<>();
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(ruta), TAMANO_BUFFER))) {
+            if (in.readInt() != MAGICO) {
+                throw new IOException("Formato de inventario binario no reconocido: " + ruta);
+            }
+            int cantidad = in.readInt();
+            List<Producto> productos = new ArrayList<>(cantidad);
+            for (int i = 0; i < cantidad; i++) {
+                String codigo = in.readUTF();
+                String nombre = in.readUTF();
+                double precio = in.readDouble();
+                int stock = in.readInt();
+                productos.add(new Producto(codigo, nombre, precio, stock));
+            }
+            return productos;
+        } catch (EOFException e) {
+            throw new IOException("Inventario binario truncado: " + ruta, e);
+        }
+    }
+
+    /**
+     * Reescribe el archivo. Los guardados se serializan: dos llamadas nunca
+     * comparten el temporal.
+     */
+    @Override
+    public synchronized void guardarProductos(List<Producto> productos) throws IOException {
+        try {
+            escribirInstantanea(productos);
+        } catch (IOException | RuntimeException e) {
+            journal.conservarRotado(); // La próxima compactación vuelve a incluirlo
+            throw e;
+        }
+        journal.descartarRotado();
+    }
+
+    private void escribirInstantanea(List<Producto> productos) throws IOException {
+        Path directorio = ruta.getParent();
+        if (directorio != null && !Files.exists(directorio)) {
+            Files.createDirectories(directorio);
+        }
+
+        // Se escribe en un temporal y se reemplaza, para no dejar nunca un archivo a medias
+        Path temporal = ruta.resolveSibling(ruta.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporal), TAMANO_BUFFER))) {
+            out.writeInt(MAGICO);
+            out.writeInt(productos.size());
+            for (Producto p : productos) {
+                out.writeUTF(p.getCodigo());
+                out.writeUTF(p.getNombre());
+                out.writeDouble(p.getPrecio());
+                out.writeInt(p.getStock());
+            }
+        }
+        try {
+            Files.move(temporal, ruta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporal, ruta, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // —————————————————————— JOURNAL ——————————————————————
+
+    @Override
+    public void registrarAlta(Producto p) throws IOException {
+        journal.registrarAlta(p);
+    }
+
+    @Override
+    public void registrarEdicion(Producto p) throws IOException {
+        journal.registrarEdicion(p);
+    }
+
+    @Override
+    public void registrarBaja(String codigo) throws IOException {
+        journal.registrarBaja(codigo);
+    }
+
+    @Override
+    public void registrarStock(String codigo, int stock) throws IOException {
+        journal.registrarStock(codigo, stock);
+    }
+
+    @Override
+    public void registrarStocks(Map<String, Integer> stocks) throws IOException {
+        journal.registrarStocks(stocks);
+    }
+
+    @Override
+    public boolean necesitaCompactacion() {
+        return journal.necesitaCompactacion();
+    }
+
+    @Override
+    public void rotarJournal() throws IOException {
+        journal.rotar();
+    }
+
+    @Override
+    public int reproducirJournal(Map<String, Producto> productos) throws IOException {
+        return journal.reproducir(productos);
+    }
+
+    @Override
+    public void cerrarJournal() throws IOException {
+        journal.cerrar();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package infrastructure;
+
+import domain.Producto;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Motor de almacenamiento del inventario. Lo usan tanto {@code Catalogo} como
+ * {@code GestionInventario}, de modo que el formato en disco (CSV, binario o
+ * solo memoria) se elige por configuración sin tocar los servicios.
+ *
+ * Un almacén solo está obligado a leer y guardar la instantánea completa.
+ * Los métodos de journal son opcionales: por defecto no anotan nada y
+ * {@link #necesitaCompactacion()} devuelve true, así que el catálogo guarda la
+ * instantánea completa tras cada cambio. Un almacén con journal sobrescribe
+ * esos métodos y solo pide compactar cuando el journal crece.
+ */
+public interface AlmacenInventario {
+
+    /**
+     * Lee todos los productos de la última instantánea guardada.
+     * Si todavía no existe, devuelve una lista vacía.
+     */
+    List<Producto> leerProductos() throws IOException;
+
+    /**
+     * Reemplaza la instantánea guardada por los productos dados.
+     */
+    void guardarProductos(List<Producto> productos) throws IOException;
+
+    /**
+     * Indica si el producto cabe en el formato del almacén, para rechazarlo
+     * antes de aplicarlo en memoria y no descubrirlo recién al guardar.
+     *
+     * @return Motivo del rechazo, o null si el almacén puede guardarlo
+     */
+    default String validarProducto(Producto p) {
+        return null;
+    }
+
+    // —————————————————————— JOURNAL (opcional) ——————————————————————
+
+    /**
+     * Anota el alta de un producto.
+     */
+    default void registrarAlta(Producto p) throws IOException {
+    }
+
+    /**
+     * Anota la edición completa de un producto.
+     */
+    default void registrarEdicion(Producto p) throws IOException {
+    }
+
+    /**
+     * Anota la baja de un producto.
+     */
+    default void registrarBaja(String codigo) throws IOException {
+    }
+
+    /**
+     * Anota el nuevo stock (valor absoluto) de un producto.
+     */
+    default void registrarStock(String codigo, int stock) throws IOException {
+    }
+
+    /**
+     * Anota varios stocks (valores absolutos) de una vez, por ejemplo los de
+     * una orden. Un almacén con journal los escribe juntos.
+     */
+    default void registrarStocks(Map<String, Integer> stocks) throws IOException {
+        for (Map.Entry<String, Integer> e : stocks.entrySet()) {
+            registrarStock(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Indica si hay que guardar la instantánea completa para no perder cambios.
+     * Sin journal, cada cambio la necesita.
+     */
+    default boolean necesitaCompactacion() {
+        return true;
+    }
+
+    /**
+     * Indica si los métodos de registro ya dejan cada cambio guardado en la
+     * instantánea, de modo que no hace falta compactar ni reescribirla.
+     */
+    default boolean escribeEnSitio() {
+        return false;
+    }
+
+    /**
+     * Aparta el journal actual antes de tomar la copia que se va a guardar.
+     */
+    default void rotarJournal() throws IOException {
+    }
+
+    /**
+     * Aplica sobre los productos cargados los cambios anotados después de la
+     * última instantánea.
+     *
+     * @return Cantidad de registros aplicados
+     */
+    default int reproducirJournal(Map<String, Producto> productos) throws IOException {
+        return 0;
+    }
+
+    /**
+     * Libera el archivo del journal, si lo hay.
+     */
+    default void cerrarJournal() throws IOException {
+    }
+}
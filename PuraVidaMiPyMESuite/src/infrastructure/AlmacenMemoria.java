@@ -0,0 +1,44 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package infrastructure;
+
+import domain.Producto;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Almacén del inventario que solo vive en memoria. No toca el disco: sirve para
+ * pruebas y para medir los servicios sin el costo de la persistencia.
+ */
+public class AlmacenMemoria implements AlmacenInventario {
+    private volatile List<Producto> productos = List.of();
+
+    public AlmacenMemoria() {
+    }
+
+    /**
+     * @param iniciales Productos con los que arranca el almacén
+     */
+    public AlmacenMemoria(List<Producto> iniciales) {
+        this.productos = List.copyOf(iniciales);
+    }
+
+    @Override
+    public List<Producto> leerProductos() {
+        return new ArrayList<>(productos);
+    }
+
+    /**
+     * Guarda una copia inmutable de la lista (si ya lo es, no se copia).
+     */
+    @Override
+    public void guardarProductos(List<Producto> productos) {
+        this.productos = List.copyOf(productos);
+    }
+}
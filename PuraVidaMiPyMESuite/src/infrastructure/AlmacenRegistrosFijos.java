@@ -0,0 +1,548 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package infrastructure;
+
+import domain.Producto;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Almacén del inventario en registros de tamaño fijo, direccionados por número
+ * de ranura. Cada cambio se escribe en su lugar con una escritura posicionada:
+ * un cambio de stock son 8 bytes (stock y CRC) y una edición es un solo
+ * registro, sin importar el tamaño del catálogo. Una baja marca la ranura como
+ * libre y la siguiente alta la reutiliza. Cada cambio se fuerza a disco antes
+ * de volver.
+ *
+ * Registro ({@value #TAMANO_REGISTRO} bytes):
+ * <pre>
+ * byte estado (0 = libre, 1 = ocupado), byte largoCodigo, byte largoNombre, byte reservado
+ * byte[32] codigo, byte[112] nombre (UTF-8), double precio, int stock, int crc
+ * </pre>
+ * El CRC32 cubre los bytes anteriores del registro. Al leer, un registro
+ * ocupado cuyo CRC no coincide (una escritura cortada) se informa y se deja
+ * fuera: ni se carga ni se reutiliza su ranura. Un archivo del formato
+ * anterior, sin CRC, se migra la primera vez que se lee.
+ *
+ * Los métodos de registro de {@link AlmacenInventario} escriben directamente en
+ * el archivo, así que no hay journal que compactar. Los stocks de una misma
+ * operación ({@link #registrarStocks}) se anotan antes en un registro de lote
+ * aparte, para que una caída no deje aplicada solo una parte.
+ */
+public class AlmacenRegistrosFijos implements AlmacenInventario {
+    private static final String RUTA_ARCHIVO = "data/inventario.dat";
+    private static final int MAGICO = 0x50564632; // "PVF2"
+    private static final int MAGICO_ANTERIOR = 0x50564631; // "PVF1": sin CRC por registro
+    private static final int TAMANO_CABECERA = 16;
+
+    private static final int MAX_CODIGO = 32;
+    private static final int MAX_NOMBRE = 112;
+    private static final int POS_CODIGO = 4;
+    private static final int POS_NOMBRE = POS_CODIGO + MAX_CODIGO;
+    private static final int POS_PRECIO = POS_NOMBRE + MAX_NOMBRE;
+    private static final int POS_STOCK = POS_PRECIO + Double.BYTES;
+    private static final int POS_CRC = POS_STOCK + Integer.BYTES;
+    static final int TAMANO_REGISTRO = POS_CRC + Integer.BYTES;
+
+    private static final byte LIBRE = 0;
+    private static final byte OCUPADO = 1;
+    private static final int REGISTROS_POR_LECTURA = 4096;
+
+    private final Path ruta;
+    private final Path rutaLote;
+    private FileChannel canal;
+    private final Map<String, Integer> ranuras = new HashMap<>();
+    private final Deque<Integer> libres = new ArrayDeque<>();
+    private int siguienteRanura;
+
+    /**
+     * Cambios recibidos mientras se guarda una instantánea completa: se vuelven a
+     * aplicar sobre el archivo nuevo (ver {@link #rotarJournal()}).
+     */
+    private List<Operacion> pendientes;
+
+    public AlmacenRegistrosFijos() {
+        this(Paths.get(RUTA_ARCHIVO));
+    }
+
+    /**
+     * @param ruta Archivo de registros
+     */
+    public AlmacenRegistrosFijos(Path ruta) {
+        this.ruta = ruta;
+        this.rutaLote = ruta.resolveSibling(ruta.getFileName() + ".lote");
+    }
+
+    /**
+     * Lee las ranuras ocupadas en orden y reconstruye el mapa de ranuras y la
+     * lista de ranuras libres.
+     */
+    @Override
+    public synchronized List<Producto> leerProductos() throws IOException {
+        ranuras.clear();
+        libres.clear();
+        siguienteRanura = 0;
+        if (!Files.exists(ruta)) {
+            return new ArrayList<>();
+        }
+        if (esFormatoAnterior()) {
+            System.out.println("Migrando " + ruta + " al formato con CRC por registro.");
+            try (FileChannel anterior = FileChannel.open(ruta, StandardOpenOption.READ)) {
+                guardarProductos(leerRegistros(anterior, POS_CRC, false));
+            }
+            ranuras.clear();
+            libres.clear();
+            siguienteRanura = 0;
+        }
+        return leerRegistros(abrir(), TAMANO_REGISTRO, true);
+    }
+
+    /**
+     * Recorre las ranuras del archivo en orden.
+     *
+     * @param tamano Tamaño de cada registro en el archivo
+     * @param conCrc Si los registros traen CRC que validar
+     */
+    private List<Producto> leerRegistros(FileChannel c, int tamano, boolean conCrc) throws IOException {
+        List<Producto> productos = new ArrayList<>();
+        long largo = c.size();
+        if (largo < TAMANO_CABECERA) {
+            return productos;
+        }
+        siguienteRanura = (int) ((largo - TAMANO_CABECERA) / tamano);
+        ByteBuffer buffer = ByteBuffer.allocate(tamano * REGISTROS_POR_LECTURA);
+        byte[] texto = new byte[MAX_NOMBRE];
+        for (int base = 0; base < siguienteRanura; base += REGISTROS_POR_LECTURA) {
+            int cantidad = Math.min(REGISTROS_POR_LECTURA, siguienteRanura - base);
+            buffer.clear().limit(cantidad * tamano);
+            leerCompleto(c, buffer, TAMANO_CABECERA + (long) base * tamano);
+            for (int i = 0; i < cantidad; i++) {
+                int inicio = i * tamano;
+                int ranura = base + i;
+                if (buffer.get(inicio) != OCUPADO) {
+                    libres.add(ranura);
+                    continue;
+                }
+                if (conCrc && buffer.getInt(inicio + POS_CRC) != crc(buffer.array(), inicio, POS_CRC)) {
+                    System.err.println("Registro dañado ignorado en la ranura " + ranura + " de " + ruta);
+                    continue;
+                }
+                String codigo = leerTexto(buffer, inicio + POS_CODIGO, buffer.get(inicio + 1) & 0xFF, texto);
+                String nombre = leerTexto(buffer, inicio + POS_NOMBRE, buffer.get(inicio + 2) & 0xFF, texto);
+                Producto p = new Producto(codigo, nombre,
+                        buffer.getDouble(inicio + POS_PRECIO), buffer.getInt(inicio + POS_STOCK));
+                Integer anterior = ranuras.put(codigo, ranura);
+                if (anterior != null) {
+                    // No debería ocurrir: se conserva la última ranura y se libera la otra
+                    System.err.println("Código repetido en registros fijos: " + codigo);
+                    libres.add(anterior);
+                    productos.removeIf(x -> x.getCodigo().equals(codigo));
+                }
+                productos.add(p);
+            }
+        }
+        return productos;
+    }
+
+    private boolean esFormatoAnterior() throws IOException {
+        try (FileChannel c = FileChannel.open(ruta, StandardOpenOption.READ)) {
+            if (c.size() < TAMANO_CABECERA) {
+                return false;
+            }
+            ByteBuffer cabecera = ByteBuffer.allocate(TAMANO_CABECERA);
+            leerCompleto(c, cabecera, 0);
+            return cabecera.getInt(0) == MAGICO_ANTERIOR && cabecera.getInt(4) == POS_CRC;
+        }
+    }
+
+    /**
+     * Reescribe el archivo completo con los productos dados, en ranuras consecutivas.
+     * Los cambios que llegaron desde {@link #rotarJournal()} se aplican luego sobre
+     * el archivo nuevo. Si el guardado falla se descartan: el archivo anterior ya
+     * los tiene, y seguir acumulándolos haría crecer la lista sin límite.
+     */
+    @Override
+    public synchronized void guardarProductos(List<Producto> productos) throws IOException {
+        List<Operacion> aplicar = pendientes;
+        pendientes = null;
+        Path directorio = ruta.getParent();
+        if (directorio != null && !Files.exists(directorio)) {
+            Files.createDirectories(directorio);
+        }
+
+        Path temporal = ruta.resolveSibling(ruta.getFileName() + ".tmp");
+        Map<String, Integer> nuevas = new HashMap<>(productos.size() * 2);
+        try (FileChannel destino = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            escribirCabecera(destino);
+            ByteBuffer buffer = ByteBuffer.allocate(TAMANO_REGISTRO * REGISTROS_POR_LECTURA);
+            long posicion = TAMANO_CABECERA;
+            for (Producto p : productos) {
+                if (nuevas.putIfAbsent(p.getCodigo(), nuevas.size()) != null) {
+                    continue;
+                }
+                if (!buffer.hasRemaining()) {
+                    buffer.flip();
+                    posicion += escribirCompleto(destino, buffer, posicion);
+                    buffer.clear();
+                }
+                codificar(p, buffer);
+            }
+            buffer.flip();
+            escribirCompleto(destino, buffer, posicion);
+            destino.force(true);
+        }
+
+        cerrarCanal();
+        Files.deleteIfExists(rutaLote); // Sus ranuras eran las del archivo anterior
+        try {
+            Files.move(temporal, ruta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporal, ruta, StandardCopyOption.REPLACE_EXISTING);
+        }
+        ranuras.clear();
+        ranuras.putAll(nuevas);
+        libres.clear();
+        siguienteRanura = nuevas.size();
+
+        if (aplicar != null) {
+            for (Operacion op : aplicar) {
+                op.ejecutar();
+            }
+            if (canal != null) {
+                canal.force(false);
+            }
+        }
+    }
+
+    /**
+     * El código y el nombre tienen un ancho fijo en bytes UTF-8.
+     */
+    @Override
+    public String validarProducto(Producto p) {
+        return fueraDeAncho(p);
+    }
+
+    private static String fueraDeAncho(Producto p) {
+        if (p.getCodigo().getBytes(StandardCharsets.UTF_8).length > MAX_CODIGO) {
+            return "Código demasiado largo (máx. " + MAX_CODIGO + " bytes): " + p.getCodigo();
+        }
+        if (p.getNombre().getBytes(StandardCharsets.UTF_8).length > MAX_NOMBRE) {
+            return "Nombre demasiado largo (máx. " + MAX_NOMBRE + " bytes): " + p.getNombre();
+        }
+        return null;
+    }
+
+    // —————————————————————— CAMBIOS EN SU LUGAR ——————————————————————
+
+    /**
+     * Ocupa una ranura libre (o una nueva al final) con el producto.
+     * Si el código ya tenía ranura, la sobrescribe.
+     */
+    @Override
+    public synchronized void registrarAlta(Producto p) throws IOException {
+        aplicar(() -> {
+            ByteBuffer registro = ByteBuffer.allocate(TAMANO_REGISTRO);
+            codificar(p, registro); // Antes de ocupar la ranura: puede rechazar textos largos
+            registro.flip();
+            Integer ranura = ranuras.get(p.getCodigo());
+            if (ranura == null) {
+                ranura = libres.isEmpty() ? siguienteRanura++ : libres.poll();
+            }
+            escribir(registro, posicion(ranura));
+            ranuras.put(p.getCodigo(), ranura);
+        });
+    }
+
+    @Override
+    public synchronized void registrarEdicion(Producto p) throws IOException {
+        registrarAlta(p);
+    }
+
+    /**
+     * Marca la ranura como libre (1 byte) y la deja disponible para la próxima alta.
+     */
+    @Override
+    public synchronized void registrarBaja(String codigo) throws IOException {
+        aplicar(() -> {
+            Integer ranura = ranuras.remove(codigo);
+            if (ranura != null) {
+                escribir(ByteBuffer.allocate(1).put(0, LIBRE), posicion(ranura));
+                libres.add(ranura);
+            }
+        });
+    }
+
+    /**
+     * Sobrescribe solo el stock y el CRC del registro (8 bytes contiguos).
+     */
+    @Override
+    public synchronized void registrarStock(String codigo, int stock) throws IOException {
+        aplicar(() -> {
+            Integer ranura = ranuras.get(codigo);
+            if (ranura == null) {
+                throw new IOException("Producto sin ranura en registros fijos: " + codigo);
+            }
+            escribirStock(abrir(), ranura, stock);
+        });
+    }
+
+    /**
+     * Sobrescribe los stocks de varios productos, todos o ninguno. Primero se
+     * fuerza a disco el registro de lote (ranura y stock de cada producto, con
+     * CRC32) y recién después se tocan las ranuras; al terminar se borra. Si
+     * la aplicación se cae en el medio, al abrir el archivo se repite el lote
+     * completo (los stocks son absolutos); si lo cortado fue el propio
+     * registro de lote, ninguna ranura llegó a cambiar y se descarta.
+     *
+     * @throws IOException Si algún producto no tiene ranura (no se escribe ninguno)
+     */
+    @Override
+    public synchronized void registrarStocks(Map<String, Integer> stocks) throws IOException {
+        aplicar(() -> {
+            ByteBuffer lote = ByteBuffer.allocate(Integer.BYTES * (2 + 2 * stocks.size()));
+            lote.putInt(stocks.size());
+            for (Map.Entry<String, Integer> e : stocks.entrySet()) {
+                Integer ranura = ranuras.get(e.getKey());
+                if (ranura == null) {
+                    throw new IOException("Producto sin ranura en registros fijos: " + e.getKey());
+                }
+                lote.putInt(ranura).putInt(e.getValue());
+            }
+            lote.putInt(crc(lote.array(), 0, lote.position()));
+            lote.flip();
+
+            FileChannel c = abrir();
+            try (FileChannel registro = FileChannel.open(rutaLote, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                escribirCompleto(registro, lote.duplicate(), 0);
+                registro.force(false);
+            }
+            escribirStocks(c, lote);
+            c.force(false);
+            Files.delete(rutaLote);
+        });
+    }
+
+    /**
+     * Los cambios ya quedan en el archivo: nunca hace falta compactar.
+     */
+    @Override
+    public boolean necesitaCompactacion() {
+        return false;
+    }
+
+    @Override
+    public boolean escribeEnSitio() {
+        return true;
+    }
+
+    /**
+     * Se va a guardar una instantánea completa tomada en este momento: los
+     * cambios que lleguen hasta que termine se guardan para aplicarlos también
+     * al archivo nuevo.
+     */
+    @Override
+    public synchronized void rotarJournal() {
+        pendientes = new ArrayList<>();
+    }
+
+    /**
+     * Fuerza los cambios al disco y cierra el archivo.
+     */
+    @Override
+    public synchronized void cerrarJournal() throws IOException {
+        if (canal != null) {
+            canal.force(true);
+        }
+        cerrarCanal();
+    }
+
+    // —————————————————————— MÉTODOS AUXILIARES ——————————————————————
+
+    /**
+     * Ejecuta un cambio y lo fuerza a disco antes de volver.
+     */
+    private void aplicar(Operacion op) throws IOException {
+        op.ejecutar();
+        if (canal != null) {
+            canal.force(false);
+        }
+        if (pendientes != null) {
+            pendientes.add(op);
+        }
+    }
+
+    private FileChannel abrir() throws IOException {
+        if (canal == null) {
+            Path directorio = ruta.getParent();
+            if (directorio != null && !Files.exists(directorio)) {
+                Files.createDirectories(directorio);
+            }
+            canal = FileChannel.open(ruta, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (canal.size() == 0) {
+                escribirCabecera(canal);
+            } else {
+                ByteBuffer cabecera = ByteBuffer.allocate(TAMANO_CABECERA);
+                leerCompleto(canal, cabecera, 0);
+                if (cabecera.getInt(0) != MAGICO || cabecera.getInt(4) != TAMANO_REGISTRO) {
+                    cerrarCanal();
+                    throw new IOException("Formato de registros fijos no reconocido: " + ruta);
+                }
+            }
+            recuperarLote(canal);
+        }
+        return canal;
+    }
+
+    /**
+     * Repite un lote de stocks que quedó a medio aplicar por una caída, o lo
+     * descarta si el propio registro quedó cortado.
+     */
+    private void recuperarLote(FileChannel c) throws IOException {
+        if (!Files.exists(rutaLote)) {
+            return;
+        }
+        ByteBuffer lote = ByteBuffer.wrap(Files.readAllBytes(rutaLote));
+        if (loteCompleto(lote, (c.size() - TAMANO_CABECERA) / TAMANO_REGISTRO)) {
+            escribirStocks(c, lote);
+            c.force(false);
+        } else {
+            System.err.println("Registro de lote cortado ignorado: " + rutaLote);
+        }
+        Files.delete(rutaLote);
+    }
+
+    private static boolean loteCompleto(ByteBuffer lote, long ranurasEnArchivo) {
+        int largo = lote.limit();
+        if (largo < 2 * Integer.BYTES) {
+            return false;
+        }
+        int cantidad = lote.getInt(0);
+        if (cantidad < 0 || largo != Integer.BYTES * (2 + 2L * cantidad)
+                || lote.getInt(largo - Integer.BYTES) != crc(lote.array(), 0, largo - Integer.BYTES)) {
+            return false;
+        }
+        for (int i = 0; i < cantidad; i++) {
+            int ranura = lote.getInt(Integer.BYTES * (1 + 2 * i));
+            if (ranura < 0 || ranura >= ranurasEnArchivo) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void escribirStocks(FileChannel c, ByteBuffer lote) throws IOException {
+        int cantidad = lote.getInt(0);
+        for (int i = 0; i < cantidad; i++) {
+            escribirStock(c, lote.getInt(Integer.BYTES * (1 + 2 * i)), lote.getInt(Integer.BYTES * (2 + 2 * i)));
+        }
+    }
+
+    /**
+     * Cambia el stock de una ranura recalculando su CRC: se lee el registro y
+     * se escriben juntos el stock y el CRC, que son contiguos.
+     */
+    private static void escribirStock(FileChannel c, int ranura, int stock) throws IOException {
+        ByteBuffer registro = ByteBuffer.allocate(TAMANO_REGISTRO);
+        leerCompleto(c, registro, posicion(ranura));
+        registro.putInt(POS_STOCK, stock).putInt(POS_CRC, crc(registro.array(), 0, POS_CRC));
+        escribirCompleto(c, registro.position(POS_STOCK), posicion(ranura) + POS_STOCK);
+    }
+
+    private static int crc(byte[] datos, int desde, int largo) {
+        CRC32 crc = new CRC32();
+        crc.update(datos, desde, largo);
+        return (int) crc.getValue();
+    }
+
+    private void cerrarCanal() throws IOException {
+        if (canal != null) {
+            canal.close();
+            canal = null;
+        }
+    }
+
+    private void escribir(ByteBuffer buffer, long posicion) throws IOException {
+        escribirCompleto(abrir(), buffer, posicion);
+    }
+
+    private static void escribirCabecera(FileChannel c) throws IOException {
+        ByteBuffer cabecera = ByteBuffer.allocate(TAMANO_CABECERA);
+        cabecera.putInt(MAGICO).putInt(TAMANO_REGISTRO).flip();
+        escribirCompleto(c, cabecera, 0);
+    }
+
+    /**
+     * Agrega el registro del producto en la posición actual del buffer.
+     */
+    private static void codificar(Producto p, ByteBuffer buffer) throws IOException {
+        byte[] codigo = p.getCodigo().getBytes(StandardCharsets.UTF_8);
+        byte[] nombre = p.getNombre().getBytes(StandardCharsets.UTF_8);
+        if (codigo.length > MAX_CODIGO || nombre.length > MAX_NOMBRE) {
+            throw new IOException(fueraDeAncho(p));
+        }
+        int inicio = buffer.position();
+        buffer.put(OCUPADO).put((byte) codigo.length).put((byte) nombre.length).put((byte) 0);
+        buffer.put(codigo).position(inicio + POS_NOMBRE);
+        buffer.put(nombre).position(inicio + POS_PRECIO);
+        buffer.putDouble(p.getPrecio()).putInt(p.getStock());
+        buffer.putInt(crc(buffer.array(), buffer.arrayOffset() + inicio, POS_CRC));
+    }
+
+    private static String leerTexto(ByteBuffer buffer, int inicio, int largo, byte[] auxiliar) {
+        buffer.get(inicio, auxiliar, 0, largo);
+        return new String(auxiliar, 0, largo, StandardCharsets.UTF_8);
+    }
+
+    private static long posicion(int ranura) {
+        return TAMANO_CABECERA + (long) ranura * TAMANO_REGISTRO;
+    }
+
+    private static void leerCompleto(FileChannel c, ByteBuffer buffer, long posicion) throws IOException {
+        long inicio = posicion - buffer.position();
+        while (buffer.hasRemaining()) {
+            if (c.read(buffer, inicio + buffer.position()) < 0) {
+                throw new IOException("Archivo de registros truncado");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static int escribirCompleto(FileChannel c, ByteBuffer buffer, long posicion) throws IOException {
+        int escritos = 0;
+        while (buffer.hasRemaining()) {
+            escritos += c.write(buffer, posicion + escritos);
+        }
+        return escritos;
+    }
+
+    /**
+     * Cambio puntual sobre el archivo.
+     */
+    private interface Operacion {
+        void ejecutar() throws IOException;
+    }
+}
@@ -7,7 +7,11 @@ import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 /**
  *
  * @author TheJPlay2006
@@ -17,9 +21,19 @@ import java.util.Base64;
 /**
  * Utilidad para cifrar y descifrar textos usando AES.
  * Ideal para proteger datos sensibles como cédulas.
+ *
+ * Cada hilo reutiliza sus propias instancias de Cipher (una para cifrar y otra
+ * para descifrar), ya inicializadas con la clave: Cipher no es seguro para
+ * hilos, y buscar el proveedor e inicializarlo en cada valor cuesta más que
+ * cifrar una cédula. Los métodos masivos reparten el trabajo entre núcleos.
  */
 public class CifradorAES {
+    private static final String TRANSFORMACION = "AES";
+    private static final int MINIMO_PARALELO = 512; // Por debajo, repartir cuesta más que cifrar
+
     private SecretKey clave;
+    private final ThreadLocal<Cipher> cifradores = ThreadLocal.withInitial(() -> crearCipher(Cipher.ENCRYPT_MODE));
+    private final ThreadLocal<Cipher> descifradores = ThreadLocal.withInitial(() -> crearCipher(Cipher.DECRYPT_MODE));
 
     public CifradorAES(String claveFija) throws Exception {
         // Aseguramos que la clave tenga 16 o 32 bytes (AES-128 o AES-256)
@@ -33,20 +47,128 @@ public class CifradorAES {
             byte[] truncatedKey = java.util.Arrays.copyOf(derivedKey, 32); // AES-256
             this.clave = new SecretKeySpec(truncatedKey, "AES");
         }
+        Cipher.getInstance(TRANSFORMACION).init(Cipher.ENCRYPT_MODE, clave); // Falla aquí si la clave no sirve
     }
 
     public String cifrar(String texto) throws Exception {
-        Cipher cipher = Cipher.getInstance("AES");
-        cipher.init(Cipher.ENCRYPT_MODE, clave);
-        byte[] bytesCifrados = cipher.doFinal(texto.getBytes(StandardCharsets.UTF_8));
+        byte[] bytesCifrados = cifradores.get().doFinal(texto.getBytes(StandardCharsets.UTF_8));
         return Base64.getEncoder().encodeToString(bytesCifrados);
     }
 
     public String descifrar(String textoCifrado) throws Exception {
-        Cipher cipher = Cipher.getInstance("AES");
-        cipher.init(Cipher.DECRYPT_MODE, clave);
         byte[] bytesCifrados = Base64.getDecoder().decode(textoCifrado);
-        byte[] bytesDescifrados = cipher.doFinal(bytesCifrados);
+        byte[] bytesDescifrados = descifradores.get().doFinal(bytesCifrados);
         return new String(bytesDescifrados, StandardCharsets.UTF_8);
     }
+
+    /**
+     * Cifra todos los textos, en paralelo si son muchos.
+     *
+     * @return Textos cifrados (Base64), en el mismo orden
+     * @throws Exception Si algún texto no se puede cifrar
+     */
+    public String[] cifrarTodos(String[] textos) throws Exception {
+        String[] resultado = new String[textos.length];
+        procesar(textos.length, (desde, hasta) -> {
+            Cipher cipher = cifradores.get();
+            Base64.Encoder base64 = Base64.getEncoder();
+            byte[] salida = new byte[64];
+            for (int i = desde; i < hasta; i++) {
+                byte[] entrada = textos[i].getBytes(StandardCharsets.UTF_8);
+                int necesario = cipher.getOutputSize(entrada.length);
+                if (necesario > salida.length) {
+                    salida = new byte[Math.max(necesario, salida.length * 2)];
+                }
+                int largo = cipher.doFinal(entrada, 0, entrada.length, salida, 0);
+                resultado[i] = base64.encodeToString(Arrays.copyOf(salida, largo));
+            }
+        });
+        return resultado;
+    }
+
+    /**
+     * Descifra todos los textos, en paralelo si son muchos.
+     * Un valor que no se puede descifrar (dañado o con otra clave) queda en null
+     * sin interrumpir el resto.
+     *
+     * @return Textos claros, en el mismo orden
+     */
+    public String[] descifrarTodos(String[] textosCifrados) {
+        String[] resultado = new String[textosCifrados.length];
+        try {
+            procesar(textosCifrados.length, (desde, hasta) -> {
+                Cipher cipher = descifradores.get();
+                Base64.Decoder base64 = Base64.getDecoder();
+                byte[] salida = new byte[64];
+                for (int i = desde; i < hasta; i++) {
+                    try {
+                        byte[] entrada = base64.decode(textosCifrados[i]);
+                        int necesario = cipher.getOutputSize(entrada.length);
+                        if (necesario > salida.length) {
+                            salida = new byte[Math.max(necesario, salida.length * 2)];
+                        }
+                        int largo = cipher.doFinal(entrada, 0, entrada.length, salida, 0);
+                        resultado[i] = new String(salida, 0, largo, StandardCharsets.UTF_8);
+                    } catch (GeneralSecurityException | IllegalArgumentException | NullPointerException e) {
+                        resultado[i] = null;
+                    }
+                }
+            });
+        } catch (Exception e) {
+            throw new IllegalStateException("Error inesperado al descifrar en bloque", e);
+        }
+        return resultado;
+    }
+
+    // —————————————————————— MÉTODOS AUXILIARES ——————————————————————
+
+    private Cipher crearCipher(int modo) {
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMACION);
+            cipher.init(modo, clave);
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo inicializar el cifrador AES", e);
+        }
+    }
+
+    /**
+     * Ejecuta el trabajo sobre [0, total) en bloques contiguos, en el pool común
+     * si hay suficientes elementos. Cada bloque usa los Cipher de su hilo.
+     */
+    private void procesar(int total, Bloque bloque) throws Exception {
+        int hilos = ForkJoinPool.getCommonPoolParallelism();
+        if (total < MINIMO_PARALELO || hilos <= 1) {
+            bloque.ejecutar(0, total);
+            return;
+        }
+        int cantidadBloques = Math.min(hilos * 4, total / (MINIMO_PARALELO / 4));
+        int tamano = (total + cantidadBloques - 1) / cantidadBloques;
+        try {
+            IntStream.range(0, cantidadBloques).parallel().forEach(b -> {
+                int desde = b * tamano;
+                int hasta = Math.min(total, desde + tamano);
+                if (desde >= hasta) return;
+                try {
+                    bloque.ejecutar(desde, hasta);
+                } catch (Exception e) {
+                    throw new ErrorEnBloque(e);
+                }
+            });
+        } catch (ErrorEnBloque e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    private interface Bloque {
+        void ejecutar(int desde, int hasta) throws Exception;
+    }
+
+    private static class ErrorEnBloque extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ErrorEnBloque(Exception causa) {
+            super(causa);
+        }
+    }
 }
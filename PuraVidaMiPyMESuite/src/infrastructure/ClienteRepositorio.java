@@ -6,10 +6,18 @@ package infrastructure;
 import domain.Cliente;
 import domain.Producto;
 import java.io.*;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 /**
  *
  * @author Emesis
@@ -18,88 +26,276 @@ import java.util.*;
  * Repositorio para gestionar la persistencia de Clientes.
  * La cédula se almacena cifrada en disco.
  * Solo se descripta cuando se carga en memoria (y solo se muestra en UI bajo rol Admin).
+ *
+ * Junto a la cédula cifrada se guarda su índice ciego ({@link IndiceCiego}).
+ * Los clientes quedan en memoria indexados por ese valor, sin descifrar: una
+ * búsqueda exacta o una verificación de duplicado compara índices y solo se
+ * descifra la fila encontrada (o todas, al listar). Los archivos con el formato
+ * anterior, sin esa columna, se migran la primera vez que se cargan.
+ *
+ * Las altas, ediciones y bajas actualizan el índice en el lugar. Un
+ * WatchService sobre la carpeta de datos avisa si el archivo cambia por fuera;
+ * en ese caso se vuelve a cargar en el siguiente acceso. Los cambios hechos por
+ * el propio repositorio se reconocen por el tamaño y la fecha que dejaron.
+ *
+ * Las consultas devuelven copias, para que modificar un cliente en la UI no
+ * altere el índice hasta que se guarde.
  */
 public class ClienteRepositorio {
     private static final String RUTA_ARCHIVO = "data/clientes.csv";
-    private static final String CLAVE_CIFRADO = "clave-16-o-32-caracteres-puravida"; // Debe ser 16 o 32 chars
+    static final String CLAVE_CIFRADO = "clave-16-o-32-caracteres-puravida"; // Debe ser 16 o 32 chars (la usa también RegistroOrdenes)
+    private static final String CABECERA = "indice_ciego,cedula_cifrada,nombre,telefono,email";
+    private static final int MINIMO_PARALELO = 1024;
 
+    private final Path ruta;
     private CifradorAES cifrador;
+    private IndiceCiego indiceCiego;
+
+    // Protegidos por "this"
+    private final Map<String, Fila> indice = new LinkedHashMap<>(); // índice ciego -> fila, en orden del archivo
+    private boolean cargado;
+    private long tamanoConocido = -1;
+    private long modificacionConocida = -1;
+    private boolean escrituraPendiente; // Hay clientes acumulados que todavía no están en el archivo
+
+    private volatile boolean revisarArchivo;
+    private WatchService vigilante; // null = sin aviso de cambios: se revisa en cada acceso
 
     public ClienteRepositorio() throws Exception {
+        this(Paths.get(RUTA_ARCHIVO));
+    }
+
+    /**
+     * Repositorio sobre otro archivo de clientes (por ejemplo, en pruebas).
+     */
+    public ClienteRepositorio(Path ruta) throws Exception {
+        this.ruta = ruta;
         this.cifrador = new CifradorAES(CLAVE_CIFRADO);
+        this.indiceCiego = new IndiceCiego(CLAVE_CIFRADO);
+        iniciarVigilancia();
     }
 
     /**
      * Guarda un cliente en el archivo CSV con cédula cifrada.
      */
-    public void guardarCliente(Cliente cliente) throws Exception {
-        List<Cliente> clientes = leerTodos();
-        
-        // Si ya existe, lo removemos para actualizarlo
-        clientes.removeIf(c -> c.getCedula().equals(cliente.getCedula()));
-        clientes.add(cliente);
+    public synchronized void guardarCliente(Cliente cliente) throws Exception {
+        asegurarCargado();
+        String ciego = indiceCiego.calcular(cliente.getCedula());
+
+        // Si ya existe, lo removemos para actualizarlo (su cédula cifrada se reutiliza)
+        Fila anterior = indice.remove(ciego);
+        String cedulaCifrada = anterior != null
+                ? anterior.cedulaCifrada
+                : cifrador.cifrar(cliente.getCedula());
+        indice.put(ciego, new Fila(ciego, cedulaCifrada, copiar(cliente)));
+
+        guardarLista();
+    }
+
+    /**
+     * Guarda varios clientes (altas o actualizaciones) con una sola escritura
+     * del archivo. Las cédulas nuevas se cifran juntas.
+     */
+    public synchronized void guardarClientes(Collection<Cliente> clientes) throws Exception {
+        acumularClientes(clientes);
+        guardarLista();
+    }
 
-        guardarLista(clientes);
+    /**
+     * Como {@link #guardarClientes(Collection)}, pero deja la escritura del
+     * archivo para {@link #escribirPendientes()}. Sirve para importar muchos
+     * lotes con una sola escritura al final; mientras tanto el archivo no se
+     * vuelve a cargar aunque cambie por fuera.
+     */
+    public synchronized void acumularClientes(Collection<Cliente> clientes) throws Exception {
+        asegurarCargado();
+        List<Cliente> nuevos = new ArrayList<>();
+        List<String> ciegosNuevos = new ArrayList<>();
+        for (Cliente cliente : clientes) {
+            String ciego = indiceCiego.calcular(cliente.getCedula());
+            Fila anterior = indice.remove(ciego);
+            if (anterior != null) {
+                indice.put(ciego, new Fila(ciego, anterior.cedulaCifrada, copiar(cliente)));
+            } else {
+                nuevos.add(cliente);
+                ciegosNuevos.add(ciego);
+            }
+        }
+        String[] cedulas = new String[nuevos.size()];
+        for (int i = 0; i < cedulas.length; i++) {
+            cedulas[i] = nuevos.get(i).getCedula();
+        }
+        String[] cifradas = cifrador.cifrarTodos(cedulas);
+        for (int i = 0; i < cifradas.length; i++) {
+            String ciego = ciegosNuevos.get(i);
+            indice.remove(ciego); // Repetido dentro del lote: queda el último
+            indice.put(ciego, new Fila(ciego, cifradas[i], copiar(nuevos.get(i))));
+        }
+        escrituraPendiente = true;
     }
 
     /**
-     * Guarda una lista completa de clientes (usado internamente).
+     * Escribe el archivo si hay clientes acumulados sin guardar.
      */
-    private void guardarLista(List<Cliente> clientes) throws Exception {
-        Path path = Paths.get(RUTA_ARCHIVO);
+    public synchronized void escribirPendientes() throws Exception {
+        if (escrituraPendiente) {
+            guardarLista();
+        }
+    }
+
+    /**
+     * Guarda todas las filas (usado internamente). Se escribe en un temporal y
+     * se reemplaza, para no dejar nunca un archivo a medias.
+     */
+    private void guardarLista() throws Exception {
+        Path path = ruta;
         Path dir = path.getParent();
         if (dir != null && !Files.exists(dir)) {
             Files.createDirectories(dir);
         }
 
+        Path temporal = ruta.resolveSibling(ruta.getFileName() + ".tmp");
         try (PrintWriter writer = new PrintWriter(
-                new OutputStreamWriter(new FileOutputStream(RUTA_ARCHIVO), java.nio.charset.StandardCharsets.UTF_8))) {
-            writer.println("cedula_cifrada,nombre,telefono,email");
-
-            for (Cliente c : clientes) {
-                String cedulaCifrada = cifrador.cifrar(c.getCedula());
-                writer.printf("%s,%s,%s,%s%n",
-                        cedulaCifrada,
-                        c.getNombre(),
-                        c.getTelefono(),
-                        c.getEmail());
+                new OutputStreamWriter(new FileOutputStream(temporal.toFile()), java.nio.charset.StandardCharsets.UTF_8))) {
+            writer.println(CABECERA);
+
+            for (Fila f : indice.values()) {
+                writer.printf("%s,%s,%s,%s,%s%n",
+                        f.indiceCiego,
+                        f.cedulaCifrada,
+                        f.nombre,
+                        f.telefono,
+                        f.email);
             }
         }
+        Files.move(temporal, path, StandardCopyOption.REPLACE_EXISTING);
+        escrituraPendiente = false;
+        recordarEstadoArchivo();
     }
 
     /**
-     * Lee todos los clientes del archivo CSV.
-     * Las cédulas se cargan descifradas en memoria.
+     * Devuelve todos los clientes (copias), en el orden del archivo.
+     * Las cédulas se descifran en memoria la primera vez que se necesitan.
      */
-    public List<Cliente> leerTodos() throws Exception {
-        Path path = Paths.get(RUTA_ARCHIVO);
-        if (!Files.exists(path)) {
-            return new ArrayList<>();
+    public synchronized List<Cliente> leerTodos() throws Exception {
+        asegurarCargado();
+        descifrarPendientes();
+        List<Cliente> clientes = new ArrayList<>(indice.size());
+        for (Fila f : indice.values()) {
+            if (f.cliente != null) {
+                clientes.add(copiar(f.cliente));
+            }
         }
+        return clientes;
+    }
 
-        List<Cliente> clientes = new ArrayList<>();
-        List<String> lineas = Files.readAllLines(path, java.nio.charset.StandardCharsets.UTF_8);
+    /**
+     * Descifra de una vez todas las filas que todavía no se descifraron.
+     * El cifrador reparte el trabajo entre núcleos y conserva el orden.
+     */
+    private void descifrarPendientes() {
+        List<Fila> pendientes = new ArrayList<>();
+        for (Fila f : indice.values()) {
+            if (f.cliente == null) {
+                pendientes.add(f);
+            }
+        }
+        if (pendientes.isEmpty()) {
+            return;
+        }
+        String[] cifradas = new String[pendientes.size()];
+        for (int i = 0; i < cifradas.length; i++) {
+            cifradas[i] = pendientes.get(i).cedulaCifrada;
+        }
+        String[] cedulas = cifrador.descifrarTodos(cifradas);
+        for (int i = 0; i < cedulas.length; i++) {
+            Fila f = pendientes.get(i);
+            if (cedulas[i] != null) {
+                f.cliente = new Cliente(cedulas[i], f.nombre, f.telefono, f.email);
+            } else {
+                System.err.println("Error al descifrar cliente de CSV: " + f.cedulaCifrada);
+            }
+        }
+    }
+
+    /**
+     * Lee el archivo completo y reconstruye el índice, sin descifrar cédulas.
+     * Un archivo con el formato anterior se descifra una vez y se reescribe
+     * con la columna de índice ciego.
+     */
+    private void cargar() throws Exception {
+        // El estado se toma antes de leer: si el archivo cambia mientras tanto,
+        // el siguiente acceso lo vuelve a cargar
+        Path path = ruta;
+        long tamano = Files.exists(path) ? Files.size(path) : -1;
+        long modificacion = Files.exists(path) ? Files.getLastModifiedTime(path).toMillis() : -1;
+
+        // El índice nuevo se arma aparte: si la lectura falla, el anterior
+        // queda como estaba y cargado sigue en false, de modo que ningún
+        // guardado reescribe el archivo a partir de un índice incompleto
+        Map<String, Fila> nuevo = new LinkedHashMap<>();
+        Boolean formatoAnterior = null;
+        if (tamano >= 0) {
+            List<String> lineas = Files.readAllLines(path, java.nio.charset.StandardCharsets.UTF_8);
 
-        boolean esCabecera = true;
-        for (String linea : lineas) {
-            if (linea.trim().isEmpty()) continue;
-            if (esCabecera) {
-                esCabecera = false;
-                continue; // Saltar cabecera
+            List<String> datos = new ArrayList<>(lineas.size());
+            for (String linea : lineas) {
+                if (linea.trim().isEmpty()) continue;
+                if (formatoAnterior == null) {
+                    // La cabecera indica el formato
+                    formatoAnterior = !linea.trim().equalsIgnoreCase(CABECERA);
+                    continue;
+                }
+                datos.add(linea);
             }
 
-            Cliente cliente = parsearLinea(linea);
-            if (cliente != null) {
-                clientes.add(cliente);
+            // Las líneas se interpretan (y en el formato anterior se descifran) por lotes
+            // en el pool común; collect conserva el orden del archivo
+            Function<String, Fila> parser = Boolean.TRUE.equals(formatoAnterior)
+                    ? this::parsearLineaAnterior
+                    : this::parsearLinea;
+            List<Fila> filas = (datos.size() >= MINIMO_PARALELO ? datos.parallelStream() : datos.stream())
+                    .map(parser)
+                    .collect(Collectors.toList());
+            for (Fila fila : filas) {
+                if (fila != null) {
+                    nuevo.remove(fila.indiceCiego); // Si se repite, queda la última (como al guardar)
+                    nuevo.put(fila.indiceCiego, fila);
+                }
             }
         }
-        return clientes;
+
+        indice.clear();
+        indice.putAll(nuevo);
+        tamanoConocido = tamano;
+        modificacionConocida = modificacion;
+        cargado = true;
+
+        if (Boolean.TRUE.equals(formatoAnterior)) {
+            System.out.println("Migrando " + ruta + " al formato con índice ciego ("
+                    + indice.size() + " clientes).");
+            guardarLista();
+        }
     }
 
     /**
-     * Convierte una línea CSV en un objeto Cliente (descifrando la cédula).
+     * Convierte una línea CSV en una fila sin descifrar la cédula.
      */
-    private Cliente parsearLinea(String linea) {
+    private Fila parsearLinea(String linea) {
+        String[] campos = linea.split(",", 5);
+        if (campos.length < 5) {
+            System.err.println("Error al leer cliente de CSV (campos insuficientes): " + linea);
+            return null;
+        }
+        return new Fila(campos[0].trim(), campos[1].trim(),
+                campos[2].trim(), campos[3].trim(), campos[4].trim());
+    }
+
+    /**
+     * Convierte una línea del formato anterior (sin índice ciego), descifrando
+     * la cédula para calcular su índice.
+     */
+    private Fila parsearLineaAnterior(String linea) {
         try {
             String[] campos = linea.split(",", 4);
             if (campos.length < 4) return null;
@@ -111,7 +307,8 @@ public class ClienteRepositorio {
 
             String cedula = cifrador.descifrar(cedulaCifrada);
 
-            return new Cliente(cedula, nombre, telefono, email);
+            return new Fila(indiceCiego.calcular(cedula), cedulaCifrada,
+                    new Cliente(cedula, nombre, telefono, email));
 
         } catch (Exception e) {
             System.err.println("Error al leer cliente de CSV: " + linea + " → " + e.getMessage());
@@ -120,13 +317,40 @@ public class ClienteRepositorio {
     }
 
     /**
-     * Busca un cliente por cédula (en texto claro).
+     * Descifra la cédula de una fila (una sola vez) y devuelve su cliente.
+     *
+     * @return El cliente, o null si la cédula no se puede descifrar
+     */
+    private Cliente descifrar(Fila f) {
+        if (f.cliente == null) {
+            try {
+                String cedula = cifrador.descifrar(f.cedulaCifrada);
+                f.cliente = new Cliente(cedula, f.nombre, f.telefono, f.email);
+            } catch (Exception e) {
+                System.err.println("Error al descifrar cliente de CSV: " + f.cedulaCifrada + " → " + e.getMessage());
+                return null;
+            }
+        }
+        return f.cliente;
+    }
+
+    /**
+     * Busca un cliente por cédula (en texto claro). Solo se descifra la fila
+     * cuyo índice ciego coincide.
+     */
+    public synchronized Cliente buscarPorCedula(String cedula) throws Exception {
+        asegurarCargado();
+        Fila f = indice.get(indiceCiego.calcular(cedula));
+        Cliente c = f == null ? null : descifrar(f);
+        return c != null && c.getCedula().equals(cedula) ? copiar(c) : null;
+    }
+
+    /**
+     * Indica si hay un cliente con la cédula dada, sin descifrar nada.
      */
-    public Cliente buscarPorCedula(String cedula) throws Exception {
-        return leerTodos().stream()
-                .filter(c -> c.getCedula().equals(cedula))
-                .findFirst()
-                .orElse(null);
+    public synchronized boolean existeCedula(String cedula) throws Exception {
+        asegurarCargado();
+        return indice.containsKey(indiceCiego.calcular(cedula));
     }
 
     /**
@@ -139,9 +363,118 @@ public class ClienteRepositorio {
     /**
      * Elimina un cliente por cédula.
      */
-    public void eliminarCliente(String cedula) throws Exception {
-        List<Cliente> clientes = leerTodos();
-        clientes.removeIf(c -> c.getCedula().equals(cedula));
-        guardarLista(clientes);
+    public synchronized void eliminarCliente(String cedula) throws Exception {
+        asegurarCargado();
+        if (indice.remove(indiceCiego.calcular(cedula)) != null) {
+            guardarLista();
+        }
+    }
+
+    /**
+     * Detiene la vigilancia del archivo.
+     */
+    public void cerrar() throws IOException {
+        if (vigilante != null) {
+            vigilante.close();
+        }
+    }
+
+    // —————————————————————— ÍNDICE Y VIGILANCIA ——————————————————————
+
+    /**
+     * Carga el índice si todavía no se cargó o si el archivo cambió por fuera.
+     */
+    private void asegurarCargado() throws Exception {
+        if (cargado && !escrituraPendiente && (revisarArchivo || vigilante == null)) {
+            revisarArchivo = false;
+            Path path = ruta;
+            long tamano = Files.exists(path) ? Files.size(path) : -1;
+            long modificacion = Files.exists(path) ? Files.getLastModifiedTime(path).toMillis() : -1;
+            if (tamano != tamanoConocido || modificacion != modificacionConocida) {
+                cargado = false; // Lo modificó otro proceso o una edición manual
+            }
+        }
+        if (!cargado) {
+            cargar();
+        }
+    }
+
+    private void recordarEstadoArchivo() throws IOException {
+        Path path = ruta;
+        if (Files.exists(path)) {
+            tamanoConocido = Files.size(path);
+            modificacionConocida = Files.getLastModifiedTime(path).toMillis();
+        } else {
+            tamanoConocido = -1;
+            modificacionConocida = -1;
+        }
+    }
+
+    private void iniciarVigilancia() {
+        Path dir = ruta.toAbsolutePath().getParent();
+        try {
+            Files.createDirectories(dir);
+            vigilante = dir.getFileSystem().newWatchService();
+            dir.register(vigilante, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("Sin vigilancia de " + ruta + ", se revisará en cada acceso: " + e.getMessage());
+            vigilante = null;
+            return;
+        }
+        Thread hilo = new Thread(this::vigilar, "vigilante-clientes");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    private void vigilar() {
+        Path nombreArchivo = ruta.getFileName();
+        try {
+            while (true) {
+                WatchKey clave = vigilante.take();
+                for (WatchEvent<?> evento : clave.pollEvents()) {
+                    if (evento.kind() == StandardWatchEventKinds.OVERFLOW
+                            || nombreArchivo.equals(evento.context())) {
+                        revisarArchivo = true;
+                    }
+                }
+                if (!clave.reset()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Repositorio cerrado
+        }
+    }
+
+    private static Cliente copiar(Cliente c) {
+        return new Cliente(c.getCedula(), c.getNombre(), c.getTelefono(), c.getEmail());
+    }
+
+    /**
+     * Fila del archivo. La cédula en claro solo se conoce una vez descifrada.
+     */
+    private static class Fila {
+        final String indiceCiego;
+        final String cedulaCifrada;
+        final String nombre;
+        final String telefono;
+        final String email;
+        Cliente cliente; // null = todavía sin descifrar
+
+        Fila(String indiceCiego, String cedulaCifrada, String nombre, String telefono, String email) {
+            this.indiceCiego = indiceCiego;
+            this.cedulaCifrada = cedulaCifrada;
+            this.nombre = nombre;
+            this.telefono = telefono;
+            this.email = email;
+        }
+
+        Fila(String indiceCiego, String cedulaCifrada, Cliente cliente) {
+            this(indiceCiego, cedulaCifrada, cliente.getNombre(), cliente.getTelefono(), cliente.getEmail());
+            this.cliente = cliente;
+        }
     }
-}
\ No newline at end of file
+}
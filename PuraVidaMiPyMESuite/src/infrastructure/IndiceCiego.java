@@ -0,0 +1,56 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package infrastructure;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * "Índice ciego" de un dato sensible: HMAC-SHA256 del texto claro con una clave
+ * propia. El mismo valor produce siempre el mismo índice, así que se pueden
+ * comparar cédulas (búsquedas exactas, duplicados) sin descifrar nada, y el
+ * índice no permite recuperar la cédula sin la clave.
+ *
+ * La clave se deriva de la clave de cifrado con un prefijo distinto, para no
+ * usar la misma clave en AES y en el HMAC.
+ */
+public class IndiceCiego {
+    private static final String ALGORITMO = "HmacSHA256";
+
+    private final SecretKeySpec clave;
+    private final ThreadLocal<Mac> macs;
+
+    public IndiceCiego(String claveBase) throws GeneralSecurityException {
+        byte[] derivada = MessageDigest.getInstance("SHA-256")
+                .digest(("indice-ciego:" + claveBase).getBytes(StandardCharsets.UTF_8));
+        this.clave = new SecretKeySpec(derivada, ALGORITMO);
+        Mac.getInstance(ALGORITMO).init(clave); // Falla aquí si el algoritmo no está disponible
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITMO);
+                mac.init(clave);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("No se pudo inicializar " + ALGORITMO, e);
+            }
+        });
+    }
+
+    /**
+     * @return Índice ciego del texto, en Base64 URL sin relleno
+     */
+    public String calcular(String texto) {
+        byte[] hmac = macs.get().doFinal(texto.getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(hmac);
+    }
+}
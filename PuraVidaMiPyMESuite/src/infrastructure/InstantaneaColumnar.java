@@ -0,0 +1,206 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package infrastructure;
+
+import domain.Producto;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Copia binaria en columnas del CSV de inventario, para arrancar sin
+ * interpretar texto. Se guarda junto al CSV y se mapea en memoria al cargar.
+ *
+ * Formato (big-endian):
+ * <pre>
+ * int magico, int version
+ * long tamanoCSV, long modificacionCSV     sello del CSV que representa
+ * int filas, int entradasDiccionario
+ * int[entradas + 1] desplazamientos         inicio de cada texto en el bloque
+ * byte[] textos                             UTF-8 de códigos y nombres sin repetir
+ * double[filas] precio
+ * int[filas] stock
+ * int[filas] codigo                         posición en el diccionario
+ * int[filas] nombre                         posición en el diccionario
+ * </pre>
+ *
+ * El sello permite detectar que el CSV se modificó por fuera (o que la copia
+ * quedó a medias): en ese caso la copia se ignora y se lee el CSV.
+ */
+class InstantaneaColumnar {
+    private static final int MAGICO = 0x50564331; // "PVC1"
+    private static final int VERSION = 1;
+    private static final int TAMANO_BUFFER = 1 << 16;
+
+    private final Path ruta;
+
+    /**
+     * @param ruta Archivo de la copia en columnas
+     */
+    InstantaneaColumnar(Path ruta) {
+        this.ruta = ruta;
+    }
+
+    /**
+     * Escribe la copia de los productos recién guardados en el CSV indicado.
+     * Los precios se redondean a dos decimales, igual que en el CSV.
+     */
+    void guardar(List<Producto> productos, Path csv) throws IOException {
+        int filas = productos.size();
+        Map<String, Integer> posiciones = new HashMap<>(filas * 3);
+        List<byte[]> textos = new ArrayList<>(filas * 2);
+        int[] codigos = new int[filas];
+        int[] nombres = new int[filas];
+        long totalBytes = 0;
+        for (int i = 0; i < filas; i++) {
+            Producto p = productos.get(i);
+            for (int campo = 0; campo < 2; campo++) {
+                String texto = campo == 0 ? p.getCodigo() : p.getNombre();
+                Integer posicion = posiciones.get(texto);
+                if (posicion == null) {
+                    posicion = textos.size();
+                    posiciones.put(texto, posicion);
+                    byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+                    textos.add(bytes);
+                    totalBytes += bytes.length;
+                }
+                if (campo == 0) codigos[i] = posicion; else nombres[i] = posicion;
+            }
+        }
+        if (totalBytes > Integer.MAX_VALUE) {
+            throw new IOException("Diccionario de textos demasiado grande para la copia en columnas");
+        }
+
+        Path temporal = ruta.resolveSibling(ruta.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporal), TAMANO_BUFFER))) {
+            out.writeInt(MAGICO);
+            out.writeInt(VERSION);
+            out.writeLong(Files.size(csv));
+            out.writeLong(Files.getLastModifiedTime(csv).toMillis());
+            out.writeInt(filas);
+            out.writeInt(textos.size());
+
+            int desplazamiento = 0;
+            for (byte[] bytes : textos) {
+                out.writeInt(desplazamiento);
+                desplazamiento += bytes.length;
+            }
+            out.writeInt(desplazamiento);
+            for (byte[] bytes : textos) {
+                out.write(bytes);
+            }
+
+            for (Producto p : productos) out.writeDouble(comoEnCSV(p.getPrecio()));
+            for (Producto p : productos) out.writeInt(p.getStock());
+            for (int codigo : codigos) out.writeInt(codigo);
+            for (int nombre : nombres) out.writeInt(nombre);
+        }
+        try {
+            Files.move(temporal, ruta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporal, ruta, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Carga los productos desde la copia si sigue correspondiendo al CSV.
+     *
+     * @return Productos en el orden del CSV, o null si no hay copia válida
+     */
+    List<Producto> leer(Path csv) {
+        if (!Files.exists(ruta)) {
+            return null;
+        }
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            if (buffer.getInt() != MAGICO || buffer.getInt() != VERSION) {
+                System.err.println("Copia en columnas con formato desconocido, se lee el CSV.");
+                return null;
+            }
+            if (buffer.getLong() != Files.size(csv)
+                    || buffer.getLong() != Files.getLastModifiedTime(csv).toMillis()) {
+                return null; // El CSV cambió después de escribir la copia
+            }
+            int filas = buffer.getInt();
+            int entradas = buffer.getInt();
+
+            int[] desplazamientos = new int[entradas + 1];
+            buffer.asIntBuffer().get(desplazamientos);
+            buffer.position(buffer.position() + desplazamientos.length * Integer.BYTES);
+            byte[] bloque = new byte[desplazamientos[entradas]];
+            buffer.get(bloque);
+            // Cada texto distinto se decodifica una sola vez y se comparte entre filas
+            String[] diccionario = new String[entradas];
+            for (int i = 0; i < entradas; i++) {
+                diccionario[i] = new String(bloque, desplazamientos[i],
+                        desplazamientos[i + 1] - desplazamientos[i], StandardCharsets.UTF_8);
+            }
+
+            double[] precios = new double[filas];
+            buffer.asDoubleBuffer().get(precios);
+            buffer.position(buffer.position() + filas * Double.BYTES);
+            int[] stocks = new int[filas];
+            buffer.asIntBuffer().get(stocks);
+            buffer.position(buffer.position() + filas * Integer.BYTES);
+            int[] codigos = new int[filas];
+            buffer.asIntBuffer().get(codigos);
+            buffer.position(buffer.position() + filas * Integer.BYTES);
+            int[] nombres = new int[filas];
+            buffer.asIntBuffer().get(nombres);
+
+            List<Producto> productos = new ArrayList<>(filas);
+            for (int i = 0; i < filas; i++) {
+                productos.add(new Producto(diccionario[codigos[i]], diccionario[nombres[i]], precios[i], stocks[i]));
+            }
+            return productos;
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException
+                | IllegalArgumentException | NegativeArraySizeException e) {
+            System.err.println("Copia en columnas ilegible, se lee el CSV: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Borra la copia (por ejemplo, si no se pudo actualizar tras guardar el CSV).
+     */
+    void descartar() {
+        try {
+            Files.deleteIfExists(ruta);
+        } catch (IOException e) {
+            // El sello ya impide que una copia vieja se use
+        }
+    }
+
+    /**
+     * Valor que tendrá el precio al releerlo del CSV, que lo guarda con dos decimales.
+     */
+    private static double comoEnCSV(double precio) {
+        double centavos = precio * 100;
+        if (centavos == Math.rint(centavos) || Double.isNaN(precio) || Double.isInfinite(precio)) {
+            return precio;
+        }
+        return BigDecimal.valueOf(precio).setScale(2, RoundingMode.HALF_UP).doubleValue();
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package infrastructure;
+
+import domain.Producto;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Journal de solo anexado del inventario, compartido por los almacenes que
+ * guardan instantáneas en disco. Guarda un registro de texto pequeño por cada
+ * alta, edición, baja o cambio de stock.
+ *
+ * Cada registro deja el producto en un estado absoluto, por lo que reproducir
+ * el journal sobre la instantánea es idempotente: si la aplicación se cae entre
+ * el guardado de la instantánea y el borrado del journal, repetirlo no altera
+ * el resultado.
+ *
+ * Cada anexado se fuerza a disco antes de volver, así que un cambio confirmado
+ * sobrevive a un corte de luz. Mientras una compactación no termina (el journal
+ * rotado sigue pendiente) no se puede iniciar otra.
+ *
+ * Un registro cuenta recién con su fin de línea: una línea final sin él quedó
+ * cortada por una caída y no se aplica. Los stocks de una misma operación
+ * (por ejemplo, una orden) van en un solo registro de lote con la cantidad de
+ * productos y un CRC32 de su contenido, y se aplican todos o ninguno.
+ */
+class JournalInventario {
+    private static final int UMBRAL_COMPACTACION = 1000;
+
+    private static final String OP_ALTA = "A";
+    private static final String OP_EDICION = "E";
+    private static final String OP_BAJA = "B";
+    private static final String OP_STOCK = "S";
+    private static final String OP_LOTE = "L"; // L,crc,cantidad,codigo,stock,codigo,stock...
+
+    private final Path ruta;
+    private final Path rutaRotada;
+    private FileChannel journal;
+    private int registrosEnJournal;
+    private boolean rotadoPendiente; // Rotado y todavía sin guardar la instantánea
+
+    /**
+     * @param ruta Archivo del journal activo
+     */
+    JournalInventario(Path ruta) {
+        this.ruta = ruta;
+        this.rutaRotada = ruta.resolveSibling(ruta.getFileName() + ".1");
+    }
+
+    synchronized void registrarAlta(Producto p) throws IOException {
+        anexar(OP_ALTA + "," + formatearProducto(p));
+    }
+
+    synchronized void registrarEdicion(Producto p) throws IOException {
+        anexar(OP_EDICION + "," + formatearProducto(p));
+    }
+
+    synchronized void registrarBaja(String codigo) throws IOException {
+        anexar(OP_BAJA + "," + codigo);
+    }
+
+    synchronized void registrarStock(String codigo, int stock) throws IOException {
+        anexar(OP_STOCK + "," + codigo + "," + stock);
+    }
+
+    /**
+     * Anota varios stocks en un solo registro de lote: al reproducir se
+     * aplican todos o ninguno.
+     */
+    synchronized void registrarStocks(Map<String, Integer> stocks) throws IOException {
+        if (stocks.size() == 1) {
+            Map.Entry<String, Integer> e = stocks.entrySet().iterator().next();
+            registrarStock(e.getKey(), e.getValue());
+            return;
+        }
+        StringBuilder datos = new StringBuilder().append(stocks.size());
+        for (Map.Entry<String, Integer> e : stocks.entrySet()) {
+            datos.append(',').append(e.getKey()).append(',').append(e.getValue());
+        }
+        anexar(OP_LOTE + "," + crc(datos.toString()) + "," + datos, stocks.size());
+    }
+
+    /**
+     * Indica si el journal acumuló suficientes registros como para compactarlo.
+     */
+    synchronized boolean necesitaCompactacion() {
+        return registrosEnJournal >= UMBRAL_COMPACTACION;
+    }
+
+    /**
+     * Aparta el journal actual para que los registros nuevos vayan a uno vacío.
+     * El journal apartado se borra con {@link #descartarRotado()} una vez que
+     * la instantánea quedó guardada, o se conserva con {@link #conservarRotado()}
+     * si el guardado falló.
+     *
+     * @throws IOException Si otra compactación todavía no guardó su instantánea
+     */
+    synchronized void rotar() throws IOException {
+        if (rotadoPendiente) {
+            throw new IOException("Hay una compactación sin terminar: " + rutaRotada);
+        }
+        cerrar();
+        if (Files.exists(ruta) && Files.size(ruta) > 0) {
+            if (Files.exists(rutaRotada)) {
+                // Una compactación anterior falló: se conservan ambos en orden
+                Files.write(rutaRotada, Files.readAllBytes(ruta), StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+                Files.delete(ruta);
+            } else {
+                Files.move(ruta, rutaRotada);
+            }
+        }
+        rotadoPendiente = true;
+    }
+
+    /**
+     * Borra el journal apartado: la instantánea ya contiene lo que registraba.
+     * Sin una rotación pendiente no borra nada.
+     */
+    synchronized void descartarRotado() throws IOException {
+        if (!rotadoPendiente) {
+            return;
+        }
+        Files.deleteIfExists(rutaRotada);
+        rotadoPendiente = false;
+    }
+
+    /**
+     * Termina una compactación cuyo guardado falló: el journal apartado se
+     * conserva y la próxima compactación lo vuelve a incluir.
+     */
+    synchronized void conservarRotado() {
+        rotadoPendiente = false;
+    }
+
+    /**
+     * Reproduce los registros aún no compactados (primero el rotado, luego el actual).
+     *
+     * @param productos Productos de la instantánea, indexados por código
+     * @return Cantidad de registros aplicados
+     */
+    synchronized int reproducir(Map<String, Producto> productos) throws IOException {
+        int aplicados = reproducir(rutaRotada, productos);
+        int actuales = reproducir(ruta, productos);
+        registrosEnJournal = aplicados + actuales;
+        return aplicados + actuales;
+    }
+
+    /**
+     * Cierra el archivo del journal (se reabre solo en el siguiente registro).
+     */
+    synchronized void cerrar() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        registrosEnJournal = 0;
+    }
+
+    private void anexar(String registro) throws IOException {
+        anexar(registro, 1);
+    }
+
+    /**
+     * @param cambios Cambios que contiene el registro (cuentan para el umbral de compactación)
+     */
+    private void anexar(String registro, int cambios) throws IOException {
+        if (journal == null) {
+            Path directorio = ruta.getParent();
+            if (directorio != null && !Files.exists(directorio)) {
+                Files.createDirectories(directorio);
+            }
+            journal = FileChannel.open(ruta, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap((registro + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            journal.write(buffer);
+        }
+        journal.force(false); // El cambio se confirma recién cuando está en disco
+        registrosEnJournal += cambios;
+    }
+
+    private int reproducir(Path path, Map<String, Producto> productos) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        String texto = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        int fin = texto.lastIndexOf('\n') + 1;
+        if (fin < texto.length() && !texto.substring(fin).trim().isEmpty()) {
+            // Una caída durante la escritura dejó la última línea sin terminar
+            System.err.println("Registro de journal cortado ignorado: " + texto.substring(fin));
+        }
+        int aplicados = 0;
+        for (String linea : texto.substring(0, fin).split("\r?\n")) {
+            if (linea.trim().isEmpty()) continue;
+            if (aplicarRegistro(linea, productos)) {
+                aplicados++;
+            } else {
+                System.err.println("Registro de journal ignorado: " + linea);
+            }
+        }
+        return aplicados;
+    }
+
+    private boolean aplicarRegistro(String linea, Map<String, Producto> productos) {
+        try {
+            String[] campos = linea.split(",");
+            switch (campos[0]) {
+                case OP_ALTA, OP_EDICION -> {
+                    if (campos.length < 5) return false;
+                    // El nombre puede contener comas: se toma todo lo que hay entre código y precio
+                    String nombre = String.join(",", Arrays.copyOfRange(campos, 2, campos.length - 2));
+                    double precio = Double.parseDouble(campos[campos.length - 2]);
+                    int stock = Integer.parseInt(campos[campos.length - 1]);
+                    productos.put(campos[1], new Producto(campos[1], nombre, precio, stock));
+                }
+                case OP_BAJA -> {
+                    if (campos.length != 2) return false;
+                    productos.remove(campos[1]);
+                }
+                case OP_STOCK -> {
+                    if (campos.length != 3) return false;
+                    Producto p = productos.get(campos[1]);
+                    if (p != null) {
+                        p.setStock(Integer.parseInt(campos[2]));
+                    }
+                }
+                case OP_LOTE -> {
+                    return aplicarLote(linea, campos, productos);
+                }
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Aplica un registro de lote solo si está completo: el CRC coincide y trae
+     * tantos productos como anuncia. Se valida todo antes de aplicar nada.
+     */
+    private boolean aplicarLote(String linea, String[] campos, Map<String, Producto> productos) {
+        if (campos.length < 3) return false;
+        String datos = linea.substring(OP_LOTE.length() + campos[1].length() + 2);
+        if (!campos[1].equals(crc(datos))) return false;
+        int cantidad = Integer.parseInt(campos[2]);
+        if (campos.length != 3 + 2 * cantidad) return false;
+        int[] stocks = new int[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            stocks[i] = Integer.parseInt(campos[4 + 2 * i]);
+        }
+        for (int i = 0; i < cantidad; i++) {
+            Producto p = productos.get(campos[3 + 2 * i]);
+            if (p != null) {
+                p.setStock(stocks[i]);
+            }
+        }
+        return true;
+    }
+
+    private static String crc(String datos) {
+        CRC32 crc = new CRC32();
+        crc.update(datos.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    private String formatearProducto(Producto p) {
+        return p.getCodigo() + "," + p.getNombre() + "," + p.getPrecio() + "," + p.getStock();
+    }
+}
@@ -5,23 +5,44 @@
 package infrastructure;
 import domain.Producto;
 import domain.Cliente;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.stream.Collectors;
 /**
  *
  * @author Emesis
  */
+/**
+ * Serializa productos y clientes a JSON sin librerías externas.
+ *
+ * Las variantes {@code escribir*} recorren los elementos uno a uno y los
+ * escriben directo al destino, así que exportar millones de filas no necesita
+ * tener el documento completo en memoria. Las variantes {@code *Ndjson}
+ * escriben un objeto por línea (JSON delimitado por saltos de línea).
+ */
 public class JsonManualSerializer {
+    private static final int TAMANO_BUFFER = 1 << 16;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
 
     /**
      * Convierte una lista de productos a JSON manualmente.
      */
     public static String productosToJson(List<Producto> productos) {
-        return productos.stream()
-                .map(p -> String.format(
-                    "  {\"codigo\": \"%s\", \"nombre\": \"%s\", \"precio\": %.2f, \"stock\": %d}",
-                    p.getCodigo(), p.getNombre(), p.getPrecio(), p.getStock()))
-                .collect(Collectors.joining(",\n", "[\n", "\n]"));
+        StringWriter destino = new StringWriter(productos.size() * 80 + 4);
+        try {
+            escribirProductos(productos, destino);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringWriter no falla
+        }
+        return destino.toString();
     }
 
     /**
@@ -29,10 +50,201 @@ public class JsonManualSerializer {
      * Solo exporta nombre, teléfono y email (la cédula no se incluye por seguridad).
      */
     public static String clientesToJson(List<Cliente> clientes) {
-        return clientes.stream()
-                .map(c -> String.format(
-                    "  {\"nombre\": \"%s\", \"telefono\": \"%s\", \"email\": \"%s\"}",
-                    c.getNombre(), c.getTelefono(), c.getEmail()))
-                .collect(Collectors.joining(",\n", "[\n", "\n]"));
+        StringWriter destino = new StringWriter(clientes.size() * 80 + 4);
+        try {
+            escribirClientes(clientes, destino);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return destino.toString();
+    }
+
+    // —————————————————————— ARREGLO JSON ——————————————————————
+
+    /**
+     * Escribe los productos como un arreglo JSON. No cierra el destino.
+     */
+    public static void escribirProductos(Iterable<Producto> productos, Writer destino) throws IOException {
+        Writer out = conBuffer(destino);
+        out.write("[\n");
+        boolean primero = true;
+        for (Producto p : productos) {
+            if (!primero) out.write(",\n");
+            primero = false;
+            out.write("  ");
+            escribirProducto(p, out);
+        }
+        out.write("\n]");
+        out.flush();
+    }
+
+    /**
+     * Escribe los productos como un arreglo JSON en UTF-8. No cierra el flujo.
+     */
+    public static void escribirProductos(Iterable<Producto> productos, OutputStream destino) throws IOException {
+        escribirProductos(productos, new OutputStreamWriter(destino, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Escribe los clientes como un arreglo JSON (sin cédula). No cierra el destino.
+     */
+    public static void escribirClientes(Iterable<Cliente> clientes, Writer destino) throws IOException {
+        Writer out = conBuffer(destino);
+        out.write("[\n");
+        boolean primero = true;
+        for (Cliente c : clientes) {
+            if (!primero) out.write(",\n");
+            primero = false;
+            out.write("  ");
+            escribirCliente(c, out);
+        }
+        out.write("\n]");
+        out.flush();
+    }
+
+    /**
+     * Escribe los clientes como un arreglo JSON en UTF-8 (sin cédula). No cierra el flujo.
+     */
+    public static void escribirClientes(Iterable<Cliente> clientes, OutputStream destino) throws IOException {
+        escribirClientes(clientes, new OutputStreamWriter(destino, StandardCharsets.UTF_8));
+    }
+
+    // —————————————————————— NDJSON ——————————————————————
+
+    /**
+     * Escribe un producto por línea. No cierra el destino.
+     */
+    public static void escribirProductosNdjson(Iterable<Producto> productos, Writer destino) throws IOException {
+        Writer out = conBuffer(destino);
+        for (Producto p : productos) {
+            escribirProducto(p, out);
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    /**
+     * Escribe un producto por línea en UTF-8. No cierra el flujo.
+     */
+    public static void escribirProductosNdjson(Iterable<Producto> productos, OutputStream destino) throws IOException {
+        escribirProductosNdjson(productos, new OutputStreamWriter(destino, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Escribe un cliente por línea (sin cédula). No cierra el destino.
+     */
+    public static void escribirClientesNdjson(Iterable<Cliente> clientes, Writer destino) throws IOException {
+        Writer out = conBuffer(destino);
+        for (Cliente c : clientes) {
+            escribirCliente(c, out);
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    /**
+     * Escribe un cliente por línea en UTF-8 (sin cédula). No cierra el flujo.
+     */
+    public static void escribirClientesNdjson(Iterable<Cliente> clientes, OutputStream destino) throws IOException {
+        escribirClientesNdjson(clientes, new OutputStreamWriter(destino, StandardCharsets.UTF_8));
+    }
+
+    // —————————————————————— ELEMENTOS ——————————————————————
+
+    private static void escribirProducto(Producto p, Writer out) throws IOException {
+        out.write("{\"codigo\": ");
+        escribirTexto(p.getCodigo(), out);
+        out.write(", \"nombre\": ");
+        escribirTexto(p.getNombre(), out);
+        out.write(", \"precio\": ");
+        escribirPrecio(p.getPrecio(), out);
+        out.write(", \"stock\": ");
+        out.write(Integer.toString(p.getStock()));
+        out.write('}');
+    }
+
+    private static void escribirCliente(Cliente c, Writer out) throws IOException {
+        out.write("{\"nombre\": ");
+        escribirTexto(c.getNombre(), out);
+        out.write(", \"telefono\": ");
+        escribirTexto(c.getTelefono(), out);
+        out.write(", \"email\": ");
+        escribirTexto(c.getEmail(), out);
+        out.write('}');
+    }
+
+    /**
+     * Escribe una cadena JSON entre comillas, escapando comillas, barras
+     * invertidas y caracteres de control. Los tramos sin nada que escapar se
+     * copian de una vez.
+     */
+    static void escribirTexto(String texto, Writer out) throws IOException {
+        if (texto == null) {
+            out.write("null");
+            return;
+        }
+        out.write('"');
+        int inicio = 0;
+        int largo = texto.length();
+        for (int i = 0; i < largo; i++) {
+            char c = texto.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            out.write(texto, inicio, i - inicio);
+            inicio = i + 1;
+            switch (c) {
+                case '"' -> out.write("\\\"");
+                case '\\' -> out.write("\\\\");
+                case '\n' -> out.write("\\n");
+                case '\r' -> out.write("\\r");
+                case '\t' -> out.write("\\t");
+                case '\b' -> out.write("\\b");
+                case '\f' -> out.write("\\f");
+                default -> {
+                    out.write("\\u00");
+                    out.write(HEX[c >> 4]);
+                    out.write(HEX[c & 0xF]);
+                }
+            }
+        }
+        out.write(texto, inicio, largo - inicio);
+        out.write('"');
+    }
+
+    /**
+     * Escribe el precio con dos decimales y punto decimal, con el mismo
+     * redondeo que {@code %.2f} pero sin depender del locale (con locale
+     * español {@code %.2f} usa coma y el JSON queda inválido).
+     * NaN e infinito no existen en JSON y se escriben como null.
+     */
+    static void escribirPrecio(double precio, Writer out) throws IOException {
+        if (Double.isNaN(precio) || Double.isInfinite(precio)) {
+            out.write("null");
+            return;
+        }
+        double centavos = precio * 100;
+        if (centavos == Math.rint(centavos) && Math.abs(centavos) < 0x1p53) {
+            // Caso común: el precio ya tiene a lo sumo dos decimales
+            long valor = (long) centavos;
+            if (valor < 0) {
+                out.write('-');
+                valor = -valor;
+            }
+            out.write(Long.toString(valor / 100));
+            long resto = valor % 100;
+            out.write('.');
+            out.write((char) ('0' + resto / 10));
+            out.write((char) ('0' + resto % 10));
+            return;
+        }
+        out.write(BigDecimal.valueOf(precio).setScale(2, RoundingMode.HALF_UP).toPlainString());
+    }
+
+    private static Writer conBuffer(Writer destino) {
+        if (destino instanceof BufferedWriter || destino instanceof StringWriter) {
+            return destino;
+        }
+        return new BufferedWriter(destino, TAMANO_BUFFER);
     }
-}
\ No newline at end of file
+}
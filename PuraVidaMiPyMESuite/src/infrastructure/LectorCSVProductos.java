@@ -0,0 +1,372 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package infrastructure;
+
+import domain.Producto;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Lector del CSV de inventario ({@code codigo,nombre,precio,stock}) que trabaja
+ * directamente sobre bytes, sin pasar por una lista de líneas ni por split.
+ *
+ * El archivo se divide en bloques alineados a fin de línea que se leen en
+ * buffers directos y se procesan en paralelo; el resultado conserva el orden
+ * del archivo. Precio y stock se interpretan desde los bytes: solo se crean
+ * los Strings del código y del nombre.
+ *
+ * El código llega hasta la primera coma y el precio y el stock son los dos
+ * últimos campos, así que el nombre puede contener comas.
+ *
+ * No se usa un archivo mapeado en memoria porque en Windows el mapeo bloquea
+ * el archivo hasta que el recolector lo libera, y eso impediría reemplazar el
+ * CSV al guardar.
+ */
+public class LectorCSVProductos {
+    private static final int TAMANO_BLOQUE = 1 << 20;
+    private static final int TAMANO_SONDEO = 4096;
+    private static final long MAXIMO_EXACTO = 1L << 53;
+    private static final double[] POTENCIAS_DIEZ = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(TAMANO_BLOQUE + TAMANO_SONDEO));
+
+    private final Path path;
+    private String cabecera;
+
+    /**
+     * @param path Archivo CSV a leer
+     */
+    public LectorCSVProductos(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Lee todos los productos del archivo. La primera línea no vacía se toma
+     * como cabecera y queda disponible en {@link #getCabecera()}.
+     * Las líneas inválidas se informan por consola y se omiten.
+     *
+     * @return Productos en el orden del archivo
+     * @throws IOException Si ocurre un error de lectura
+     */
+    public List<Producto> leer() throws IOException {
+        try (FileChannel canal = FileChannel.open(path, StandardOpenOption.READ)) {
+            long tamano = canal.size();
+            long inicioDatos = leerCabecera(canal, tamano);
+            List<long[]> bloques = dividirEnBloques(canal, inicioDatos, tamano);
+
+            if (bloques.size() == 1) {
+                return parsearBloque(canal, bloques.get(0));
+            }
+            List<List<Producto>> partes;
+            try {
+                partes = bloques.parallelStream()
+                        .map(b -> {
+                            try {
+                                return parsearBloque(canal, b);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        })
+                        .collect(Collectors.toList());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            int total = 0;
+            for (List<Producto> parte : partes) {
+                total += parte.size();
+            }
+            List<Producto> productos = new ArrayList<>(total);
+            for (List<Producto> parte : partes) {
+                productos.addAll(parte);
+            }
+            return productos;
+        }
+    }
+
+    /**
+     * @return Cabecera del último archivo leído, o null si estaba vacío
+     */
+    public String getCabecera() {
+        return cabecera;
+    }
+
+    // —————————————————————— BLOQUES ——————————————————————
+
+    /**
+     * Lee la primera línea no vacía como cabecera.
+     *
+     * @return Posición donde empiezan los datos
+     */
+    private long leerCabecera(FileChannel canal, long tamano) throws IOException {
+        cabecera = null;
+        ByteArrayOutputStream linea = new ByteArrayOutputStream();
+        ByteBuffer sondeo = ByteBuffer.allocate(TAMANO_SONDEO);
+        long posicion = 0;
+        while (posicion < tamano) {
+            sondeo.clear();
+            int leidos = canal.read(sondeo, posicion);
+            if (leidos <= 0) break;
+            for (int i = 0; i < leidos; i++) {
+                byte b = sondeo.get(i);
+                if (b != '\n') {
+                    linea.write(b);
+                    continue;
+                }
+                String texto = linea.toString(StandardCharsets.UTF_8).trim();
+                if (!texto.isEmpty()) {
+                    cabecera = texto;
+                    return posicion + i + 1;
+                }
+                linea.reset();
+            }
+            posicion += leidos;
+        }
+        String texto = linea.toString(StandardCharsets.UTF_8).trim();
+        cabecera = texto.isEmpty() ? null : texto;
+        return tamano;
+    }
+
+    /**
+     * Parte el rango de datos en bloques de aproximadamente {@link #TAMANO_BLOQUE}
+     * bytes, extendiendo cada uno hasta el siguiente salto de línea.
+     *
+     * @return Pares {inicio, fin} de cada bloque
+     */
+    private List<long[]> dividirEnBloques(FileChannel canal, long inicio, long tamano) throws IOException {
+        List<long[]> bloques = new ArrayList<>();
+        ByteBuffer sondeo = ByteBuffer.allocate(TAMANO_SONDEO);
+        while (inicio < tamano) {
+            long fin = Math.min(inicio + TAMANO_BLOQUE, tamano);
+            while (fin < tamano) {
+                sondeo.clear();
+                int leidos = canal.read(sondeo, fin);
+                if (leidos <= 0) {
+                    fin = tamano;
+                    break;
+                }
+                int salto = -1;
+                for (int i = 0; i < leidos && salto < 0; i++) {
+                    if (sondeo.get(i) == '\n') salto = i;
+                }
+                if (salto >= 0) {
+                    fin += salto + 1;
+                    break;
+                }
+                fin += leidos;
+            }
+            bloques.add(new long[]{inicio, fin});
+            inicio = fin;
+        }
+        if (bloques.isEmpty()) {
+            bloques.add(new long[]{inicio, inicio});
+        }
+        return bloques;
+    }
+
+    private List<Producto> parsearBloque(FileChannel canal, long[] bloque) throws IOException {
+        int longitud = (int) (bloque[1] - bloque[0]);
+        ByteBuffer buffer = BUFFER.get();
+        if (longitud > buffer.capacity()) {
+            buffer = ByteBuffer.allocateDirect(longitud); // Línea más larga que un bloque
+        }
+        buffer.clear().limit(longitud);
+        long posicion = bloque[0];
+        while (buffer.hasRemaining()) {
+            if (canal.read(buffer, posicion + buffer.position()) < 0) {
+                throw new IOException("El archivo cambió durante la lectura: " + path);
+            }
+        }
+
+        List<Producto> productos = new ArrayList<>(longitud / 24 + 1);
+        Parser parser = new Parser(buffer);
+        int inicioLinea = 0;
+        while (inicioLinea < longitud) {
+            int finLinea = inicioLinea;
+            while (finLinea < longitud && buffer.get(finLinea) != '\n') finLinea++;
+            Producto p = parser.parsearLinea(inicioLinea, finLinea);
+            if (p != null) {
+                productos.add(p);
+            }
+            inicioLinea = finLinea + 1;
+        }
+        return productos;
+    }
+
+    // —————————————————————— LÍNEAS ——————————————————————
+
+    /**
+     * Interpreta líneas de un bloque ya leído. Reutiliza un arreglo auxiliar
+     * para decodificar código y nombre.
+     */
+    private static class Parser {
+        private final ByteBuffer buffer;
+        private byte[] auxiliar = new byte[128];
+
+        Parser(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        Producto parsearLinea(int inicio, int fin) {
+            inicio = saltarEspacios(inicio, fin);
+            fin = recortarEspacios(inicio, fin);
+            if (inicio >= fin) {
+                return null; // Línea vacía
+            }
+
+            int primeraComa = -1, penultimaComa = -1, ultimaComa = -1;
+            for (int i = inicio; i < fin; i++) {
+                if (buffer.get(i) == ',') {
+                    if (primeraComa < 0) primeraComa = i;
+                    penultimaComa = ultimaComa;
+                    ultimaComa = i;
+                }
+            }
+            if (primeraComa < 0 || penultimaComa <= primeraComa) {
+                System.err.println("Línea CSV inválida (campos insuficientes): " + texto(inicio, fin));
+                return null;
+            }
+
+            try {
+                double precio = parsearDecimal(penultimaComa + 1, ultimaComa);
+                int stock = parsearEntero(ultimaComa + 1, fin);
+                String codigo = texto(inicio, primeraComa);
+
+                if (codigo.isEmpty()) {
+                    System.err.println("Código vacío en línea: " + texto(inicio, fin));
+                    return null;
+                }
+                if (precio < 0) {
+                    System.err.println("Precio negativo ignorado: " + texto(inicio, fin));
+                    return null;
+                }
+                if (stock < 0) {
+                    System.err.println("Stock negativo ignorado: " + texto(inicio, fin));
+                    return null;
+                }
+                return new Producto(codigo, texto(primeraComa + 1, penultimaComa), precio, stock);
+
+            } catch (NumberFormatException e) {
+                System.err.println("Error al parsear número en línea CSV: " + texto(inicio, fin));
+                return null;
+            } catch (Exception e) {
+                System.err.println("Error inesperado al procesar línea CSV: " + texto(inicio, fin));
+                return null;
+            }
+        }
+
+        /**
+         * Entero con signo opcional, equivalente a {@code Integer.parseInt(campo.trim())}.
+         */
+        private int parsearEntero(int inicio, int fin) {
+            inicio = saltarEspacios(inicio, fin);
+            fin = recortarEspacios(inicio, fin);
+            boolean negativo = false;
+            if (inicio < fin && (buffer.get(inicio) == '-' || buffer.get(inicio) == '+')) {
+                negativo = buffer.get(inicio) == '-';
+                inicio++;
+            }
+            if (inicio >= fin) {
+                throw new NumberFormatException("Entero vacío");
+            }
+            long valor = 0;
+            for (int i = inicio; i < fin; i++) {
+                int digito = buffer.get(i) - '0';
+                if (digito < 0 || digito > 9) {
+                    throw new NumberFormatException("Entero inválido");
+                }
+                valor = valor * 10 + digito;
+                if (valor > (long) Integer.MAX_VALUE + 1) {
+                    throw new NumberFormatException("Entero fuera de rango");
+                }
+            }
+            valor = negativo ? -valor : valor;
+            if (valor > Integer.MAX_VALUE) {
+                throw new NumberFormatException("Entero fuera de rango");
+            }
+            return (int) valor;
+        }
+
+        /**
+         * Decimal simple ({@code 1234.56}) calculado desde los bytes. El resultado es
+         * exacto mientras la mantisa quepa en 53 bits y haya a lo sumo 22 decimales;
+         * cualquier otra forma (exponente, muchos dígitos...) se delega en
+         * {@link Double#parseDouble(String)}.
+         */
+        private double parsearDecimal(int inicio, int fin) {
+            inicio = saltarEspacios(inicio, fin);
+            fin = recortarEspacios(inicio, fin);
+            int i = inicio;
+            boolean negativo = false;
+            if (i < fin && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negativo = buffer.get(i) == '-';
+                i++;
+            }
+            long mantisa = 0;
+            int decimales = 0;
+            int digitos = 0;
+            boolean enFraccion = false;
+            for (; i < fin; i++) {
+                byte b = buffer.get(i);
+                if (b == '.' && !enFraccion) {
+                    enFraccion = true;
+                    continue;
+                }
+                int digito = b - '0';
+                if (digito < 0 || digito > 9 || mantisa >= MAXIMO_EXACTO / 10) {
+                    return Double.parseDouble(texto(inicio, fin));
+                }
+                mantisa = mantisa * 10 + digito;
+                digitos++;
+                if (enFraccion) decimales++;
+            }
+            if (digitos == 0 || decimales >= POTENCIAS_DIEZ.length) {
+                return Double.parseDouble(texto(inicio, fin));
+            }
+            double valor = decimales == 0 ? mantisa : mantisa / POTENCIAS_DIEZ[decimales];
+            return negativo ? -valor : valor;
+        }
+
+        /**
+         * Decodifica en UTF-8 el rango indicado, sin espacios en los extremos.
+         */
+        private String texto(int inicio, int fin) {
+            inicio = saltarEspacios(inicio, fin);
+            fin = recortarEspacios(inicio, fin);
+            int longitud = fin - inicio;
+            if (longitud > auxiliar.length) {
+                auxiliar = new byte[Math.max(longitud, auxiliar.length * 2)];
+            }
+            buffer.get(inicio, auxiliar, 0, longitud);
+            return new String(auxiliar, 0, longitud, StandardCharsets.UTF_8);
+        }
+
+        // Mismo criterio que String.trim(): todo byte <= ' ' (incluye '\r')
+        private int saltarEspacios(int inicio, int fin) {
+            while (inicio < fin && (buffer.get(inicio) & 0xFF) <= ' ') inicio++;
+            return inicio;
+        }
+
+        private int recortarEspacios(int inicio, int fin) {
+            while (fin > inicio && (buffer.get(fin - 1) & 0xFF) <= ' ') fin--;
+            return fin;
+        }
+    }
+}
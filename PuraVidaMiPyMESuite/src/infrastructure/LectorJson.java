@@ -0,0 +1,375 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package infrastructure;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Lector JSON de tipo "pull": el que llama pide el siguiente evento y el
+ * lector avanza solo lo necesario, con un buffer fijo. Nunca arma el
+ * documento completo, así que sirve para archivos de cualquier tamaño.
+ *
+ * Acepta varios valores seguidos en el nivel superior, de modo que un archivo
+ * NDJSON (un objeto por línea) se lee igual que un arreglo: una secuencia de
+ * {@link Evento#INICIO_OBJETO} ... {@link Evento#FIN_OBJETO}.
+ *
+ * Ejemplo:
+ * <pre>
+ * while (lector.siguiente() == Evento.NOMBRE) {
+ *     String campo = lector.getTexto();
+ *     ...
+ * }
+ * </pre>
+ */
+public class LectorJson implements Closeable {
+    public enum Evento {
+        INICIO_OBJETO, FIN_OBJETO, INICIO_ARREGLO, FIN_ARREGLO,
+        NOMBRE, TEXTO, NUMERO, VERDADERO, FALSO, NULO, FIN
+    }
+
+    private static final int TAMANO_BUFFER = 1 << 16;
+
+    // Qué se espera dentro del contenedor actual
+    private static final int RECIEN_ABIERTO = 0;
+    private static final int DESPUES_DE_NOMBRE = 1;
+    private static final int DESPUES_DE_VALOR = 2;
+
+    private final Reader entrada;
+    private final char[] buffer = new char[TAMANO_BUFFER];
+    private int posicion;
+    private int limite;
+    private long linea = 1;
+
+    private boolean[] esObjeto = new boolean[16];
+    private int profundidad;
+    private int estado;
+
+    private final StringBuilder texto = new StringBuilder();
+
+    /**
+     * @param entrada Origen del JSON; el lector lo cierra en {@link #close()}
+     */
+    public LectorJson(Reader entrada) {
+        this.entrada = entrada;
+    }
+
+    /**
+     * Avanza al siguiente evento.
+     *
+     * @return Evento leído, o {@link Evento#FIN} al terminar el documento
+     * @throws IOException Si falla la lectura o el JSON está mal formado
+     */
+    public Evento siguiente() throws IOException {
+        int c = saltarEspacios();
+        if (profundidad == 0) {
+            return c == -1 ? Evento.FIN : leerValor(c);
+        }
+        boolean objeto = esObjeto[profundidad - 1];
+        char cierre = objeto ? '}' : ']';
+        switch (estado) {
+            case RECIEN_ABIERTO:
+                if (c == cierre) {
+                    return cerrar();
+                }
+                return objeto ? leerNombre(c) : leerValor(c);
+            case DESPUES_DE_NOMBRE:
+                return leerValor(c);
+            default:
+                if (c == cierre) {
+                    return cerrar();
+                }
+                if (c != ',') {
+                    throw error(c == -1 ? "fin inesperado del documento" : "se esperaba ',' o '" + cierre + "'");
+                }
+                c = saltarEspacios();
+                return objeto ? leerNombre(c) : leerValor(c);
+        }
+    }
+
+    /**
+     * Salta el próximo valor completo (con todo su contenido si es un objeto o arreglo).
+     */
+    public void saltarValor() throws IOException {
+        Evento e = siguiente();
+        if (e == Evento.INICIO_OBJETO || e == Evento.INICIO_ARREGLO) {
+            saltarHastaCerrar();
+        }
+    }
+
+    /**
+     * Consume el resto del objeto o arreglo que se acaba de abrir, hasta su cierre.
+     */
+    public void saltarHastaCerrar() throws IOException {
+        int objetivo = profundidad - 1;
+        while (profundidad > objetivo) {
+            siguiente();
+        }
+    }
+
+    // —————————————————————— VALORES ——————————————————————
+
+    /**
+     * @return Texto del último {@link Evento#NOMBRE}, {@link Evento#TEXTO} o {@link Evento#NUMERO}
+     */
+    public String getTexto() {
+        return texto.toString();
+    }
+
+    /**
+     * @return Último {@link Evento#NUMERO} como double
+     */
+    public double getDouble() {
+        return Double.parseDouble(texto.toString());
+    }
+
+    /**
+     * @return Último {@link Evento#NUMERO} como entero
+     * @throws IOException Si tiene decimales o no cabe en un int
+     */
+    public int getEntero() throws IOException {
+        try {
+            return Integer.parseInt(texto.toString());
+        } catch (NumberFormatException e) {
+            double valor = getDouble();
+            if (valor == Math.rint(valor) && valor >= Integer.MIN_VALUE && valor <= Integer.MAX_VALUE) {
+                return (int) valor; // Por ejemplo 5.0 o 1e3
+            }
+            throw error("no es un entero: " + texto);
+        }
+    }
+
+    /**
+     * @return Línea actual (para mensajes de error)
+     */
+    public long getLinea() {
+        return linea;
+    }
+
+    @Override
+    public void close() throws IOException {
+        entrada.close();
+    }
+
+    // —————————————————————— LECTURA ——————————————————————
+
+    private Evento leerValor(int c) throws IOException {
+        switch (c) {
+            case '{':
+                abrir(true);
+                return Evento.INICIO_OBJETO;
+            case '[':
+                abrir(false);
+                return Evento.INICIO_ARREGLO;
+            case '"':
+                leerCadena();
+                estado = DESPUES_DE_VALOR;
+                return Evento.TEXTO;
+            case 't':
+                leerLiteral("true");
+                estado = DESPUES_DE_VALOR;
+                return Evento.VERDADERO;
+            case 'f':
+                leerLiteral("false");
+                estado = DESPUES_DE_VALOR;
+                return Evento.FALSO;
+            case 'n':
+                leerLiteral("null");
+                estado = DESPUES_DE_VALOR;
+                return Evento.NULO;
+            case -1:
+                throw error("fin inesperado del documento");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    leerNumero(c);
+                    estado = DESPUES_DE_VALOR;
+                    return Evento.NUMERO;
+                }
+                throw error("valor inesperado '" + (char) c + "'");
+        }
+    }
+
+    private Evento leerNombre(int c) throws IOException {
+        if (c != '"') {
+            throw error(c == -1 ? "fin inesperado del documento" : "se esperaba el nombre de un campo");
+        }
+        leerCadena();
+        if (saltarEspacios() != ':') {
+            throw error("se esperaba ':' después de \"" + texto + "\"");
+        }
+        estado = DESPUES_DE_NOMBRE;
+        return Evento.NOMBRE;
+    }
+
+    private void abrir(boolean objeto) {
+        if (profundidad == esObjeto.length) {
+            esObjeto = Arrays.copyOf(esObjeto, profundidad * 2);
+        }
+        esObjeto[profundidad++] = objeto;
+        estado = RECIEN_ABIERTO;
+    }
+
+    private Evento cerrar() {
+        boolean objeto = esObjeto[--profundidad];
+        estado = DESPUES_DE_VALOR;
+        return objeto ? Evento.FIN_OBJETO : Evento.FIN_ARREGLO;
+    }
+
+    /**
+     * Lee una cadena (ya consumida la comilla inicial). Los tramos sin escapes
+     * se copian del buffer de una vez.
+     */
+    private void leerCadena() throws IOException {
+        texto.setLength(0);
+        while (true) {
+            if (posicion == limite && !llenar()) {
+                throw error("cadena sin cerrar");
+            }
+            int inicio = posicion;
+            while (posicion < limite) {
+                char c = buffer[posicion];
+                if (c == '"' || c == '\\' || c < 0x20) {
+                    break;
+                }
+                posicion++;
+            }
+            texto.append(buffer, inicio, posicion - inicio);
+            if (posicion == limite) {
+                continue;
+            }
+            char c = buffer[posicion++];
+            if (c == '"') {
+                return;
+            }
+            if (c < 0x20) {
+                throw error("carácter de control sin escapar en una cadena");
+            }
+            leerEscape();
+        }
+    }
+
+    private void leerEscape() throws IOException {
+        int c = leer();
+        switch (c) {
+            case '"' -> texto.append('"');
+            case '\\' -> texto.append('\\');
+            case '/' -> texto.append('/');
+            case 'b' -> texto.append('\b');
+            case 'f' -> texto.append('\f');
+            case 'n' -> texto.append('\n');
+            case 'r' -> texto.append('\r');
+            case 't' -> texto.append('\t');
+            case 'u' -> {
+                int valor = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digito = Character.digit(leer(), 16);
+                    if (digito < 0) {
+                        throw error("escape \\u inválido");
+                    }
+                    valor = (valor << 4) | digito;
+                }
+                texto.append((char) valor);
+            }
+            default -> throw error("escape inválido");
+        }
+    }
+
+    /**
+     * Lee un número validando la gramática de JSON; se guarda como texto y se
+     * convierte solo si se pide.
+     */
+    private void leerNumero(int c) throws IOException {
+        texto.setLength(0);
+        if (c == '-') {
+            texto.append('-');
+            c = leer();
+        }
+        if (c == '0') {
+            texto.append('0');
+            c = leer();
+        } else if (c >= '1' && c <= '9') {
+            c = leerDigitos(c);
+        } else {
+            throw error("número inválido");
+        }
+        if (c == '.') {
+            texto.append('.');
+            c = leer();
+            if (c < '0' || c > '9') {
+                throw error("número inválido");
+            }
+            c = leerDigitos(c);
+        }
+        if (c == 'e' || c == 'E') {
+            texto.append('e');
+            c = leer();
+            if (c == '+' || c == '-') {
+                texto.append((char) c);
+                c = leer();
+            }
+            if (c < '0' || c > '9') {
+                throw error("número inválido");
+            }
+            c = leerDigitos(c);
+        }
+        if (c != -1) {
+            posicion--; // El carácter que cerró el número pertenece al siguiente evento
+        }
+    }
+
+    private int leerDigitos(int c) throws IOException {
+        while (c >= '0' && c <= '9') {
+            texto.append((char) c);
+            c = leer();
+        }
+        return c;
+    }
+
+    private void leerLiteral(String literal) throws IOException {
+        for (int i = 1; i < literal.length(); i++) {
+            if (leer() != literal.charAt(i)) {
+                throw error("se esperaba " + literal);
+            }
+        }
+    }
+
+    private int saltarEspacios() throws IOException {
+        while (true) {
+            int c = leer();
+            if (c == '\n') {
+                linea++;
+            } else if (c != ' ' && c != '\t' && c != '\r') {
+                return c;
+            }
+        }
+    }
+
+    private int leer() throws IOException {
+        if (posicion == limite && !llenar()) {
+            return -1;
+        }
+        return buffer[posicion++];
+    }
+
+    private boolean llenar() throws IOException {
+        int leidos = entrada.read(buffer, 0, buffer.length);
+        if (leidos <= 0) {
+            return false;
+        }
+        posicion = 0;
+        limite = leidos;
+        return true;
+    }
+
+    private IOException error(String detalle) {
+        return new IOException("JSON inválido en la línea " + linea + ": " + detalle);
+    }
+}
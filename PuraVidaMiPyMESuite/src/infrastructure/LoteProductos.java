@@ -0,0 +1,106 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package infrastructure;
+
+import domain.Producto;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Unidad de trabajo sobre {@link ProductoRepositorio}: acumula altas,
+ * actualizaciones y bajas y las aplica con una sola lectura y una sola
+ * escritura del archivo.
+ *
+ * La confirmación es todo o nada: si alguna operación no se puede aplicar, el
+ * archivo no se toca. El resultado informa qué pasó con cada operación.
+ *
+ * Ejemplo:
+ * <pre>
+ * ResultadoLote r = repositorio.iniciarLote()
+ *         .agregar(nuevo)
+ *         .actualizar(editado)
+ *         .eliminar("P-003")
+ *         .confirmar();
+ * </pre>
+ */
+public class LoteProductos {
+    public enum TipoOperacion { ALTA, ACTUALIZACION, BAJA }
+
+    private final ProductoRepositorio repositorio;
+    private final List<Operacion> operaciones = new ArrayList<>();
+    private boolean confirmado;
+
+    LoteProductos(ProductoRepositorio repositorio) {
+        this.repositorio = repositorio;
+    }
+
+    public LoteProductos agregar(Producto producto) {
+        Objects.requireNonNull(producto, "El producto no puede ser nulo");
+        return encolar(new Operacion(TipoOperacion.ALTA, producto.getCodigo(), producto));
+    }
+
+    public LoteProductos actualizar(Producto producto) {
+        Objects.requireNonNull(producto, "El producto no puede ser nulo");
+        return encolar(new Operacion(TipoOperacion.ACTUALIZACION, producto.getCodigo(), producto));
+    }
+
+    public LoteProductos eliminar(String codigo) {
+        Objects.requireNonNull(codigo, "El código no puede ser nulo");
+        return encolar(new Operacion(TipoOperacion.BAJA, codigo, null));
+    }
+
+    /**
+     * @return Cantidad de operaciones en cola
+     */
+    public int tamano() {
+        return operaciones.size();
+    }
+
+    /**
+     * Aplica todas las operaciones en orden. Cada una ve el efecto de las
+     * anteriores del mismo lote. Un lote solo se puede confirmar una vez.
+     *
+     * @return Resultado por operación; si alguna falló, nada se guardó
+     * @throws IOException Si falla la lectura o escritura del archivo, o si el
+     *         archivo tiene códigos repetidos (tampoco se guarda nada)
+     */
+    public ResultadoLote confirmar() throws IOException {
+        if (confirmado) {
+            throw new IllegalStateException("El lote ya fue confirmado");
+        }
+        confirmado = true;
+        return repositorio.aplicarLote(Collections.unmodifiableList(operaciones));
+    }
+
+    private LoteProductos encolar(Operacion operacion) {
+        if (confirmado) {
+            throw new IllegalStateException("El lote ya fue confirmado");
+        }
+        operaciones.add(operacion);
+        return this;
+    }
+
+    /**
+     * Operación en cola.
+     */
+    static class Operacion {
+        final TipoOperacion tipo;
+        final String codigo;
+        final Producto producto; // null en las bajas
+
+        Operacion(TipoOperacion tipo, String codigo, Producto producto) {
+            this.tipo = tipo;
+            this.codigo = codigo;
+            this.producto = producto;
+        }
+    }
+}
@@ -15,22 +15,43 @@ import java.util.*;
 /**
  * Repositorio especializado en la persistencia de Productos.
  * Gestiona lectura y escritura en archivo CSV.
+ * No lleva journal: como {@link AlmacenInventario} reescribe el archivo en cada cambio.
  */
-public class ProductoRepositorio {
+public class ProductoRepositorio implements AlmacenInventario {
     private static final String RUTA_ARCHIVO = "data/inventario.csv";
 
+    private final Path ruta;
+
+    public ProductoRepositorio() {
+        this(Paths.get(RUTA_ARCHIVO));
+    }
+
+    /**
+     * @param ruta Archivo CSV de productos
+     */
+    public ProductoRepositorio(Path ruta) {
+        this.ruta = ruta;
+    }
+
     /**
      * Guarda una lista completa de productos en el archivo CSV.
+     * Se escribe en un temporal y se reemplaza, para no dejar nunca un archivo a medias.
      */
-    public void guardarProductos(List<Producto> productos) throws IOException {
-        Path path = Paths.get(RUTA_ARCHIVO);
+    @Override
+    public synchronized void guardarProductos(List<Producto> productos) throws IOException {
+        escribir(productos);
+    }
+
+    private void escribir(Collection<Producto> productos) throws IOException {
+        Path path = ruta;
         Path dir = path.getParent();
         if (dir != null && !Files.exists(dir)) {
             Files.createDirectories(dir);
         }
 
+        Path temporal = path.resolveSibling(path.getFileName() + ".tmp");
         try (PrintWriter writer = new PrintWriter(
-                new OutputStreamWriter(new FileOutputStream(RUTA_ARCHIVO), java.nio.charset.StandardCharsets.UTF_8))) {
+                new OutputStreamWriter(new FileOutputStream(temporal.toFile()), java.nio.charset.StandardCharsets.UTF_8))) {
             writer.println("codigo,nombre,precio,stock");
 
             for (Producto p : productos) {
@@ -40,6 +61,14 @@ public class ProductoRepositorio {
                         p.getPrecio(),
                         p.getStock());
             }
+            if (writer.checkError()) {
+                throw new IOException("Error al escribir " + temporal);
+            }
+        }
+        try {
+            Files.move(temporal, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporal, path, StandardCopyOption.REPLACE_EXISTING);
         }
     }
 
@@ -47,69 +76,15 @@ public class ProductoRepositorio {
      * Lee todos los productos del archivo CSV.
      * Si el archivo no existe, devuelve una lista vacía.
      */
+    @Override
     public List<Producto> leerProductos() throws IOException {
-        Path path = Paths.get(RUTA_ARCHIVO);
+        Path path = ruta;
         if (!Files.exists(path)) {
             return new ArrayList<>();
         }
 
-        List<Producto> productos = new ArrayList<>();
-        List<String> lineas = Files.readAllLines(path, java.nio.charset.StandardCharsets.UTF_8);
-
-        boolean esCabecera = true;
-        for (String linea : lineas) {
-            if (linea.trim().isEmpty()) continue;
-            if (esCabecera) {
-                esCabecera = false;
-                continue; // Saltar cabecera
-            }
-
-            Producto producto = parsearLinea(linea);
-            if (producto != null) {
-                productos.add(producto);
-            }
-        }
-        return productos;
-    }
-
-    /**
-     * Convierte una línea CSV en un objeto Producto.
-     */
-    private Producto parsearLinea(String linea) {
-        try {
-            String[] campos = linea.split(",", 4);
-            if (campos.length < 4) {
-                System.err.println("Línea con campos insuficientes: " + linea);
-                return null;
-            }
-
-            String codigo = campos[0].trim();
-            String nombre = campos[1].trim();
-            double precio = Double.parseDouble(campos[2].trim());
-            int stock = Integer.parseInt(campos[3].trim());
-
-            if (codigo.isEmpty()) {
-                System.err.println("Código vacío en línea: " + linea);
-                return null;
-            }
-            if (precio < 0) {
-                System.err.println("Precio negativo ignorado: " + linea);
-                return null;
-            }
-            if (stock < 0) {
-                System.err.println("Stock negativo ignorado: " + linea);
-                return null;
-            }
-
-            return new Producto(codigo, nombre, precio, stock);
-
-        } catch (NumberFormatException e) {
-            System.err.println("Error numérico en línea CSV: " + linea + " → " + e.getMessage());
-            return null;
-        } catch (Exception e) {
-            System.err.println("Error inesperado al parsear línea: " + linea + " → " + e.getMessage());
-            return null;
-        }
+        // El lector salta la cabecera y descarta las líneas inválidas
+        return new LectorCSVProductos(path).leer();
     }
 
     /**
@@ -126,43 +101,94 @@ public class ProductoRepositorio {
      * Agrega un nuevo producto.
      */
     public void agregarProducto(Producto producto) throws IOException {
-        List<Producto> productos = leerProductos();
-        if (productos.stream().anyMatch(p -> p.getCodigo().equals(producto.getCodigo()))) {
-            throw new IllegalArgumentException("Ya existe un producto con código: " + producto.getCodigo());
-        }
-        productos.add(producto);
-        guardarProductos(productos);
+        confirmarUna(iniciarLote().agregar(producto));
     }
 
     /**
      * Actualiza un producto existente.
      */
     public void actualizarProducto(Producto producto) throws IOException {
-        List<Producto> productos = leerProductos();
-        boolean encontrado = false;
-        for (int i = 0; i < productos.size(); i++) {
-            if (productos.get(i).getCodigo().equals(producto.getCodigo())) {
-                productos.set(i, producto);
-                encontrado = true;
-                break;
-            }
-        }
-        if (!encontrado) {
-            throw new IllegalArgumentException("Producto no encontrado: " + producto.getCodigo());
-        }
-        guardarProductos(productos);
+        confirmarUna(iniciarLote().actualizar(producto));
     }
 
     /**
      * Elimina un producto por código.
      */
     public void eliminarProducto(String codigo) throws IOException {
-        List<Producto> productos = leerProductos();
-        boolean eliminado = productos.removeIf(p -> p.getCodigo().equals(codigo));
-        if (eliminado) {
-            guardarProductos(productos);
-        } else {
-            throw new IllegalArgumentException("Producto no encontrado: " + codigo);
+        confirmarUna(iniciarLote().eliminar(codigo));
+    }
+
+    // —————————————————————— LOTES ——————————————————————
+
+    /**
+     * Crea una unidad de trabajo para aplicar varios cambios con una sola
+     * lectura y una sola escritura del archivo.
+     */
+    public LoteProductos iniciarLote() {
+        return new LoteProductos(this);
+    }
+
+    /**
+     * Aplica las operaciones sobre el contenido actual del archivo y lo guarda
+     * solo si todas fueron válidas.
+     *
+     * @throws IOException Si el archivo tiene códigos repetidos: reescribirlo
+     *         descartaría filas, así que el lote no se aplica
+     */
+    synchronized ResultadoLote aplicarLote(List<LoteProductos.Operacion> operaciones) throws IOException {
+        ResultadoLote resultado = new ResultadoLote();
+        if (operaciones.isEmpty()) {
+            resultado.marcarAplicado();
+            return resultado;
+        }
+
+        Map<String, Producto> productos = new LinkedHashMap<>();
+        Set<String> repetidos = new LinkedHashSet<>();
+        for (Producto p : leerProductos()) {
+            if (productos.putIfAbsent(p.getCodigo(), p) != null) {
+                repetidos.add(p.getCodigo());
+            }
+        }
+        if (!repetidos.isEmpty()) {
+            throw new IOException("Códigos repetidos en " + ruta + ": " + repetidos
+                    + "; el lote no se aplica para no descartar filas");
+        }
+
+        boolean todasValidas = true;
+        for (LoteProductos.Operacion op : operaciones) {
+            String error = null;
+            switch (op.tipo) {
+                case ALTA -> {
+                    if (productos.putIfAbsent(op.codigo, op.producto) != null) {
+                        error = "Ya existe un producto con código: " + op.codigo;
+                    }
+                }
+                case ACTUALIZACION -> {
+                    if (productos.replace(op.codigo, op.producto) == null) {
+                        error = "Producto no encontrado: " + op.codigo;
+                    }
+                }
+                case BAJA -> {
+                    if (productos.remove(op.codigo) == null) {
+                        error = "Producto no encontrado: " + op.codigo;
+                    }
+                }
+            }
+            resultado.registrar(op.tipo, op.codigo, error);
+            todasValidas &= error == null;
+        }
+
+        if (todasValidas) {
+            escribir(productos.values());
+            resultado.marcarAplicado();
+        }
+        return resultado;
+    }
+
+    private void confirmarUna(LoteProductos lote) throws IOException {
+        ResultadoLote resultado = lote.confirmar();
+        if (!resultado.isAplicado()) {
+            throw new IllegalArgumentException(resultado.getFallidas().get(0).getError());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,597 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package infrastructure;
+
+import data.EstrategiaPago;
+import domain.Cliente;
+import domain.ItemOrden;
+import domain.Orden;
+import domain.Producto;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Registro persistente de órdenes finalizadas: solo se anexa, nunca se
+ * reescribe. Se reparte en segmentos de hasta 64 MB dentro de data/ordenes;
+ * cuando uno se llena se sella y se empieza el siguiente.
+ *
+ * Cada registro es {@code int largo, int crc32, byte[largo]} con la orden
+ * completa. La cédula del cliente se guarda cifrada junto a su índice ciego
+ * (el mismo que usa {@link ClienteRepositorio}), que es la clave del índice por
+ * cliente. En memoria se mantienen dos índices: id → posición y cliente →
+ * posiciones. Al sellar un segmento sus entradas se escriben en un archivo
+ * .idx al lado, para no tener que recorrerlo al abrir; solo el segmento activo
+ * se recorre, y si termina en un registro a medias (corte de luz) se trunca.
+ *
+ * {@link #recorrer(Consumer)} lee los segmentos en orden y entrega las
+ * órdenes de a una, sin cargarlas todas, y puede correr mientras se anexan
+ * otras (ve las que existían al empezar).
+ */
+public class RegistroOrdenes implements Closeable {
+    private static final String DIRECTORIO = "data/ordenes";
+    private static final long TAMANO_SEGMENTO = 64L << 20;
+    private static final int MAGICO_INDICE = 0x5056494F; // "PVIO"
+    private static final int VERSION = 1;
+    private static final int TAMANO_BUFFER = 1 << 16;
+    private static final int CLIENTES_EN_CACHE = 10_000;
+
+    private final Path dir;
+    private final long tamanoSegmento;
+    private final CifradorAES cifrador;
+    private final IndiceCiego indiceCiego;
+    private final List<Consumer<Orden>> oyentes = new CopyOnWriteArrayList<>();
+
+    // Protegidos por "this"
+    private final List<Integer> segmentos = new ArrayList<>();
+    private final Map<String, Long> posicionPorId = new HashMap<>();
+    private final Map<String, Posiciones> posicionesPorCliente = new HashMap<>();
+    private final List<EntradaIndice> entradasActivo = new ArrayList<>();
+    private final Set<String> idsReservados = new HashSet<>();
+    private FileChannel activo;
+    private long tamanoActivo;
+
+    public RegistroOrdenes() throws Exception {
+        this(Paths.get(DIRECTORIO), TAMANO_SEGMENTO,
+                new CifradorAES(ClienteRepositorio.CLAVE_CIFRADO),
+                new IndiceCiego(ClienteRepositorio.CLAVE_CIFRADO));
+    }
+
+    /**
+     * @param dir Carpeta de los segmentos
+     * @param tamanoSegmento Tamaño a partir del cual se sella un segmento
+     */
+    public RegistroOrdenes(Path dir, long tamanoSegmento, CifradorAES cifrador, IndiceCiego indiceCiego)
+            throws IOException {
+        this.dir = dir;
+        this.tamanoSegmento = tamanoSegmento;
+        this.cifrador = cifrador;
+        this.indiceCiego = indiceCiego;
+        abrir();
+    }
+
+    // —————————————————————— ESCRITURA ——————————————————————
+
+    /**
+     * Aparta un id para una orden que se está finalizando, antes de cobrarla:
+     * dos terminales con el mismo id no pueden pasar las dos de este punto.
+     * La reserva se consume al anexar la orden o se suelta con {@link #liberarId}.
+     * Quien anexa una orden con id reservado debe ser quien lo reservó.
+     *
+     * @return false si el id ya está registrado o reservado
+     */
+    public synchronized boolean reservarId(String id) {
+        return !posicionPorId.containsKey(id) && idsReservados.add(id);
+    }
+
+    /**
+     * Suelta un id reservado cuya orden no se llegó a anexar.
+     */
+    public synchronized void liberarId(String id) {
+        idsReservados.remove(id);
+    }
+
+    /**
+     * Anexa una orden finalizada y la fuerza a disco.
+     *
+     * @throws IllegalArgumentException Si ya hay una orden con el mismo id
+     */
+    public void anexar(Orden orden) throws IOException {
+        anexarTodas(List.of(orden));
+    }
+
+    /**
+     * Anexa varias órdenes con una sola sincronización a disco. Si alguna
+     * tiene un id repetido no se anexa ninguna.
+     */
+    public void anexarTodas(Collection<Orden> ordenes) throws IOException {
+        synchronized (this) {
+            List<byte[]> registros = new ArrayList<>(ordenes.size());
+            Set<String> ids = new HashSet<>();
+            for (Orden orden : ordenes) {
+                if (posicionPorId.containsKey(orden.getId()) || !ids.add(orden.getId())) {
+                    throw new IllegalArgumentException("Ya existe una orden con id: " + orden.getId());
+                }
+                registros.add(codificar(orden));
+            }
+            int i = 0;
+            for (Orden orden : ordenes) {
+                if (tamanoActivo >= tamanoSegmento) {
+                    sellarActivo();
+                }
+                byte[] registro = registros.get(i++);
+                long desplazamiento = tamanoActivo;
+                ByteBuffer buffer = ByteBuffer.allocate(8 + registro.length);
+                buffer.putInt(registro.length).putInt(crc(registro)).put(registro).flip();
+                while (buffer.hasRemaining()) {
+                    activo.write(buffer, tamanoActivo + buffer.position());
+                }
+                tamanoActivo += 8 + registro.length;
+                indexar(new EntradaIndice(orden.getId(), ciegoDe(orden), desplazamiento),
+                        segmentos.get(segmentos.size() - 1));
+                idsReservados.remove(orden.getId());
+            }
+            activo.force(false);
+        }
+        for (Orden orden : ordenes) {
+            for (Consumer<Orden> oyente : oyentes) {
+                oyente.accept(orden);
+            }
+        }
+    }
+
+    /**
+     * Registra una acción que recibe cada orden después de anexarla.
+     */
+    public void agregarOyente(Consumer<Orden> oyente) {
+        oyentes.add(oyente);
+    }
+
+    // —————————————————————— CONSULTAS ——————————————————————
+
+    public synchronized boolean contiene(String id) {
+        return posicionPorId.containsKey(id);
+    }
+
+    /**
+     * @return Cantidad de órdenes registradas
+     */
+    public synchronized int tamano() {
+        return posicionPorId.size();
+    }
+
+    /**
+     * @return La orden con ese id, o null si no existe
+     */
+    public Orden buscarPorId(String id) throws IOException {
+        Long posicion;
+        synchronized (this) {
+            posicion = posicionPorId.get(id);
+        }
+        return posicion == null ? null : leerEn(posicion);
+    }
+
+    /**
+     * @return Órdenes del cliente con esa cédula, en el orden en que se registraron
+     */
+    public List<Orden> buscarPorCliente(String cedula) throws IOException {
+        long[] posiciones;
+        synchronized (this) {
+            Posiciones p = posicionesPorCliente.get(indiceCiego.calcular(cedula));
+            posiciones = p == null ? new long[0] : Arrays.copyOf(p.valores, p.cantidad);
+        }
+        List<Orden> ordenes = new ArrayList<>(posiciones.length);
+        for (long posicion : posiciones) {
+            ordenes.add(leerEn(posicion));
+        }
+        return ordenes;
+    }
+
+    /**
+     * Entrega todas las órdenes, en el orden en que se registraron, leyendo
+     * los segmentos secuencialmente. Las cédulas de un mismo cliente se
+     * descifran una sola vez.
+     *
+     * @return Cantidad de órdenes entregadas
+     */
+    public long recorrer(Consumer<Orden> destino) throws IOException {
+        List<Integer> numeros;
+        long limiteActivo;
+        synchronized (this) {
+            numeros = new ArrayList<>(segmentos);
+            limiteActivo = tamanoActivo;
+        }
+        Map<String, String> cedulas = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> mayor) {
+                return size() > CLIENTES_EN_CACHE;
+            }
+        };
+        long total = 0;
+        for (int i = 0; i < numeros.size(); i++) {
+            Path segmento = rutaSegmento(numeros.get(i));
+            long limite = i == numeros.size() - 1 ? limiteActivo : Files.size(segmento);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(segmento), TAMANO_BUFFER))) {
+                long leidos = 0;
+                while (leidos < limite) {
+                    byte[] registro = leerRegistro(in);
+                    if (registro == null) {
+                        break; // Final dañado de un segmento sellado (ya avisado al abrir)
+                    }
+                    leidos += 8 + registro.length;
+                    destino.accept(decodificar(registro, cedulas));
+                    total++;
+                }
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (activo != null) {
+            activo.close();
+            activo = null;
+        }
+    }
+
+    // —————————————————————— APERTURA E ÍNDICES ——————————————————————
+
+    private synchronized void abrir() throws IOException {
+        Files.createDirectories(dir);
+        try (Stream<Path> archivos = Files.list(dir)) {
+            segmentos.addAll(archivos.map(p -> p.getFileName().toString())
+                    .filter(n -> n.matches("\\d{6}\\.log"))
+                    .map(n -> Integer.parseInt(n.substring(0, 6)))
+                    .sorted()
+                    .collect(Collectors.toList()));
+        }
+        if (segmentos.isEmpty()) {
+            segmentos.add(1);
+        }
+        for (int i = 0; i < segmentos.size() - 1; i++) {
+            int numero = segmentos.get(i);
+            List<EntradaIndice> entradas = leerIndice(numero);
+            if (entradas == null) {
+                entradas = recorrerSegmento(numero, false);
+                escribirIndice(numero, entradas);
+            }
+            for (EntradaIndice e : entradas) {
+                indexar(e, numero);
+            }
+        }
+        int ultimo = segmentos.get(segmentos.size() - 1);
+        entradasActivo.clear();
+        for (EntradaIndice e : recorrerSegmento(ultimo, true)) {
+            indexar(e, ultimo);
+        }
+        activo = FileChannel.open(rutaSegmento(ultimo), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        tamanoActivo = activo.size();
+    }
+
+    /**
+     * Lee id e índice ciego de cada registro válido del segmento. Un final a
+     * medias se trunca si es el segmento activo.
+     */
+    private List<EntradaIndice> recorrerSegmento(int numero, boolean esActivo) throws IOException {
+        Path segmento = rutaSegmento(numero);
+        List<EntradaIndice> entradas = new ArrayList<>();
+        if (!Files.exists(segmento)) {
+            return entradas;
+        }
+        long tamano = Files.size(segmento);
+        long desplazamiento = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(segmento), TAMANO_BUFFER))) {
+            while (desplazamiento < tamano) {
+                byte[] registro = leerRegistro(in);
+                if (registro == null) {
+                    break;
+                }
+                DataInputStream datos = new DataInputStream(new ByteArrayInputStream(registro));
+                datos.readByte(); // versión
+                entradas.add(new EntradaIndice(datos.readUTF(), datos.readUTF(), desplazamiento));
+                desplazamiento += 8 + registro.length;
+            }
+        }
+        if (desplazamiento < tamano) {
+            System.err.println("Registro de órdenes dañado al final de " + segmento.getFileName()
+                    + " (" + (tamano - desplazamiento) + " bytes)" + (esActivo ? ", se trunca." : "."));
+            if (esActivo) {
+                try (FileChannel canal = FileChannel.open(segmento, StandardOpenOption.WRITE)) {
+                    canal.truncate(desplazamiento);
+                }
+            }
+        }
+        return entradas;
+    }
+
+    private void sellarActivo() throws IOException {
+        int numero = segmentos.get(segmentos.size() - 1);
+        activo.force(false);
+        activo.close();
+        escribirIndice(numero, entradasActivo);
+        entradasActivo.clear();
+        segmentos.add(numero + 1);
+        activo = FileChannel.open(rutaSegmento(numero + 1), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        tamanoActivo = 0;
+    }
+
+    private void indexar(EntradaIndice e, int segmento) {
+        long posicion = ((long) segmento << 40) | e.desplazamiento;
+        posicionPorId.put(e.id, posicion);
+        posicionesPorCliente.computeIfAbsent(e.ciego, k -> new Posiciones()).agregar(posicion);
+        if (segmento == segmentos.get(segmentos.size() - 1)) {
+            entradasActivo.add(e);
+        }
+    }
+
+    /**
+     * @return Entradas del .idx del segmento, o null si falta o no corresponde al segmento
+     */
+    private List<EntradaIndice> leerIndice(int numero) {
+        Path indice = rutaIndice(numero);
+        if (!Files.exists(indice)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(indice), TAMANO_BUFFER))) {
+            if (in.readInt() != MAGICO_INDICE || in.readLong() != Files.size(rutaSegmento(numero))) {
+                return null;
+            }
+            int cantidad = in.readInt();
+            List<EntradaIndice> entradas = new ArrayList<>(cantidad);
+            for (int i = 0; i < cantidad; i++) {
+                entradas.add(new EntradaIndice(in.readUTF(), in.readUTF(), in.readLong()));
+            }
+            return entradas;
+        } catch (IOException e) {
+            System.err.println("Índice de órdenes ilegible, se recorre el segmento: " + indice.getFileName());
+            return null;
+        }
+    }
+
+    private void escribirIndice(int numero, List<EntradaIndice> entradas) throws IOException {
+        Path indice = rutaIndice(numero);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(indice), TAMANO_BUFFER))) {
+            out.writeInt(MAGICO_INDICE);
+            out.writeLong(Files.size(rutaSegmento(numero)));
+            out.writeInt(entradas.size());
+            for (EntradaIndice e : entradas) {
+                out.writeUTF(e.id);
+                out.writeUTF(e.ciego);
+                out.writeLong(e.desplazamiento);
+            }
+        }
+    }
+
+    // —————————————————————— FORMATO ——————————————————————
+
+    /**
+     * @return Contenido del siguiente registro, o null si termina o está dañado
+     */
+    private static byte[] leerRegistro(DataInputStream in) throws IOException {
+        try {
+            int largo = in.readInt();
+            int crc = in.readInt();
+            if (largo <= 0 || largo > TAMANO_SEGMENTO) {
+                return null;
+            }
+            byte[] registro = new byte[largo];
+            in.readFully(registro);
+            return crc(registro) == crc ? registro : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private Orden leerEn(long posicion) throws IOException {
+        Path segmento = rutaSegmento((int) (posicion >>> 40));
+        long desplazamiento = posicion & ((1L << 40) - 1);
+        try (FileChannel canal = FileChannel.open(segmento, StandardOpenOption.READ)) {
+            canal.position(desplazamiento);
+            InputStream in = Channels.newInputStream(canal);
+            byte[] registro = leerRegistro(new DataInputStream(new BufferedInputStream(in)));
+            if (registro == null) {
+                throw new IOException("Registro de orden dañado en " + segmento.getFileName());
+            }
+            return decodificar(registro, new HashMap<>());
+        }
+    }
+
+    private byte[] codificar(Orden orden) throws IOException {
+        Cliente c = orden.getCliente();
+        String cedulaCifrada;
+        try {
+            cedulaCifrada = c.getCedula() == null ? "" : cifrador.cifrar(c.getCedula());
+        } catch (Exception e) {
+            throw new IOException("No se pudo cifrar la cédula de la orden " + orden.getId(), e);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeUTF(orden.getId());
+        out.writeUTF(ciegoDe(orden));
+        out.writeUTF(cedulaCifrada);
+        escribirTexto(out, c.getNombre());
+        escribirTexto(out, c.getTelefono());
+        escribirTexto(out, c.getEmail());
+        escribirTexto(out, orden.getMetodoPago() != null ? orden.getMetodoPago().getMetodo() : null);
+        out.writeDouble(orden.getDescuento());
+        out.writeDouble(orden.getImpuesto());
+        List<ItemOrden> items = orden.getItems();
+        out.writeInt(items.size());
+        for (ItemOrden item : items) {
+            Producto p = item.getProducto();
+            out.writeUTF(p.getCodigo());
+            escribirTexto(out, p.getNombre());
+            out.writeDouble(p.getPrecio());
+            out.writeInt(item.getCantidad());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param cedulas Cédulas ya descifradas por índice ciego, para no repetir el descifrado
+     */
+    private Orden decodificar(byte[] registro, Map<String, String> cedulas) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(registro));
+        if (in.readByte() != VERSION) {
+            throw new IOException("Versión de registro de orden desconocida");
+        }
+        String id = in.readUTF();
+        String ciego = in.readUTF();
+        String cedulaCifrada = in.readUTF();
+        String nombre = leerTexto(in);
+        String telefono = leerTexto(in);
+        String email = leerTexto(in);
+        String cedula = cedulas.get(ciego);
+        if (cedula == null) {
+            cedula = descifrar(cedulaCifrada);
+            if (cedula != null) {
+                cedulas.put(ciego, cedula);
+            }
+        }
+        Cliente cliente = new Cliente(cedula, nombre, telefono, email);
+        Orden orden = new Orden(id, cliente, new PagoRegistrado(leerTexto(in)));
+        orden.setDescuento(in.readDouble());
+        orden.setImpuesto(in.readDouble());
+        int items = in.readInt();
+        for (int i = 0; i < items; i++) {
+            Producto p = new Producto(in.readUTF(), leerTexto(in), in.readDouble(), 0);
+            orden.agregarItemRegistrado(p, in.readInt());
+        }
+        return orden;
+    }
+
+    private String descifrar(String cedulaCifrada) {
+        if (cedulaCifrada.isEmpty()) {
+            return null;
+        }
+        try {
+            return cifrador.descifrar(cedulaCifrada);
+        } catch (Exception e) {
+            System.err.println("No se pudo descifrar la cédula de una orden: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private String ciegoDe(Orden orden) {
+        String cedula = orden.getCliente().getCedula();
+        return cedula == null ? "" : indiceCiego.calcular(cedula);
+    }
+
+    private static void escribirTexto(DataOutputStream out, String texto) throws IOException {
+        out.writeBoolean(texto != null);
+        if (texto != null) {
+            out.writeUTF(texto);
+        }
+    }
+
+    private static String leerTexto(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static int crc(byte[] datos) {
+        CRC32 crc = new CRC32();
+        crc.update(datos);
+        return (int) crc.getValue();
+    }
+
+    private Path rutaSegmento(int numero) {
+        return dir.resolve(String.format("%06d.log", numero));
+    }
+
+    private Path rutaIndice(int numero) {
+        return dir.resolve(String.format("%06d.idx", numero));
+    }
+
+    /**
+     * Orden y cliente de un registro, con su desplazamiento dentro del segmento.
+     */
+    private static class EntradaIndice {
+        final String id;
+        final String ciego;
+        final long desplazamiento;
+
+        EntradaIndice(String id, String ciego, long desplazamiento) {
+            this.id = id;
+            this.ciego = ciego;
+            this.desplazamiento = desplazamiento;
+        }
+    }
+
+    /**
+     * Lista creciente de posiciones sin objetos por elemento.
+     */
+    private static class Posiciones {
+        long[] valores = new long[4];
+        int cantidad;
+
+        void agregar(long posicion) {
+            if (cantidad == valores.length) {
+                valores = Arrays.copyOf(valores, cantidad * 2);
+            }
+            valores[cantidad++] = posicion;
+        }
+    }
+
+    /**
+     * Método de pago de una orden ya cobrada: conserva el nombre y no permite cobrarla otra vez.
+     */
+    private static class PagoRegistrado implements EstrategiaPago {
+        private final String metodo;
+
+        PagoRegistrado(String metodo) {
+            this.metodo = metodo;
+        }
+
+        @Override
+        public boolean procesarPago(double monto) {
+            return false;
+        }
+
+        @Override
+        public String getMetodo() {
+            return metodo;
+        }
+    }
+}
@@ -10,11 +10,14 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -23,10 +26,35 @@ import java.util.List;
 /**
  * Repositorio encargado de leer y guardar productos en un archivo CSV.
  * Proporciona persistencia básica para el módulo de Catálogo & Inventario.
+ *
+ * Además del CSV (la instantánea completa) mantiene un journal de solo anexado
+ * ({@link JournalInventario}) junto al archivo, con un registro pequeño por
+ * cada alta, edición, baja o cambio de stock.
+ *
+ * Cada guardado deja también una copia en columnas ({@link InstantaneaColumnar},
+ * extensión .col) que se mapea en memoria al arrancar; el CSV solo se interpreta
+ * si esa copia falta o no corresponde al CSV actual.
  */
-public class RepositorioCSV {
+public class RepositorioCSV implements AlmacenInventario {
     private static final String RUTA_ARCHIVO = "data/inventario.csv";
 
+    private final Path ruta;
+    private final JournalInventario journal;
+    private final InstantaneaColumnar columnar;
+
+    public RepositorioCSV() {
+        this(Paths.get(RUTA_ARCHIVO));
+    }
+
+    /**
+     * @param ruta Archivo CSV; el journal se guarda al lado con extensión .journal
+     */
+    public RepositorioCSV(Path ruta) {
+        this.ruta = ruta;
+        this.journal = new JournalInventario(ruta.resolveSibling(sinExtension(ruta) + ".journal"));
+        this.columnar = new InstantaneaColumnar(ruta.resolveSibling(sinExtension(ruta) + ".col"));
+    }
+
     /**
      * Lee todos los productos desde el archivo CSV.
      * Si el archivo no existe, devuelve una lista vacía.
@@ -34,9 +62,10 @@ public class RepositorioCSV {
      * @return Lista de productos leídos.
      * @throws IOException Si ocurre un error de lectura.
      */
+    @Override
     public List<Producto> leerProductos() throws IOException {
         List<Producto> productos = new ArrayList<>();
-        Path path = Paths.get(RUTA_ARCHIVO);
+        Path path = ruta;
 
         // Si el archivo no existe, crearlo con cabecera
         if (!Files.exists(path)) {
@@ -44,26 +73,16 @@ public class RepositorioCSV {
             return productos; // Devuelve lista vacía
         }
 
-        // Leer líneas del archivo
-        List<String> lineas = Files.readAllLines(path, StandardCharsets.UTF_8);
-        boolean esPrimeraLinea = true;
-
-        for (String linea : lineas) {
-            if (linea.trim().isEmpty()) continue;
-
-            if (esPrimeraLinea) {
-                esPrimeraLinea = false;
-                // Validar o ignorar cabecera
-                if (!validarCabecera(linea)) {
-                    System.out.println("Advertencia: Cabecera no estándar en CSV.");
-                }
-                continue;
-            }
+        List<Producto> desdeColumnas = columnar.leer(path);
+        if (desdeColumnas != null) {
+            return desdeColumnas;
+        }
 
-            Producto producto = parsearLinea(linea);
-            if (producto != null) {
-                productos.add(producto);
-            }
+        // Lectura por bloques en paralelo directamente sobre los bytes
+        LectorCSVProductos lector = new LectorCSVProductos(path);
+        productos = lector.leer();
+        if (lector.getCabecera() != null && !validarCabecera(lector.getCabecera())) {
+            System.out.println("Advertencia: Cabecera no estándar en CSV.");
         }
 
         return productos;
@@ -71,12 +90,26 @@ public class RepositorioCSV {
 
     /**
      * Guarda la lista de productos en el archivo CSV, sobrescribiendo el contenido.
+     * Los guardados se serializan: dos llamadas nunca comparten el temporal.
      *
      * @param productos Lista de productos a guardar.
      * @throws IOException Si ocurre un error de escritura.
      */
-    public void guardarProductos(List<Producto> productos) throws IOException {
-        Path path = Paths.get(RUTA_ARCHIVO);
+    @Override
+    public synchronized void guardarProductos(List<Producto> productos) throws IOException {
+        try {
+            escribirInstantanea(productos);
+        } catch (IOException | RuntimeException e) {
+            journal.conservarRotado(); // La próxima compactación vuelve a incluirlo
+            throw e;
+        }
+
+        // La instantánea ya contiene lo que registraba el journal rotado
+        journal.descartarRotado();
+    }
+
+    private void escribirInstantanea(List<Producto> productos) throws IOException {
+        Path path = ruta;
         Path directorio = path.getParent();
 
         // Crear directorio si no existe
@@ -84,9 +117,11 @@ public class RepositorioCSV {
             Files.createDirectories(directorio);
         }
 
+        // Se escribe en un temporal y se reemplaza, para no dejar nunca un CSV a medias
+        Path temporal = ruta.resolveSibling(ruta.getFileName() + ".tmp");
         try (PrintWriter writer = new PrintWriter(
                 new OutputStreamWriter(
-                        new FileOutputStream(RUTA_ARCHIVO), StandardCharsets.UTF_8), true)) {
+                        new FileOutputStream(temporal.toFile()), StandardCharsets.UTF_8), true)) {
 
             // Escribir cabecera
             writer.println("codigo,nombre,precio,stock");
@@ -100,6 +135,76 @@ public class RepositorioCSV {
                         p.getStock());
             }
         }
+        reemplazar(temporal, path);
+
+        try {
+            columnar.guardar(productos, path);
+        } catch (IOException e) {
+            // Por ejemplo en Windows, si la copia anterior sigue mapeada: el CSV ya quedó guardado
+            System.err.println("No se pudo actualizar la copia en columnas: " + e.getMessage());
+            columnar.descartar();
+        }
+    }
+
+    // —————————————————————— JOURNAL ——————————————————————
+
+    @Override
+    public void registrarAlta(Producto p) throws IOException {
+        journal.registrarAlta(p);
+    }
+
+    @Override
+    public void registrarEdicion(Producto p) throws IOException {
+        journal.registrarEdicion(p);
+    }
+
+    @Override
+    public void registrarBaja(String codigo) throws IOException {
+        journal.registrarBaja(codigo);
+    }
+
+    @Override
+    public void registrarStock(String codigo, int stock) throws IOException {
+        journal.registrarStock(codigo, stock);
+    }
+
+    @Override
+    public void registrarStocks(Map<String, Integer> stocks) throws IOException {
+        journal.registrarStocks(stocks);
+    }
+
+    @Override
+    public boolean necesitaCompactacion() {
+        return journal.necesitaCompactacion();
+    }
+
+    /**
+     * Inicia una compactación: aparta el journal actual para que los registros
+     * nuevos vayan a uno vacío. El journal apartado se borra cuando
+     * {@link #guardarProductos(List)} termina de escribir la instantánea.
+     * Debe llamarse en el mismo punto en que se toma la copia de los productos.
+     */
+    @Override
+    public void rotarJournal() throws IOException {
+        journal.rotar();
+    }
+
+    @Override
+    public int reproducirJournal(Map<String, Producto> productos) throws IOException {
+        return journal.reproducir(productos);
+    }
+
+    @Override
+    public void cerrarJournal() throws IOException {
+        journal.cerrar();
+    }
+
+    private void reemplazar(Path origen, Path destino) throws IOException {
+        try {
+            Files.move(origen, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(origen, destino, StandardCopyOption.REPLACE_EXISTING);
+        }
     }
 
     // —————————————————————— MÉTODOS AUXILIARES ——————————————————————
@@ -113,45 +218,8 @@ public class RepositorioCSV {
                headers[3].trim().equalsIgnoreCase("stock");
     }
 
-    private Producto parsearLinea(String linea) {
-        try {
-            String[] campos = linea.split(",");
-            if (campos.length < 4) {
-                System.err.println("Línea CSV inválida (campos insuficientes): " + linea);
-                return null;
-            }
-
-            String codigo = campos[0].trim();
-            String nombre = campos[1].trim();
-            double precio = Double.parseDouble(campos[2].trim());
-            int stock = Integer.parseInt(campos[3].trim());
-
-            if (codigo.isEmpty()) {
-                System.err.println("Código vacío en línea: " + linea);
-                return null;
-            }
-            if (precio < 0) {
-                System.err.println("Precio negativo ignorado: " + linea);
-                return null;
-            }
-            if (stock < 0) {
-                System.err.println("Stock negativo ignorado: " + linea);
-                return null;
-            }
-
-            return new Producto(codigo, nombre, precio, stock);
-
-        } catch (NumberFormatException e) {
-            System.err.println("Error al parsear número en línea CSV: " + linea);
-            return null;
-        } catch (Exception e) {
-            System.err.println("Error inesperado al procesar línea CSV: " + linea);
-            return null;
-        }
-    }
-
     private void crearArchivoInicial() throws IOException {
-        Path path = Paths.get(RUTA_ARCHIVO);
+        Path path = ruta;
         Path directorio = path.getParent();
         if (directorio != null) {
             Files.createDirectories(directorio);
@@ -159,8 +227,14 @@ public class RepositorioCSV {
         Files.createFile(path);
         try (PrintWriter writer = new PrintWriter(
                 new OutputStreamWriter(
-                        new FileOutputStream(RUTA_ARCHIVO), StandardCharsets.UTF_8))) {
+                        new FileOutputStream(path.toFile()), StandardCharsets.UTF_8))) {
             writer.println("codigo,nombre,precio,stock");
         }
     }
+
+    private static String sinExtension(Path ruta) {
+        String nombre = ruta.getFileName().toString();
+        int punto = nombre.lastIndexOf('.');
+        return punto > 0 ? nombre.substring(0, punto) : nombre;
+    }
 }
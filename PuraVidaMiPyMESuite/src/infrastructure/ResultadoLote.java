@@ -0,0 +1,83 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package infrastructure;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Resultado de confirmar un {@link LoteProductos}: si se guardó y qué pasó con
+ * cada operación (en el orden en que se encolaron).
+ */
+public class ResultadoLote {
+    private final List<ResultadoOperacion> operaciones = new ArrayList<>();
+    private boolean aplicado;
+
+    void registrar(LoteProductos.TipoOperacion tipo, String codigo, String error) {
+        operaciones.add(new ResultadoOperacion(operaciones.size(), tipo, codigo, error));
+    }
+
+    void marcarAplicado() { aplicado = true; }
+
+    // —————————————————————— GETTERS ——————————————————————
+
+    /** @return true si todas las operaciones se aplicaron y el archivo se guardó */
+    public boolean isAplicado() { return aplicado; }
+    public List<ResultadoOperacion> getOperaciones() { return Collections.unmodifiableList(operaciones); }
+
+    /** @return Operaciones que impidieron confirmar el lote */
+    public List<ResultadoOperacion> getFallidas() {
+        List<ResultadoOperacion> fallidas = new ArrayList<>();
+        for (ResultadoOperacion r : operaciones) {
+            if (!r.isValida()) fallidas.add(r);
+        }
+        return fallidas;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultadoLote{" +
+                "aplicado=" + aplicado +
+                ", operaciones=" + operaciones.size() +
+                ", fallidas=" + getFallidas().size() +
+                '}';
+    }
+
+    /**
+     * Resultado de una operación del lote.
+     */
+    public static class ResultadoOperacion {
+        private final int posicion;
+        private final LoteProductos.TipoOperacion tipo;
+        private final String codigo;
+        private final String error;
+
+        public ResultadoOperacion(int posicion, LoteProductos.TipoOperacion tipo, String codigo, String error) {
+            this.posicion = posicion;
+            this.tipo = tipo;
+            this.codigo = codigo;
+            this.error = error;
+        }
+
+        /** @return Posición de la operación en el lote (empezando en 0) */
+        public int getPosicion() { return posicion; }
+        public LoteProductos.TipoOperacion getTipo() { return tipo; }
+        public String getCodigo() { return codigo; }
+        /** @return true si la operación se podía aplicar (aunque el lote haya fallado por otra) */
+        public boolean isValida() { return error == null; }
+        /** @return Motivo del fallo, o null si era válida */
+        public String getError() { return error; }
+
+        @Override
+        public String toString() {
+            return tipo + " " + codigo + (error == null ? ": ok" : ": " + error);
+        }
+    }
+}
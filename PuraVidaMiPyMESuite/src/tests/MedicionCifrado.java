@@ -0,0 +1,104 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package tests;
+
+import infrastructure.CifradorAES;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Medición del cifrado de cédulas con {@link CifradorAES}: compara crear e
+ * inicializar un Cipher por valor (como se hacía antes) contra
+ * {@code cifrar}/{@code descifrar} con el Cipher de cada hilo y contra los
+ * métodos masivos {@code cifrarTodos}/{@code descifrarTodos}.
+ *
+ * No forma parte de {@link MiniTestRunner}; se ejecuta a mano:
+ * {@code java -cp build/classes tests.MedicionCifrado [valores] [rondas]}
+ * (por defecto 200 000 valores y 5 rondas; la primera calienta la JVM y no se
+ * informa). Termina con código 1 si alguna variante no produce el mismo texto
+ * cifrado o no recupera el original.
+ */
+public class MedicionCifrado {
+    private static final String CLAVE = "PuraVidaClave2025"; // 17 bytes: se deriva con SHA-256
+
+    public static void main(String[] args) throws Exception {
+        int cantidad = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int rondas = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        String[] cedulas = new String[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            cedulas[i] = String.format("%d-%04d-%04d", 1 + i % 9, i / 10_000 % 10_000, i % 10_000);
+        }
+        CifradorAES cifrador = new CifradorAES(CLAVE);
+        byte[] clave = Arrays.copyOf(java.security.MessageDigest.getInstance("SHA-256")
+                .digest(CLAVE.getBytes(StandardCharsets.UTF_8)), 32);
+
+        boolean correcto = true;
+        for (int ronda = 0; ronda < rondas; ronda++) {
+            boolean informar = ronda > 0;
+
+            long inicio = System.nanoTime();
+            String[] porValor = new String[cantidad];
+            for (int i = 0; i < cantidad; i++) {
+                porValor[i] = cifrarConCipherNuevo(clave, cedulas[i]);
+            }
+            informar(informar, "Cipher nuevo por valor, cifrar", cantidad, System.nanoTime() - inicio);
+
+            inicio = System.nanoTime();
+            String[] individuales = new String[cantidad];
+            for (int i = 0; i < cantidad; i++) {
+                individuales[i] = cifrador.cifrar(cedulas[i]);
+            }
+            informar(informar, "cifrar", cantidad, System.nanoTime() - inicio);
+
+            inicio = System.nanoTime();
+            String[] masivos = cifrador.cifrarTodos(cedulas);
+            informar(informar, "cifrarTodos", cantidad, System.nanoTime() - inicio);
+
+            inicio = System.nanoTime();
+            String[] descifrados = new String[cantidad];
+            for (int i = 0; i < cantidad; i++) {
+                descifrados[i] = cifrador.descifrar(individuales[i]);
+            }
+            informar(informar, "descifrar", cantidad, System.nanoTime() - inicio);
+
+            inicio = System.nanoTime();
+            String[] descifradosMasivos = cifrador.descifrarTodos(masivos);
+            informar(informar, "descifrarTodos", cantidad, System.nanoTime() - inicio);
+
+            // AES en modo ECB es determinista: las tres variantes dan el mismo texto
+            correcto &= Arrays.equals(porValor, individuales) && Arrays.equals(porValor, masivos)
+                    && Arrays.equals(cedulas, descifrados) && Arrays.equals(cedulas, descifradosMasivos);
+            if (informar) {
+                System.out.println();
+            }
+        }
+
+        if (!correcto) {
+            System.out.println("FALLA: las variantes no coinciden o no recuperan el texto original");
+            System.exit(1);
+        }
+    }
+
+    private static String cifrarConCipherNuevo(byte[] clave, String texto) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(clave, "AES"));
+        return Base64.getEncoder().encodeToString(cipher.doFinal(texto.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void informar(boolean informar, String operacion, int cantidad, long nanos) {
+        if (informar) {
+            double segundos = nanos / 1e9;
+            System.out.printf("%-32s %,d valores en %.3f s (%,.0f valores/s)%n",
+                    operacion, cantidad, segundos, cantidad / segundos);
+        }
+    }
+}
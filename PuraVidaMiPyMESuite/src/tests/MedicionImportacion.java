@@ -0,0 +1,83 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package tests;
+
+import application.Catalogo;
+import application.ObservadorCatalogo;
+import application.ResultadoImportacion;
+import domain.Producto;
+import infrastructure.RepositorioCSV;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Medición de la importación masiva del catálogo: agrega N productos
+ * sintéticos con {@link Catalogo#agregarProductos} y luego los vuelve a pasar
+ * por {@link Catalogo#agregarOActualizarProductos}, informando el tiempo, las
+ * filas por segundo, las notificaciones recibidas y el tamaño del CSV.
+ *
+ * No forma parte de {@link MiniTestRunner}; se ejecuta a mano:
+ * {@code java -Xmx4g -cp build/classes tests.MedicionImportacion [filas]}
+ * (por defecto 1 000 000 filas, que necesitan unos 4 GB de heap por el índice
+ * de trigramas). Termina con código 1 si el catálogo no queda con todas las
+ * filas o si un lote notifica más de una vez.
+ */
+public class MedicionImportacion {
+
+    public static void main(String[] args) throws Exception {
+        int filas = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        List<Producto> lote = generar(filas);
+        Path csv = MiniTestRunner.carpetaTemporal("importacion").resolve("inventario.csv");
+        Catalogo catalogo = new Catalogo(new RepositorioCSV(csv));
+        AtomicInteger notificaciones = new AtomicInteger();
+        catalogo.agregarObservador(contarNotificaciones(notificaciones));
+
+        long inicio = System.nanoTime();
+        ResultadoImportacion alta = catalogo.agregarProductos(lote);
+        informar("agregarProductos", filas, System.nanoTime() - inicio, alta, notificaciones.getAndSet(0));
+        System.out.printf("  CSV: %,d bytes%n", Files.size(csv));
+        boolean correcto = alta.getAgregados() == filas && catalogo.getInstantanea().size() == filas;
+
+        inicio = System.nanoTime();
+        ResultadoImportacion upsert = catalogo.agregarOActualizarProductos(lote);
+        int notificadas = notificaciones.get();
+        informar("agregarOActualizarProductos", filas, System.nanoTime() - inicio, upsert, notificadas);
+        correcto &= upsert.getActualizados() == filas && catalogo.getInstantanea().size() == filas;
+
+        catalogo.cerrar();
+        MiniTestRunner.borrarTemporales();
+        if (!correcto || notificadas > 1) {
+            System.out.println("FALLA: el catálogo no quedó con las " + filas + " filas o se notificó más de una vez");
+            System.exit(1);
+        }
+    }
+
+    private static List<Producto> generar(int filas) {
+        List<Producto> lote = new ArrayList<>(filas);
+        for (int i = 0; i < filas; i++) {
+            lote.add(new Producto(String.format("P%07d", i), "Producto sintético " + i,
+                    100 + (i % 10_000) / 4.0, i % 500));
+        }
+        return lote;
+    }
+
+    private static ObservadorCatalogo contarNotificaciones(AtomicInteger contador) {
+        return contador::incrementAndGet;
+    }
+
+    private static void informar(String operacion, int filas, long nanos, ResultadoImportacion resultado,
+            int notificaciones) {
+        double segundos = nanos / 1e9;
+        System.out.printf("%s: %,d filas en %.2f s (%,.0f filas/s), %s, %d notificación(es)%n",
+                operacion, filas, segundos, filas / segundos, resultado, notificaciones);
+    }
+}
@@ -4,9 +4,127 @@
  */
 package tests;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
 /**
  *
  * @author Emesis
  */
+/**
+ * Ejecutor mínimo de pruebas, sin dependencias externas. Cada clase
+ * {@code Pruebas*} registra sus verificaciones con {@link #ejecutar(String, Prueba)};
+ * una prueba falla si lanza cualquier excepción o error.
+ *
+ * Uso: {@code java -cp build/classes tests.MiniTestRunner}. Termina con código
+ * 1 si alguna prueba falló. Los archivos de cada prueba van a carpetas
+ * temporales que se borran al terminar.
+ */
 public class MiniTestRunner {
-   }
+    private static final List<Path> temporales = new ArrayList<>();
+
+    private final List<String> fallidas = new ArrayList<>();
+    private int ejecutadas;
+
+    /**
+     * Una verificación ejecutable.
+     */
+    @FunctionalInterface
+    public interface Prueba {
+        void ejecutar() throws Exception;
+    }
+
+    public static void main(String[] args) {
+        MiniTestRunner runner = new MiniTestRunner();
+        PruebasInventario.registrar(runner);
+        PruebasCatalogo.registrar(runner);
+        PruebasOrdenes.registrar(runner);
+        PruebasClientes.registrar(runner);
+        PruebasRespaldos.registrar(runner);
+        runner.resumir();
+        borrarTemporales();
+        System.exit(runner.fallidas.isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * Ejecuta una prueba e informa el resultado.
+     */
+    public void ejecutar(String nombre, Prueba prueba) {
+        ejecutadas++;
+        try {
+            prueba.ejecutar();
+            System.out.println("OK    " + nombre);
+        } catch (Throwable e) {
+            fallidas.add(nombre);
+            System.out.println("FALLA " + nombre + ": " + e);
+            e.printStackTrace(System.out);
+        }
+    }
+
+    private void resumir() {
+        System.out.println();
+        System.out.println(ejecutadas + " pruebas, " + fallidas.size() + " fallidas");
+        for (String nombre : fallidas) {
+            System.out.println("  - " + nombre);
+        }
+    }
+
+    // —————————————————————— VERIFICACIONES ——————————————————————
+
+    public static void verificar(boolean condicion, String mensaje) {
+        if (!condicion) {
+            throw new AssertionError(mensaje);
+        }
+    }
+
+    public static void verificarIgual(Object esperado, Object obtenido, String mensaje) {
+        if (!Objects.equals(esperado, obtenido)) {
+            throw new AssertionError(mensaje + ": se esperaba <" + esperado + "> y se obtuvo <" + obtenido + ">");
+        }
+    }
+
+    /**
+     * Verifica que la acción lance una excepción del tipo dado.
+     *
+     * @return La excepción lanzada
+     */
+    public static <T extends Throwable> T verificarLanza(Class<T> tipo, Prueba accion, String mensaje) {
+        try {
+            accion.ejecutar();
+        } catch (Throwable e) {
+            if (tipo.isInstance(e)) {
+                return tipo.cast(e);
+            }
+            throw new AssertionError(mensaje + ": se esperaba " + tipo.getSimpleName() + " y se lanzó " + e, e);
+        }
+        throw new AssertionError(mensaje + ": se esperaba " + tipo.getSimpleName() + " y no se lanzó nada");
+    }
+
+    // —————————————————————— ARCHIVOS ——————————————————————
+
+    /**
+     * Crea una carpeta temporal que se borra al terminar las pruebas.
+     */
+    public static synchronized Path carpetaTemporal(String prefijo) throws IOException {
+        Path carpeta = Files.createTempDirectory("puravida-" + prefijo + "-");
+        temporales.add(carpeta);
+        return carpeta;
+    }
+
+    static synchronized void borrarTemporales() {
+        for (Path carpeta : temporales) {
+            try (Stream<Path> archivos = Files.walk(carpeta)) {
+                archivos.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            } catch (IOException e) {
+                System.err.println("No se pudo borrar " + carpeta + ": " + e.getMessage());
+            }
+        }
+        temporales.clear();
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package tests;
+
+import static tests.MiniTestRunner.*;
+
+import application.Catalogo;
+import domain.Producto;
+import exception.StockInsuficienteException;
+import infrastructure.AlmacenMemoria;
+import infrastructure.RepositorioCSV;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Pruebas del catálogo: índices ordenados, paginación y concurrencia.
+ */
+class PruebasCatalogo {
+
+    static void registrar(MiniTestRunner runner) {
+        runner.ejecutar("índice: los empates salen en orden de alta", PruebasCatalogo::empatesEnOrdenDeAlta);
+        runner.ejecutar("índice: páginas enormes no desbordan", PruebasCatalogo::paginaEnormeQuedaVacia);
+        runner.ejecutar("índice: las páginas por cursor siguen el orden aunque el cursor cambie",
+                PruebasCatalogo::paginasPorCursor);
+        runner.ejecutar("instantánea: se copia al pedirla y refleja la última mutación",
+                PruebasCatalogo::instantaneaSeCopiaAlPedirla);
+        runner.ejecutar("instantánea: los lectores no esperan a un escritor que anexa al journal",
+                PruebasCatalogo::lectoresNoEsperanAlJournal);
+        runner.ejecutar("concurrencia: altas, ediciones y stock sin actualizaciones perdidas",
+                PruebasCatalogo::concurrenciaSinActualizacionesPerdidas);
+        runner.ejecutar("concurrencia: ventas en paralelo sin descuentos perdidos ni stock negativo",
+                PruebasCatalogo::ventasParalelasSinDescuentosPerdidos);
+    }
+
+    private static void empatesEnOrdenDeAlta() throws Exception {
+        Catalogo catalogo = new Catalogo(new AlmacenMemoria());
+        for (int i = 0; i < 50; i++) {
+            catalogo.agregarProducto(new Producto(String.format("P%02d", 49 - i), "Producto " + i, 500.0, 1));
+        }
+        List<String> esperado = codigos(catalogo.getProductos());
+
+        // Sacar un producto del grupo y devolverlo no le cambia el turno
+        catalogo.editarProducto(new Producto("P30", "Producto 19", 900.0, 1));
+        catalogo.editarProducto(new Producto("P30", "Producto 19", 500.0, 1));
+        verificarIgual(esperado, codigos(catalogo.ordenarPorPrecioAsc()), "Orden de los empates");
+
+        List<String> paginado = new ArrayList<>();
+        for (int pagina = 1; pagina <= 5; pagina++) {
+            paginado.addAll(codigos(catalogo.buscarPorRangoPrecio(0, 1000, pagina, 10)));
+        }
+        verificarIgual(esperado, paginado, "Las páginas siguen el mismo orden");
+    }
+
+    private static void paginaEnormeQuedaVacia() throws Exception {
+        Catalogo catalogo = new Catalogo(new AlmacenMemoria());
+        catalogo.agregarProducto(new Producto("A1", "Arroz", 1250.0, 3));
+        verificar(catalogo.buscarPorRangoPrecio(0, 5000, Integer.MAX_VALUE, 1000).isEmpty(), "Rango de precio");
+        verificar(catalogo.buscarStockMenorQue(10, 3_000_000, 1000).isEmpty(), "Stock menor que");
+        verificarIgual(1, catalogo.buscarStockMenorQue(10, 1, 1000).size(), "Primera página");
+    }
+
+    private static void paginasPorCursor() throws Exception {
+        Catalogo catalogo = new Catalogo(new AlmacenMemoria());
+        for (int i = 0; i < 60; i++) {
+            catalogo.agregarProducto(new Producto(String.format("P%02d", i), "Producto " + i, (i % 6) * 100.0, i % 7));
+        }
+        List<String> porPrecio = codigos(catalogo.buscarPorRangoPrecio(100, 400));
+        List<String> paginado = new ArrayList<>();
+        Producto ultimo = null;
+        List<Producto> pagina;
+        while (!(pagina = catalogo.buscarPorRangoPrecioDespuesDe(100, 400, ultimo, 7)).isEmpty()) {
+            paginado.addAll(codigos(pagina));
+            ultimo = pagina.get(pagina.size() - 1);
+        }
+        verificarIgual(porPrecio, paginado, "Rango de precio por cursor");
+
+        List<String> porDesplazamiento = new ArrayList<>();
+        for (int numero = 1; !(pagina = catalogo.buscarStockMenorQue(5, numero, 4)).isEmpty(); numero++) {
+            porDesplazamiento.addAll(codigos(pagina));
+        }
+        paginado.clear();
+        ultimo = null;
+        while (!(pagina = catalogo.buscarStockMenorQueDespuesDe(5, ultimo, 4)).isEmpty()) {
+            paginado.addAll(codigos(pagina));
+            ultimo = pagina.get(pagina.size() - 1);
+        }
+        verificarIgual(porDesplazamiento, paginado, "Stock menor que por cursor");
+
+        // El cursor se reubica entre páginas: la siguiente sigue donde estaba
+        List<Producto> primera = catalogo.buscarPorRangoPrecioDespuesDe(100, 400, null, 7);
+        Producto cursor = primera.get(6);
+        catalogo.editarProducto(new Producto(cursor.getCodigo(), cursor.getNombre(), 900.0, cursor.getStock()));
+        verificarIgual(porPrecio.subList(7, 14), codigos(catalogo.buscarPorRangoPrecioDespuesDe(100, 400, cursor, 7)),
+                "Página tras reubicar el cursor");
+
+        // Si el cursor se elimina se repite su grupo de empates, pero no se omite nada
+        catalogo.eliminarProducto(cursor.getCodigo());
+        List<String> siguiente = codigos(catalogo.buscarPorRangoPrecioDespuesDe(100, 400, cursor, 20));
+        verificar(siguiente.containsAll(porPrecio.subList(7, 14)), "Página tras eliminar el cursor");
+    }
+
+    private static void instantaneaSeCopiaAlPedirla() throws Exception {
+        Catalogo catalogo = new Catalogo(new AlmacenMemoria());
+        catalogo.agregarProducto(new Producto("A1", "Arroz", 1250.0, 10));
+        catalogo.agregarProducto(new Producto("B2", "Frijoles", 990.0, 4));
+        List<Producto> antes = catalogo.getInstantanea();
+        verificar(antes == catalogo.getInstantanea(), "Sin mutaciones se reutiliza la misma copia");
+
+        for (int i = 0; i < 5; i++) {
+            catalogo.ajustarStock("A1", -1);
+        }
+        List<Producto> despues = catalogo.getInstantanea();
+        verificarIgual(List.of("A1", "B2"), codigos(despues), "Orden de alta");
+        verificarIgual(5, despues.get(0).getStock(), "Stock tras las ventas");
+        verificarIgual(10, antes.get(0).getStock(), "La copia anterior no cambia");
+        verificarLanza(UnsupportedOperationException.class, () -> despues.remove(0), "La instantánea es inmutable");
+    }
+
+    /**
+     * Mientras un escritor tiene el cerrojo anexando al journal (que en disco
+     * incluye sincronizar), la instantánea y los índices se leen sin esperarlo
+     * y ya reflejan la mutación aplicada.
+     */
+    private static void lectoresNoEsperanAlJournal() throws Exception {
+        CountDownLatch anexando = new CountDownLatch(1);
+        CountDownLatch seguir = new CountDownLatch(1);
+        Catalogo catalogo = new Catalogo(new AlmacenMemoria() {
+            @Override
+            public void registrarStock(String codigo, int stock) throws IOException {
+                anexando.countDown();
+                try {
+                    seguir.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        catalogo.agregarProducto(new Producto("A1", "Arroz", 1250.0, 10));
+        catalogo.agregarProducto(new Producto("B2", "Frijoles", 990.0, 4));
+        catalogo.getInstantanea();
+
+        ConcurrentLinkedQueue<Throwable> errores = new ConcurrentLinkedQueue<>();
+        Thread escritor = new Thread(() -> {
+            try {
+                catalogo.ajustarStock("A1", -3);
+            } catch (Throwable e) {
+                errores.add(e);
+            }
+        }, "escritor");
+        escritor.start();
+        anexando.await();
+
+        AtomicReference<List<Producto>> instantanea = new AtomicReference<>();
+        AtomicReference<List<Producto>> porStock = new AtomicReference<>();
+        Thread lector = new Thread(() -> {
+            instantanea.set(catalogo.getInstantanea());
+            porStock.set(catalogo.ordenarPorStockDesc());
+        }, "lector");
+        lector.start();
+        lector.join(5_000);
+        boolean leyoSinEsperar = !lector.isAlive();
+        seguir.countDown();
+        escritor.join();
+        lector.join();
+
+        verificar(errores.isEmpty(), "Error en el escritor: " + errores.peek());
+        verificar(leyoSinEsperar, "El lector esperó al escritor");
+        verificarIgual(7, instantanea.get().get(0).getStock(), "La instantánea refleja la venta");
+        verificarIgual(List.of("A1", "B2"), codigos(porStock.get()), "El índice de stock refleja la venta");
+    }
+
+    /**
+     * Varios hilos agregan, editan y ajustan stock a la vez sobre un catálogo en
+     * escritura diferida (que compacta en segundo plano), mientras otro hilo
+     * lee el índice de precio. Al final el stock y la cantidad de productos
+     * deben cuadrar, en memoria y al reabrir desde disco.
+     */
+    private static void concurrenciaSinActualizacionesPerdidas() throws Exception {
+        final int hilos = 4;
+        final int iteraciones = 150;
+        final int compartidos = 10;
+        Path csv = carpetaTemporal("concurrencia").resolve("inventario.csv");
+        Catalogo catalogo = new Catalogo(new RepositorioCSV(csv), 5, 20);
+        for (int i = 0; i < compartidos; i++) {
+            catalogo.agregarProducto(new Producto("S" + i, "Compartido " + i, 100.0 + i, 0));
+        }
+
+        AtomicLong sumados = new AtomicLong();
+        ConcurrentLinkedQueue<Throwable> errores = new ConcurrentLinkedQueue<>();
+        CountDownLatch inicio = new CountDownLatch(1);
+        AtomicBoolean terminado = new AtomicBoolean();
+        List<Thread> escritores = new ArrayList<>();
+        for (int h = 0; h < hilos; h++) {
+            final int hilo = h;
+            escritores.add(new Thread(() -> {
+                try {
+                    inicio.await();
+                    ThreadLocalRandom azar = ThreadLocalRandom.current();
+                    for (int i = 0; i < iteraciones; i++) {
+                        String propio = "T" + hilo + "-" + i;
+                        catalogo.agregarProducto(new Producto(propio, "Nuevo " + propio, 10.0, 1));
+                        catalogo.editarProducto(new Producto(propio, "Editado " + propio, azar.nextInt(1, 500), 1));
+                        catalogo.ajustarStock("S" + azar.nextInt(compartidos), 1);
+                        Map<String, Integer> lote = new LinkedHashMap<>();
+                        lote.put("S" + azar.nextInt(compartidos / 2), 2);
+                        lote.put("S" + (compartidos / 2 + azar.nextInt(compartidos / 2)), 3);
+                        catalogo.ajustarStockLote(lote);
+                        sumados.addAndGet(1 + 2 + 3);
+                        if (i % 50 == 0) {
+                            catalogo.flush(); // Compactación explícita mientras el hilo de fondo también compacta
+                        }
+                    }
+                } catch (Throwable e) {
+                    errores.add(e);
+                }
+            }, "escritor-" + h));
+        }
+        Thread lector = new Thread(() -> {
+            try {
+                inicio.await();
+                while (!terminado.get()) {
+                    verificarOrdenSinRepetidos(catalogo.ordenarPorPrecioAsc());
+                }
+            } catch (Throwable e) {
+                errores.add(e);
+            }
+        }, "lector");
+
+        escritores.forEach(Thread::start);
+        lector.start();
+        inicio.countDown();
+        for (Thread t : escritores) {
+            t.join();
+        }
+        terminado.set(true);
+        lector.join();
+        if (!errores.isEmpty()) {
+            throw new AssertionError("Error en un hilo: " + errores.peek(), errores.peek());
+        }
+
+        int esperados = compartidos + hilos * iteraciones;
+        verificarEstado(catalogo, esperados, sumados.get(), compartidos);
+        catalogo.cerrar();
+
+        Catalogo reabierto = new Catalogo(new RepositorioCSV(csv));
+        verificarEstado(reabierto, esperados, sumados.get(), compartidos);
+        reabierto.cerrar();
+    }
+
+    /**
+     * Varios hilos descuentan una unidad a la vez de los mismos productos,
+     * más veces de las que alcanza el stock. Cada descuento aceptado debe
+     * quedar reflejado (en memoria y al reabrir) y el resto rechazarse con
+     * {@link StockInsuficienteException}, sin bajar nunca de cero.
+     */
+    private static void ventasParalelasSinDescuentosPerdidos() throws Exception {
+        final int hilos = 8;
+        final int intentos = 300;
+        final int productos = 3;
+        final int stockInicial = 600;
+        Path csv = carpetaTemporal("ventas").resolve("inventario.csv");
+        Catalogo catalogo = new Catalogo(new RepositorioCSV(csv));
+        for (int i = 0; i < productos; i++) {
+            catalogo.agregarProducto(new Producto("V" + i, "Vendido " + i, 100.0, stockInicial));
+        }
+
+        AtomicLong vendidos = new AtomicLong();
+        AtomicLong rechazados = new AtomicLong();
+        ConcurrentLinkedQueue<Throwable> errores = new ConcurrentLinkedQueue<>();
+        CountDownLatch inicio = new CountDownLatch(1);
+        List<Thread> vendedores = new ArrayList<>();
+        for (int h = 0; h < hilos; h++) {
+            final int hilo = h;
+            vendedores.add(new Thread(() -> {
+                try {
+                    inicio.await();
+                    for (int i = 0; i < intentos; i++) {
+                        try {
+                            catalogo.ajustarStock("V" + (hilo + i) % productos, -1);
+                            vendidos.incrementAndGet();
+                        } catch (StockInsuficienteException e) {
+                            rechazados.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable e) {
+                    errores.add(e);
+                }
+            }, "vendedor-" + h));
+        }
+        vendedores.forEach(Thread::start);
+        inicio.countDown();
+        for (Thread t : vendedores) {
+            t.join();
+        }
+        if (!errores.isEmpty()) {
+            throw new AssertionError("Error en un hilo: " + errores.peek(), errores.peek());
+        }
+
+        long total = (long) hilos * intentos;
+        long disponible = (long) productos * stockInicial;
+        verificarIgual(Math.min(total, disponible), vendidos.get(), "Ventas aceptadas");
+        verificarIgual(total - vendidos.get(), rechazados.get(), "Ventas rechazadas");
+        verificarIgual(disponible - vendidos.get(), stockTotal(catalogo, productos), "Stock en memoria");
+        for (Producto p : catalogo.getInstantanea()) {
+            verificar(p.getStock() >= 0, "Stock negativo en " + p.getCodigo());
+        }
+        catalogo.cerrar();
+
+        Catalogo reabierto = new Catalogo(new RepositorioCSV(csv));
+        verificarIgual(disponible - vendidos.get(), stockTotal(reabierto, productos), "Stock al reabrir");
+        reabierto.cerrar();
+    }
+
+    private static long stockTotal(Catalogo catalogo, int productos) {
+        long stock = 0;
+        for (int i = 0; i < productos; i++) {
+            stock += catalogo.obtenerPorCodigo("V" + i).getStock();
+        }
+        return stock;
+    }
+
+    private static void verificarEstado(Catalogo catalogo, int esperados, long sumados, int compartidos) {
+        List<Producto> instantanea = catalogo.getInstantanea();
+        verificarIgual(esperados, instantanea.size(), "Cantidad de productos");
+        long stock = 0;
+        for (int i = 0; i < compartidos; i++) {
+            stock += catalogo.obtenerPorCodigo("S" + i).getStock();
+        }
+        verificarIgual(sumados, stock, "Stock compartido acumulado");
+
+        // La instantánea y los índices describen el mismo catálogo
+        for (Producto p : instantanea) {
+            verificar(catalogo.obtenerPorCodigo(p.getCodigo()) == p, "Índice por código desactualizado: " + p.getCodigo());
+        }
+        List<Producto> porPrecio = catalogo.ordenarPorPrecioAsc();
+        verificarIgual(esperados, porPrecio.size(), "Productos en el índice de precio");
+        verificarIgual(new HashSet<>(instantanea), new HashSet<>(porPrecio), "Códigos del índice de precio");
+        verificarIgual(esperados, catalogo.ordenarPorStockDesc().size(), "Productos en el índice de stock");
+    }
+
+    private static void verificarOrdenSinRepetidos(List<Producto> ordenados) {
+        Set<String> vistos = new HashSet<>();
+        double anterior = Double.NEGATIVE_INFINITY;
+        for (Producto p : ordenados) {
+            verificar(vistos.add(p.getCodigo()), "Producto repetido en el índice: " + p.getCodigo());
+            verificar(p.getPrecio() >= anterior, "Índice de precio desordenado en " + p.getCodigo());
+            anterior = p.getPrecio();
+        }
+    }
+
+    static List<String> codigos(List<Producto> productos) {
+        List<String> codigos = new ArrayList<>(productos.size());
+        for (Producto p : productos) {
+            codigos.add(p.getCodigo());
+        }
+        return codigos;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package tests;
+
+import static tests.MiniTestRunner.*;
+
+import domain.Cliente;
+import infrastructure.ClienteRepositorio;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Pruebas del repositorio de clientes.
+ */
+class PruebasClientes {
+
+    static void registrar(MiniTestRunner runner) {
+        runner.ejecutar("clientes: una carga fallida no deja el repositorio vacío", PruebasClientes::cargaFallidaNoBorraClientes);
+    }
+
+    private static void cargaFallidaNoBorraClientes() throws Exception {
+        Path csv = carpetaTemporal("clientes").resolve("clientes.csv");
+        ClienteRepositorio original = new ClienteRepositorio(csv);
+        original.guardarClientes(List.of(
+                new Cliente("1-1111-1111", "Ana", "8888-8888", "ana@correo.cr"),
+                new Cliente("2-2222-2222", "Luis", "7777-7777", "luis@correo.cr")));
+        original.cerrar();
+
+        // Un byte que no es UTF-8 hace fallar la lectura del archivo completo
+        byte[] valido = Files.readAllBytes(csv);
+        Files.write(csv, new byte[] {(byte) 0xFF, '\n'}, StandardOpenOption.APPEND);
+        byte[] danado = Files.readAllBytes(csv);
+
+        ClienteRepositorio repo = new ClienteRepositorio(csv);
+        try {
+            Cliente nueva = new Cliente("3-3333-3333", "Sofía", "6666-6666", "sofia@correo.cr");
+            verificarLanza(Exception.class, () -> repo.guardarCliente(nueva), "La carga falla");
+            verificarLanza(Exception.class, () -> repo.guardarClientes(List.of(nueva)), "Sigue sin cargar");
+            verificar(Arrays.equals(danado, Files.readAllBytes(csv)), "El archivo no se reescribe");
+
+            // Con el archivo reparado, el siguiente acceso carga todo
+            Files.write(csv, valido);
+            repo.guardarCliente(nueva);
+            verificarIgual(3, repo.leerTodos().size(), "Se conservan los clientes anteriores");
+            verificar(repo.existeCedula("1-1111-1111"), "Ana sigue registrada");
+        } finally {
+            repo.cerrar();
+        }
+    }
+}
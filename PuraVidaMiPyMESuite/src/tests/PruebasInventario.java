@@ -0,0 +1,351 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package tests;
+
+import static tests.MiniTestRunner.*;
+
+import application.Catalogo;
+import application.ImportadorJson;
+import application.ResultadoImportacion;
+import domain.Producto;
+import infrastructure.AlmacenMemoria;
+import infrastructure.AlmacenRegistrosFijos;
+import infrastructure.ProductoRepositorio;
+import infrastructure.RepositorioCSV;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Pruebas de los almacenes del inventario: journal, compactación e instantáneas.
+ */
+class PruebasInventario {
+    private static final int REGISTRO_FIJO = 164; // Bytes por ranura en AlmacenRegistrosFijos
+
+    static void registrar(MiniTestRunner runner) {
+        runner.ejecutar("journal: se reproduce al reabrir el catálogo", PruebasInventario::journalSeReproduce);
+        runner.ejecutar("journal: una línea cortada al final se ignora", PruebasInventario::journalIgnoraLineaCortada);
+        runner.ejecutar("journal: no rota con una compactación pendiente", PruebasInventario::rotacionPendienteSeRechaza);
+        runner.ejecutar("journal: un lote de stocks se aplica completo o no se aplica",
+                PruebasInventario::journalAplicaLotesCompletos);
+        runner.ejecutar("registros fijos: un lote de stocks se aplica completo o no se aplica",
+                PruebasInventario::registrosFijosAplicanLotesCompletos);
+        runner.ejecutar("registros fijos: textos demasiado largos se rechazan antes de aplicarse",
+                PruebasInventario::registrosFijosRechazanTextosLargos);
+        runner.ejecutar("registros fijos: un guardado fallido descarta los cambios pendientes",
+                PruebasInventario::registrosFijosDescartanPendientes);
+        runner.ejecutar("registros fijos: un registro dañado se detecta por su CRC",
+                PruebasInventario::registrosFijosDetectanRegistrosDanados);
+        runner.ejecutar("registros fijos: el formato sin CRC se migra al leerlo",
+                PruebasInventario::registrosFijosMigranFormatoAnterior);
+        runner.ejecutar("lotes: un archivo con códigos repetidos no se reescribe", PruebasInventario::loteRechazaCodigosRepetidos);
+        runner.ejecutar("importación: un código repetido se rechaza en cualquier lote del archivo",
+                PruebasInventario::importacionRechazaRepetidosEntreLotes);
+        runner.ejecutar("columnas: la copia en columnas y el CSV leen lo mismo", PruebasInventario::columnasIgualQueCSV);
+    }
+
+    private static void journalSeReproduce() throws Exception {
+        Path csv = carpetaTemporal("journal").resolve("inventario.csv");
+        Catalogo catalogo = new Catalogo(new RepositorioCSV(csv));
+        catalogo.agregarProducto(new Producto("A1", "Arroz, 1kg", 1250.0, 10));
+        catalogo.agregarProducto(new Producto("B2", "Frijoles", 990.5, 4));
+        catalogo.agregarProducto(new Producto("C3", "Café", 3200.0, 7));
+        catalogo.editarProducto(new Producto("B2", "Frijoles negros", 1010.0, 4));
+        catalogo.ajustarStock("A1", -3);
+        catalogo.eliminarProducto("C3");
+        catalogo.cerrar();
+
+        verificar(Files.size(csv.resolveSibling("inventario.journal")) > 0, "Los cambios deben quedar en el journal");
+
+        Catalogo reabierto = new Catalogo(new RepositorioCSV(csv));
+        List<Producto> productos = reabierto.getProductos();
+        verificarIgual(2, productos.size(), "Productos tras reproducir");
+        verificarIgual("Arroz, 1kg", reabierto.obtenerPorCodigo("A1").getNombre(), "Nombre con coma");
+        verificarIgual(7, reabierto.obtenerPorCodigo("A1").getStock(), "Stock ajustado");
+        verificarIgual("Frijoles negros", reabierto.obtenerPorCodigo("B2").getNombre(), "Edición");
+        verificarIgual(1010.0, reabierto.obtenerPorCodigo("B2").getPrecio(), "Precio editado");
+        verificar(reabierto.obtenerPorCodigo("C3") == null, "La baja debe reproducirse");
+        reabierto.cerrar();
+    }
+
+    private static void journalIgnoraLineaCortada() throws Exception {
+        Path csv = carpetaTemporal("journal").resolve("inventario.csv");
+        Catalogo catalogo = new Catalogo(new RepositorioCSV(csv));
+        catalogo.agregarProducto(new Producto("A1", "Arroz", 1250.0, 10));
+        catalogo.cerrar();
+        // Simula una caída a mitad de escribir el siguiente registro
+        Files.write(csv.resolveSibling("inventario.journal"), "S,A1".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        Catalogo reabierto = new Catalogo(new RepositorioCSV(csv));
+        verificarIgual(10, reabierto.obtenerPorCodigo("A1").getStock(), "El registro cortado no se aplica");
+        reabierto.cerrar();
+    }
+
+    private static void journalAplicaLotesCompletos() throws Exception {
+        Path csv = carpetaTemporal("journal").resolve("inventario.csv");
+        Catalogo catalogo = new Catalogo(new RepositorioCSV(csv));
+        catalogo.agregarProducto(new Producto("A1", "Arroz", 1250.0, 10));
+        catalogo.agregarProducto(new Producto("B2", "Frijoles", 990.0, 4));
+        catalogo.agregarProducto(new Producto("C3", "Café", 3200.0, 7));
+        catalogo.ajustarStockLote(Map.of("A1", -2, "B2", -1, "C3", -3));
+        catalogo.cerrar();
+
+        Path journal = csv.resolveSibling("inventario.journal");
+        String completo = new String(Files.readAllBytes(journal), StandardCharsets.UTF_8);
+        int inicioLote = completo.lastIndexOf("L,");
+        verificar(inicioLote > 0, "El lote va en un solo registro");
+        verificarIgual(List.of(8, 3, 4), stocks(new Catalogo(new RepositorioCSV(csv))), "Lote completo");
+
+        // Caída a mitad de escribir el registro del lote
+        String cortado = completo.substring(0, inicioLote + (completo.length() - inicioLote) / 2);
+        Files.write(journal, cortado.getBytes(StandardCharsets.UTF_8));
+        verificarIgual(List.of(10, 4, 7), stocks(new Catalogo(new RepositorioCSV(csv))), "Lote cortado");
+
+        // Un lote terminado pero con un dato alterado tampoco se aplica a medias
+        String alterado = completo.substring(0, inicioLote) + completo.substring(inicioLote).replace(",8", ",9");
+        Files.write(journal, alterado.getBytes(StandardCharsets.UTF_8));
+        verificarIgual(List.of(10, 4, 7), stocks(new Catalogo(new RepositorioCSV(csv))), "Lote alterado");
+    }
+
+    private static void registrosFijosAplicanLotesCompletos() throws Exception {
+        Path dat = carpetaTemporal("fijos").resolve("inventario.dat");
+        Path lote = dat.resolveSibling("inventario.dat.lote");
+        AlmacenRegistrosFijos almacen = new AlmacenRegistrosFijos(dat);
+        almacen.guardarProductos(List.of(new Producto("A1", "Arroz", 1250.0, 10),
+                new Producto("B2", "Frijoles", 990.0, 4), new Producto("C3", "Café", 3200.0, 7)));
+        almacen.leerProductos();
+
+        Map<String, Integer> stocks = new LinkedHashMap<>();
+        stocks.put("A1", 8);
+        stocks.put("C3", 4);
+        almacen.registrarStocks(stocks);
+        verificar(!Files.exists(lote), "El registro de lote se borra al terminar");
+        stocks.put("X9", 1);
+        verificarLanza(IOException.class, () -> almacen.registrarStocks(stocks), "Producto sin ranura");
+        almacen.cerrarJournal();
+        verificarIgual(List.of("A1|Arroz|1250.0|8", "B2|Frijoles|990.0|4", "C3|Café|3200.0|4"),
+                describir(new AlmacenRegistrosFijos(dat).leerProductos()), "Se aplica solo el lote completo");
+
+        // Caída después de anotar el lote y antes de tocar las ranuras: al abrir se repite
+        ByteBuffer anotado = ByteBuffer.allocate(4 * 6).putInt(2).putInt(0).putInt(1).putInt(1).putInt(2);
+        CRC32 crc = new CRC32();
+        crc.update(anotado.array(), 0, anotado.position());
+        anotado.putInt((int) crc.getValue());
+        Files.write(lote, anotado.array());
+        verificarIgual(List.of("A1|Arroz|1250.0|1", "B2|Frijoles|990.0|2", "C3|Café|3200.0|4"),
+                describir(new AlmacenRegistrosFijos(dat).leerProductos()), "Lote anotado se repite");
+        verificar(!Files.exists(lote), "El lote recuperado se borra");
+
+        // Caída a mitad de anotar el lote: ninguna ranura cambió y se descarta
+        Files.write(lote, Arrays.copyOf(anotado.array(), 10));
+        AlmacenRegistrosFijos reabierto = new AlmacenRegistrosFijos(dat);
+        verificarIgual(List.of("A1|Arroz|1250.0|1", "B2|Frijoles|990.0|2", "C3|Café|3200.0|4"),
+                describir(reabierto.leerProductos()), "Lote cortado");
+        verificar(!Files.exists(lote), "El lote cortado se borra");
+        reabierto.cerrarJournal();
+    }
+
+    private static void registrosFijosDetectanRegistrosDanados() throws Exception {
+        Path dat = carpetaTemporal("fijos").resolve("inventario.dat");
+        AlmacenRegistrosFijos almacen = new AlmacenRegistrosFijos(dat);
+        almacen.guardarProductos(List.of(new Producto("A1", "Arroz", 1250.0, 10),
+                new Producto("B2", "Frijoles", 990.0, 4), new Producto("C3", "Café", 3200.0, 7)));
+        almacen.leerProductos();
+        almacen.registrarStock("B2", 3);
+        almacen.cerrarJournal();
+        verificarIgual(List.of("A1|Arroz|1250.0|10", "B2|Frijoles|990.0|3", "C3|Café|3200.0|7"),
+                describir(new AlmacenRegistrosFijos(dat).leerProductos()), "El cambio de stock mantiene el CRC");
+
+        // Un byte del nombre de B2 (ranura 1) cambia sin que cambie su CRC
+        byte[] contenido = Files.readAllBytes(dat);
+        int cabecera = (int) (contenido.length - 3L * REGISTRO_FIJO);
+        contenido[cabecera + REGISTRO_FIJO + 40] ^= 1;
+        Files.write(dat, contenido);
+        AlmacenRegistrosFijos reabierto = new AlmacenRegistrosFijos(dat);
+        verificarIgual(List.of("A1|Arroz|1250.0|10", "C3|Café|3200.0|7"),
+                describir(reabierto.leerProductos()), "El registro dañado queda fuera");
+
+        // La ranura dañada no se reutiliza: el alta nueva va al final
+        reabierto.registrarAlta(new Producto("D4", "Azúcar", 800.0, 2));
+        reabierto.cerrarJournal();
+        verificarIgual(contenido.length + REGISTRO_FIJO, (int) Files.size(dat), "Alta en una ranura nueva");
+    }
+
+    private static void registrosFijosMigranFormatoAnterior() throws Exception {
+        Path dat = carpetaTemporal("fijos").resolve("inventario.dat");
+        int tamanoAnterior = REGISTRO_FIJO - Integer.BYTES;
+        ByteBuffer anterior = ByteBuffer.allocate(16 + 2 * tamanoAnterior);
+        anterior.putInt(0x50564631).putInt(tamanoAnterior).position(16);
+        String[][] filas = {{"A1", "Arroz"}, {"B2", "Café"}};
+        for (int i = 0; i < filas.length; i++) {
+            int inicio = 16 + i * tamanoAnterior;
+            byte[] codigo = filas[i][0].getBytes(StandardCharsets.UTF_8);
+            byte[] nombre = filas[i][1].getBytes(StandardCharsets.UTF_8);
+            anterior.position(inicio).put((byte) 1).put((byte) codigo.length).put((byte) nombre.length).put((byte) 0);
+            anterior.put(codigo).position(inicio + 4 + 32).put(nombre).position(inicio + 4 + 32 + 112);
+            anterior.putDouble(1000.0 + i).putInt(5 + i);
+        }
+        Files.write(dat, anterior.array());
+
+        List<String> esperado = List.of("A1|Arroz|1000.0|5", "B2|Café|1001.0|6");
+        AlmacenRegistrosFijos almacen = new AlmacenRegistrosFijos(dat);
+        verificarIgual(esperado, describir(almacen.leerProductos()), "Lectura del formato anterior");
+        almacen.registrarStock("B2", 9);
+        almacen.cerrarJournal();
+        verificarIgual(16 + 2 * REGISTRO_FIJO, (int) Files.size(dat), "Archivo reescrito con CRC");
+        verificarIgual(List.of("A1|Arroz|1000.0|5", "B2|Café|1001.0|9"),
+                describir(new AlmacenRegistrosFijos(dat).leerProductos()), "Formato nuevo");
+    }
+
+    private static List<Integer> stocks(Catalogo catalogo) throws Exception {
+        List<Integer> stocks = new ArrayList<>();
+        for (Producto p : catalogo.getInstantanea()) {
+            stocks.add(p.getStock());
+        }
+        catalogo.cerrar();
+        return stocks;
+    }
+
+    private static void rotacionPendienteSeRechaza() throws Exception {
+        Path csv = carpetaTemporal("journal").resolve("inventario.csv");
+        RepositorioCSV repositorio = new RepositorioCSV(csv);
+        Producto arroz = new Producto("A1", "Arroz", 1250.0, 10);
+        repositorio.registrarAlta(arroz);
+        repositorio.rotarJournal();
+        Path rotado = csv.resolveSibling("inventario.journal.1");
+        verificar(Files.exists(rotado), "El journal debe quedar apartado");
+
+        verificarLanza(IOException.class, repositorio::rotarJournal, "Segunda rotación sin guardar");
+
+        repositorio.guardarProductos(List.of(arroz));
+        verificar(!Files.exists(rotado), "Guardar la instantánea descarta el journal apartado");
+        repositorio.rotarJournal(); // Ya no hay compactación pendiente
+        repositorio.guardarProductos(List.of(arroz));
+        repositorio.cerrarJournal();
+    }
+
+    private static void columnasIgualQueCSV() throws Exception {
+        Path csv = carpetaTemporal("columnas").resolve("inventario.csv");
+        List<Producto> originales = List.of(
+                new Producto("A1", "Arroz, 1kg", 1250.0, 10),
+                new Producto("B2", "Frijoles \"negros\"", 990.456, 0),
+                new Producto("C3", "Café de altura ñandú", 3200.0, 7),
+                new Producto("D4", "Arroz, 1kg", 0.0, Integer.MAX_VALUE)); // Nombre repetido en el diccionario
+        new RepositorioCSV(csv).guardarProductos(originales);
+        Path columnas = csv.resolveSibling("inventario.col");
+        verificar(Files.exists(columnas), "Guardar deja la copia en columnas");
+
+        List<String> desdeColumnas = describir(new RepositorioCSV(csv).leerProductos());
+        Files.delete(columnas);
+        List<String> desdeCSV = describir(new RepositorioCSV(csv).leerProductos());
+        verificarIgual(desdeCSV, desdeColumnas, "Columnas y CSV");
+        verificarIgual("B2|Frijoles \"negros\"|990.46|0", desdeCSV.get(1), "Precio a dos decimales");
+
+        // Un CSV editado por fuera invalida la copia en columnas
+        new RepositorioCSV(csv).guardarProductos(originales);
+        Files.write(csv, "E5,Azúcar,800.0,3\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        verificarIgual(5, new RepositorioCSV(csv).leerProductos().size(), "Se lee el CSV editado");
+    }
+
+    private static void registrosFijosRechazanTextosLargos() throws Exception {
+        Path dat = carpetaTemporal("fijos").resolve("inventario.dat");
+        Catalogo catalogo = new Catalogo(new AlmacenRegistrosFijos(dat));
+        catalogo.agregarProducto(new Producto("A1", "Arroz", 1250.0, 10));
+        String largo = "ñ".repeat(57); // 114 bytes en UTF-8
+
+        verificarLanza(IllegalArgumentException.class,
+                () -> catalogo.agregarProducto(new Producto("B2", largo, 10.0, 1)), "Alta con nombre largo");
+        verificarLanza(IllegalArgumentException.class,
+                () -> catalogo.editarProducto(new Producto("A1", largo, 10.0, 1)), "Edición con nombre largo");
+        ResultadoImportacion resultado = catalogo.agregarOActualizarProductos(List.of(
+                new Producto("X".repeat(33), "Código largo", 1.0, 1),
+                new Producto("C3", "Café", 3200.0, 7)));
+        verificarIgual(1, resultado.getAceptados(), "Filas aplicadas del lote");
+        verificarIgual(0, resultado.getRechazos().get(0).getFila(), "Fila rechazada");
+        catalogo.cerrar();
+
+        List<String> enMemoria = describir(catalogo.getProductos());
+        verificarIgual(List.of("A1|Arroz|1250.0|10", "C3|Café|3200.0|7"), enMemoria, "Catálogo sin cambios inválidos");
+        Catalogo reabierto = new Catalogo(new AlmacenRegistrosFijos(dat));
+        verificarIgual(enMemoria, describir(reabierto.getProductos()), "Lo guardado coincide con la memoria");
+        reabierto.cerrar();
+    }
+
+    private static void registrosFijosDescartanPendientes() throws Exception {
+        Path dat = carpetaTemporal("fijos").resolve("inventario.dat");
+        AlmacenRegistrosFijos almacen = new AlmacenRegistrosFijos(dat);
+        almacen.guardarProductos(List.of(new Producto("A1", "Arroz", 1250.0, 10)));
+
+        almacen.rotarJournal();
+        almacen.registrarStock("A1", 5);
+        verificarLanza(IOException.class,
+                () -> almacen.guardarProductos(List.of(new Producto("A1", "ñ".repeat(57), 1250.0, 5))),
+                "Guardado con nombre largo");
+        verificarIgual(List.of("A1|Arroz|1250.0|5"), describir(almacen.leerProductos()), "El archivo anterior sigue");
+
+        // El cambio anotado antes del fallo no debe volver a aplicarse sobre este guardado
+        almacen.guardarProductos(List.of(new Producto("A1", "Arroz", 1250.0, 9)));
+        verificarIgual(List.of("A1|Arroz|1250.0|9"), describir(almacen.leerProductos()), "Sin cambios viejos");
+        almacen.cerrarJournal();
+    }
+
+    private static void loteRechazaCodigosRepetidos() throws Exception {
+        Path csv = carpetaTemporal("lotes").resolve("inventario.csv");
+        String contenido = "codigo,nombre,precio,stock\nA1,Arroz,1250.00,10\nB2,Frijoles,990.00,4\nA1,Arroz integral,1400.00,2\n";
+        Files.write(csv, contenido.getBytes(StandardCharsets.UTF_8));
+        ProductoRepositorio repositorio = new ProductoRepositorio(csv);
+
+        IOException error = verificarLanza(IOException.class,
+                () -> repositorio.iniciarLote().agregar(new Producto("C3", "Café", 3200.0, 7)).confirmar(),
+                "Lote sobre un archivo con códigos repetidos");
+        verificar(error.getMessage().contains("A1"), "El error nombra el código repetido: " + error.getMessage());
+        verificarIgual(contenido, Files.readString(csv), "El archivo no se toca");
+    }
+
+    private static void importacionRechazaRepetidosEntreLotes() throws Exception {
+        Catalogo catalogo = new Catalogo(new AlmacenMemoria());
+        String json = "[{\"codigo\":\"A1\",\"nombre\":\"Arroz\",\"precio\":1250.0,\"stock\":10},"
+                + "{\"codigo\":\"B2\",\"nombre\":\"Frijoles\",\"precio\":990.0,\"stock\":4},"
+                + "{\"codigo\":\"C3\",\"nombre\":\"Café\",\"precio\":3200.0,\"stock\":7},"
+                + "{\"codigo\":\"C3\",\"nombre\":\"Café molido\",\"precio\":3500.0,\"stock\":1},"
+                + "{\"codigo\":\"A1\",\"nombre\":\"Arroz integral\",\"precio\":1400.0,\"stock\":2}]";
+        // Lotes de dos: el C3 repetido cae en el mismo lote y el A1 repetido en otro
+        ImportadorJson importador = new ImportadorJson(catalogo, null, 2);
+        ResultadoImportacion resultado = importador.importarProductos(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        verificarIgual(3, resultado.getAceptados(), "Filas aplicadas");
+        List<Integer> rechazadas = new ArrayList<>();
+        for (ResultadoImportacion.Rechazo rechazo : resultado.getRechazos()) {
+            rechazadas.add(rechazo.getFila());
+        }
+        verificarIgual(List.of(3, 4), rechazadas, "Filas rechazadas");
+        verificarIgual(List.of("A1|Arroz|1250.0|10", "B2|Frijoles|990.0|4", "C3|Café|3200.0|7"),
+                describir(catalogo.getProductos()), "Queda la primera fila de cada código");
+    }
+
+    private static List<String> describir(List<Producto> productos) {
+        List<String> filas = new ArrayList<>();
+        for (Producto p : productos) {
+            filas.add(p.getCodigo() + "|" + p.getNombre() + "|" + p.getPrecio() + "|" + p.getStock());
+        }
+        return filas;
+    }
+}
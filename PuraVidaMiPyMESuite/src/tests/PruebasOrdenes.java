@@ -0,0 +1,419 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package tests;
+
+import static tests.MiniTestRunner.*;
+
+import application.Catalogo;
+import application.FabricaPagos;
+import application.GestionOrdenes;
+import application.ReservasStock;
+import data.EstrategiaPago;
+import domain.Cliente;
+import domain.Orden;
+import domain.Producto;
+import exception.OrdenCobradaException;
+import exception.PagoInvalidoException;
+import exception.ProductoNoEncontradoException;
+import exception.StockInsuficienteException;
+import infrastructure.AlmacenMemoria;
+import infrastructure.CifradorAES;
+import infrastructure.IndiceCiego;
+import infrastructure.RegistroOrdenes;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Pruebas de las órdenes: cobro, reservas de stock y registro de órdenes.
+ */
+class PruebasOrdenes {
+    private static final String CLAVE = "clave-de-pruebas";
+    private static final Cliente CLIENTE = new Cliente("1-1111-1111", "Ana", "8888-8888", "ana@correo.cr");
+
+    static void registrar(MiniTestRunner runner) {
+        runner.ejecutar("órdenes: totales en centavos enteros", PruebasOrdenes::totalesEnCentavos);
+        runner.ejecutar("órdenes: un desborde no deja la orden a medias", PruebasOrdenes::desbordeNoCambiaLaOrden);
+        runner.ejecutar("órdenes: cambiar una cantidad valida el stock y ajusta la reserva",
+                PruebasOrdenes::cambiarCantidadValidaStock);
+        runner.ejecutar("reservas: se confirma solo lo reservado por la orden", PruebasOrdenes::confirmarSoloLoReservado);
+        runner.ejecutar("reservas: terminales concurrentes no venden de más", PruebasOrdenes::concurrenciaSinSobreventa);
+        runner.ejecutar("órdenes: el stock se descuenta antes de cobrar y vuelve si el cobro falla",
+                PruebasOrdenes::cobroFallidoDevuelveElStock);
+        runner.ejecutar("reservas: las de una orden abandonada vencen", PruebasOrdenes::reservasAbandonadasVencen);
+        runner.ejecutar("reservas: revertir no vuelve a reservar productos eliminados",
+                PruebasOrdenes::revertirOmiteProductosEliminados);
+        runner.ejecutar("órdenes: dos terminales con el mismo id no cobran dos veces", PruebasOrdenes::idRepetidoNoCobraDosVeces);
+        runner.ejecutar("órdenes: una factura fallida no deshace una orden cobrada",
+                PruebasOrdenes::facturaFallidaNoDeshaceElCobro);
+    }
+
+    private static void cambiarCantidadValidaStock() throws Exception {
+        Catalogo catalogo = new Catalogo(new AlmacenMemoria());
+        Producto arroz = new Producto("A1", "Arroz", 1250.0, 10);
+        catalogo.agregarProducto(arroz);
+        GestionOrdenes gestion = new GestionOrdenes(catalogo, new FabricaPagos());
+        Orden primera = new Orden("ORD-1", CLIENTE, new PagoDePrueba(new AtomicInteger(), () -> { }));
+        Orden segunda = new Orden("ORD-2", CLIENTE, new PagoDePrueba(new AtomicInteger(), () -> { }));
+
+        gestion.agregarItemAOrden(primera, "A1", 4);
+        gestion.cambiarCantidadItem(primera, "A1", 7);
+        verificarIgual(7, gestion.getReservas().reservado("A1"), "Se reservan las unidades sumadas");
+        verificarIgual(875_000L, primera.getSubtotalCentavos(), "Subtotal con la nueva cantidad");
+
+        gestion.agregarItemAOrden(segunda, "A1", 3);
+        verificarLanza(StockInsuficienteException.class, () -> gestion.cambiarCantidadItem(primera, "A1", 8),
+                "Más de lo disponible sin reservar");
+        verificarIgual(7, primera.getItem("A1").getCantidad(), "La cantidad no cambia");
+        verificarIgual(10, gestion.getReservas().reservado("A1"), "La reserva no cambia");
+
+        gestion.cambiarCantidadItem(primera, "A1", 2);
+        verificarIgual(5, gestion.getReservas().reservado("A1"), "Se liberan las unidades quitadas");
+        verificarIgual(250_000L, primera.getSubtotalCentavos(), "Subtotal al bajar la cantidad");
+
+        // La orden sola también valida contra el stock, sin importar lo ya reservado
+        verificarLanza(StockInsuficienteException.class, () -> primera.cambiarCantidad(arroz, 11), "Más que el stock");
+        verificarLanza(IllegalArgumentException.class,
+                () -> primera.cambiarCantidad(new Producto("B2", "Frijoles", 990.0, 5), 1), "Producto fuera de la orden");
+    }
+
+    private static void confirmarSoloLoReservado() throws Exception {
+        Catalogo catalogo = new Catalogo(new AlmacenMemoria());
+        Producto arroz = new Producto("A1", "Arroz", 1250.0, 10);
+        catalogo.agregarProducto(arroz);
+        catalogo.agregarProducto(new Producto("B2", "Frijoles", 990.0, 10));
+        GestionOrdenes gestion = new GestionOrdenes(catalogo, new FabricaPagos());
+        ReservasStock reservas = gestion.getReservas();
+
+        Orden sinReserva = new Orden("ORD-1", CLIENTE, new PagoDePrueba(new AtomicInteger(), () -> { }));
+        sinReserva.agregarItem(arroz, 2); // Directo en la orden, sin reservar
+        verificarLanza(IllegalStateException.class, () -> reservas.confirmar(sinReserva), "Ítem sin reserva");
+
+        Orden deMas = new Orden("ORD-2", CLIENTE, new PagoDePrueba(new AtomicInteger(), () -> { }));
+        gestion.agregarItemAOrden(deMas, "A1", 2);
+        deMas.agregarItem(arroz, 1); // 3 en la orden, 2 reservadas
+        verificarLanza(IllegalStateException.class, () -> reservas.confirmar(deMas), "Más unidades que las reservadas");
+        verificarIgual(2, reservas.reservado("A1"), "La orden rechazada conserva su reserva");
+        verificarIgual(10, catalogo.obtenerPorCodigo("A1").getStock(), "Nada se descuenta al rechazar");
+        gestion.cancelarOrden(deMas);
+
+        Orden cubierta = new Orden("ORD-3", CLIENTE, new PagoDePrueba(new AtomicInteger(), () -> { }));
+        gestion.agregarItemAOrden(cubierta, "A1", 4);
+        gestion.cambiarCantidadItem(cubierta, "A1", 3);
+        reservas.reservar(cubierta, "B2", 2); // Reserva de un producto que no está en la orden
+        reservas.confirmar(cubierta);
+        verificarIgual(7, catalogo.obtenerPorCodigo("A1").getStock(), "Se descuentan las unidades de la orden");
+        verificarIgual(10, catalogo.obtenerPorCodigo("B2").getStock(), "Lo reservado de más no se descuenta");
+        verificarIgual(0, reservas.reservado("A1"), "Reserva confirmada");
+        verificarIgual(0, reservas.reservado("B2"), "Reserva sobrante liberada");
+    }
+
+    /**
+     * Varias terminales reservan y confirman a la vez sobre el mismo producto;
+     * algunas órdenes incluyen un producto que se eliminó después de reservarlo
+     * y deben fallar solas, sin arrastrar a las que se confirman con ellas.
+     */
+    private static void concurrenciaSinSobreventa() throws Exception {
+        final int stock = 60;
+        final int terminales = 8;
+        final int intentos = 20;
+        Catalogo catalogo = new Catalogo(new AlmacenMemoria());
+        catalogo.agregarProducto(new Producto("A1", "Arroz", 1250.0, stock));
+        catalogo.agregarProducto(new Producto("B2", "Frijoles", 990.0, 100));
+        GestionOrdenes gestion = new GestionOrdenes(catalogo, new FabricaPagos());
+        ReservasStock reservas = gestion.getReservas();
+
+        List<Orden> fallidas = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Orden orden = new Orden("MALA-" + i, CLIENTE, new PagoDePrueba(new AtomicInteger(), () -> { }));
+            gestion.agregarItemAOrden(orden, "A1", 1);
+            gestion.agregarItemAOrden(orden, "B2", 1);
+            fallidas.add(orden);
+        }
+        catalogo.eliminarProducto("B2");
+
+        AtomicInteger vendidas = new AtomicInteger();
+        AtomicInteger rechazadasPorProducto = new AtomicInteger();
+        ConcurrentLinkedQueue<Throwable> errores = new ConcurrentLinkedQueue<>();
+        CountDownLatch inicio = new CountDownLatch(1);
+        List<Thread> hilos = new ArrayList<>();
+        for (int t = 0; t < terminales; t++) {
+            final int terminal = t;
+            hilos.add(new Thread(() -> {
+                try {
+                    inicio.await();
+                    if (terminal < fallidas.size()) {
+                        Orden mala = fallidas.get(terminal);
+                        try {
+                            reservas.confirmar(mala);
+                        } catch (ProductoNoEncontradoException e) {
+                            rechazadasPorProducto.incrementAndGet();
+                            gestion.cancelarOrden(mala);
+                        }
+                    }
+                    for (int i = 0; i < intentos; i++) {
+                        Orden orden = new Orden("T" + terminal + "-" + i, CLIENTE,
+                                new PagoDePrueba(new AtomicInteger(), () -> { }));
+                        try {
+                            gestion.agregarItemAOrden(orden, "A1", 1);
+                        } catch (StockInsuficienteException e) {
+                            continue;
+                        }
+                        reservas.confirmar(orden);
+                        vendidas.incrementAndGet();
+                    }
+                } catch (Throwable e) {
+                    errores.add(e);
+                }
+            }, "terminal-" + t));
+        }
+        hilos.forEach(Thread::start);
+        inicio.countDown();
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+
+        if (!errores.isEmpty()) {
+            throw new AssertionError("Error en una terminal: " + errores.peek(), errores.peek());
+        }
+        verificarIgual(fallidas.size(), rechazadasPorProducto.get(), "Órdenes con el producto eliminado");
+        verificar(vendidas.get() > 0 && vendidas.get() <= stock, "Ventas dentro del stock: " + vendidas.get());
+        verificarIgual(stock - vendidas.get(), catalogo.obtenerPorCodigo("A1").getStock(), "Stock final");
+        verificarIgual(0, reservas.reservado("A1"), "Sin reservas colgadas");
+    }
+
+    private static void cobroFallidoDevuelveElStock() throws Exception {
+        Path carpeta = carpetaTemporal("ordenes");
+        Catalogo catalogo = new Catalogo(new AlmacenMemoria());
+        catalogo.agregarProducto(new Producto("A1", "Arroz", 1250.0, 10));
+        try (RegistroOrdenes registro = new RegistroOrdenes(carpeta.resolve("registro"), 1 << 20,
+                new CifradorAES(CLAVE), new IndiceCiego(CLAVE))) {
+            GestionOrdenes gestion = new GestionOrdenes(catalogo, new FabricaPagos(), registro);
+            List<Integer> stockAlCobrar = new ArrayList<>();
+            EstrategiaPago rechazaUnaVez = new EstrategiaPago() {
+                @Override
+                public boolean procesarPago(double monto) {
+                    stockAlCobrar.add(catalogo.obtenerPorCodigo("A1").getStock());
+                    return stockAlCobrar.size() > 1;
+                }
+
+                @Override
+                public String getMetodo() {
+                    return "prueba";
+                }
+            };
+            Orden orden = new Orden("ORD-1", CLIENTE, rechazaUnaVez);
+            gestion.agregarItemAOrden(orden, "A1", 2);
+
+            verificarLanza(PagoInvalidoException.class,
+                    () -> gestion.finalizarOrden(orden, carpeta.resolve("ORD-1.txt").toString()), "Cobro rechazado");
+            verificarIgual(8, stockAlCobrar.get(0), "El stock ya estaba descontado al cobrar");
+            verificarIgual(10, catalogo.obtenerPorCodigo("A1").getStock(), "El stock vuelve al catálogo");
+            verificarIgual(2, gestion.getReservas().reservado("A1"), "La orden conserva su reserva");
+            verificarIgual(8, gestion.getReservas().disponible("A1"), "Las unidades siguen apartadas");
+            verificarIgual(0, registro.tamano(), "La orden no se registra");
+
+            gestion.finalizarOrden(orden, carpeta.resolve("ORD-1.txt").toString()); // Reintento con el mismo id
+            verificarIgual(8, catalogo.obtenerPorCodigo("A1").getStock(), "Stock tras el cobro");
+            verificarIgual(0, gestion.getReservas().reservado("A1"), "Reserva confirmada");
+            verificarIgual(1, registro.tamano(), "Orden registrada");
+        }
+    }
+
+    private static void idRepetidoNoCobraDosVeces() throws Exception {
+        Path carpeta = carpetaTemporal("ordenes");
+        Catalogo catalogo = new Catalogo(new AlmacenMemoria());
+        catalogo.agregarProducto(new Producto("A1", "Arroz", 1250.0, 10));
+        try (RegistroOrdenes registro = new RegistroOrdenes(carpeta.resolve("registro"), 1 << 20,
+                new CifradorAES(CLAVE), new IndiceCiego(CLAVE))) {
+            GestionOrdenes gestion = new GestionOrdenes(catalogo, new FabricaPagos(), registro);
+            AtomicInteger cobros = new AtomicInteger();
+            CountDownLatch cobrando = new CountDownLatch(1);
+            CountDownLatch seguir = new CountDownLatch(1);
+            EstrategiaPago lento = new PagoDePrueba(cobros, () -> {
+                cobrando.countDown();
+                seguir.await();
+            });
+
+            Orden primera = new Orden("ORD-1", CLIENTE, lento);
+            gestion.agregarItemAOrden(primera, "A1", 2);
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            Thread terminal = new Thread(() -> {
+                try {
+                    gestion.finalizarOrden(primera, carpeta.resolve("ORD-1-a.txt").toString());
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            });
+            terminal.start();
+            cobrando.await(); // La primera terminal está cobrando
+
+            Orden segunda = new Orden("ORD-1", CLIENTE, new PagoDePrueba(cobros, () -> { }));
+            gestion.agregarItemAOrden(segunda, "A1", 1);
+            verificarLanza(IllegalArgumentException.class,
+                    () -> gestion.finalizarOrden(segunda, carpeta.resolve("ORD-1-b.txt").toString()),
+                    "Segunda orden con el mismo id");
+            seguir.countDown();
+            terminal.join();
+
+            verificar(error.get() == null, "La primera orden se finaliza: " + error.get());
+            verificarIgual(1, cobros.get(), "Cobros");
+            verificarIgual(1, registro.tamano(), "Órdenes registradas");
+            verificarIgual(8, catalogo.obtenerPorCodigo("A1").getStock(), "Stock descontado una vez");
+        }
+    }
+
+    private static void reservasAbandonadasVencen() throws Exception {
+        Catalogo catalogo = new Catalogo(new AlmacenMemoria());
+        catalogo.agregarProducto(new Producto("A1", "Arroz", 1250.0, 10));
+        ReservasStock reservas = new ReservasStock(catalogo, 200);
+        try {
+            Orden abandonada = new Orden("ORD-1", CLIENTE, new PagoDePrueba(new AtomicInteger(), () -> { }));
+            Orden activa = new Orden("ORD-2", CLIENTE, new PagoDePrueba(new AtomicInteger(), () -> { }));
+            reservas.reservar(abandonada, "A1", 6);
+            verificarLanza(StockInsuficienteException.class, () -> reservas.reservar(activa, "A1", 5), "Sin vencer");
+
+            long limite = System.currentTimeMillis() + 5_000;
+            while (reservas.reservado("A1") > 0 && System.currentTimeMillis() < limite) {
+                Thread.sleep(20);
+            }
+            verificarIgual(0, reservas.reservado("A1"), "La reserva abandonada vence");
+            reservas.reservar(activa, "A1", 5);
+            abandonada.agregarItem(catalogo.obtenerPorCodigo("A1"), 6);
+            verificarLanza(IllegalStateException.class, () -> reservas.confirmar(abandonada), "Confirmar una orden vencida");
+            verificarIgual(5, reservas.reservado("A1"), "La reserva activa sigue");
+            verificarIgual(10, catalogo.obtenerPorCodigo("A1").getStock(), "Nada se descontó");
+        } finally {
+            reservas.cerrar();
+        }
+    }
+
+    private static void revertirOmiteProductosEliminados() throws Exception {
+        Catalogo catalogo = new Catalogo(new AlmacenMemoria());
+        catalogo.agregarProducto(new Producto("A1", "Arroz", 1250.0, 10));
+        catalogo.agregarProducto(new Producto("B2", "Frijoles", 990.0, 10));
+        GestionOrdenes gestion = new GestionOrdenes(catalogo, new FabricaPagos());
+        ReservasStock reservas = gestion.getReservas();
+        Orden orden = new Orden("ORD-1", CLIENTE, new PagoDePrueba(new AtomicInteger(), () -> { }));
+        gestion.agregarItemAOrden(orden, "A1", 2);
+        gestion.agregarItemAOrden(orden, "B2", 3);
+
+        reservas.confirmar(orden);
+        catalogo.eliminarProducto("B2");
+        reservas.revertir(orden);
+        verificarIgual(2, reservas.reservado("A1"), "A1 vuelve a quedar reservado");
+        verificarIgual(0, reservas.reservado("B2"), "B2 eliminado no queda reservado");
+        verificarIgual(10, catalogo.obtenerPorCodigo("A1").getStock(), "Stock de A1 devuelto");
+
+        gestion.cancelarOrden(orden);
+        verificarIgual(0, reservas.reservado("A1"), "Cancelar suelta todo");
+        verificarIgual(0, reservas.reservado("B2"), "Sin reservas negativas");
+    }
+
+    private static void facturaFallidaNoDeshaceElCobro() throws Exception {
+        Path carpeta = carpetaTemporal("ordenes");
+        Catalogo catalogo = new Catalogo(new AlmacenMemoria());
+        catalogo.agregarProducto(new Producto("A1", "Arroz", 1250.0, 10));
+        try (RegistroOrdenes registro = new RegistroOrdenes(carpeta.resolve("registro"), 1 << 20,
+                new CifradorAES(CLAVE), new IndiceCiego(CLAVE))) {
+            GestionOrdenes gestion = new GestionOrdenes(catalogo, new FabricaPagos(), registro);
+            AtomicInteger cobros = new AtomicInteger();
+            Orden orden = new Orden("ORD-1", CLIENTE, new PagoDePrueba(cobros, () -> { }));
+            gestion.agregarItemAOrden(orden, "A1", 2);
+
+            String sinCarpeta = carpeta.resolve("no-existe").resolve("ORD-1.txt").toString();
+            OrdenCobradaException error = verificarLanza(OrdenCobradaException.class,
+                    () -> gestion.finalizarOrden(orden, sinCarpeta), "La factura no se puede escribir");
+            verificarIgual("ORD-1", error.getIdOrden(), "Id de la orden cobrada");
+            verificarIgual(1, cobros.get(), "Cobros");
+            verificar(registro.contiene("ORD-1"), "La orden cobrada queda registrada");
+            verificarIgual(8, catalogo.obtenerPorCodigo("A1").getStock(), "El stock sigue descontado");
+
+            Orden otra = new Orden("ORD-1", CLIENTE, new PagoDePrueba(cobros, () -> { }));
+            gestion.agregarItemAOrden(otra, "A1", 1);
+            verificarLanza(IllegalArgumentException.class,
+                    () -> gestion.finalizarOrden(otra, carpeta.resolve("ORD-1-b.txt").toString()), "El id no se libera");
+
+            Path factura = carpeta.resolve("ORD-1.txt");
+            gestion.reintentarCierre(orden, factura.toString());
+            verificar(Files.exists(factura), "El reintento genera la factura");
+            verificarIgual(1, registro.tamano(), "El reintento no registra otra vez");
+            verificarIgual(1, cobros.get(), "El reintento no cobra otra vez");
+        }
+    }
+
+    private static void totalesEnCentavos() throws Exception {
+        Orden orden = new Orden("ORD-1", CLIENTE, new PagoDePrueba(new AtomicInteger(), () -> { }));
+        orden.agregarItem(new Producto("A1", "Arroz", 1250.0, 10), 3);
+        orden.agregarItem(new Producto("C3", "Café", 3199.99, 10), 2);
+        for (int i = 0; i < 3; i++) {
+            orden.agregarItem(new Producto("G4", "Chicle", 0.10, 10), 1); // 0.1 * 3 no es exacto en double
+        }
+        orden.setDescuento(10);
+
+        verificarIgual(3, orden.getItems().size(), "Una línea por producto");
+        verificarIgual(1_015_028L, orden.getSubtotalCentavos(), "Subtotal");
+        verificarIgual(101_503L, orden.getDescuentoCentavos(), "Descuento redondeado al centavo");
+        verificarIgual(118_758L, orden.getImpuestoCentavos(), "Impuesto sobre el monto descontado");
+        verificarIgual(1_032_283L, orden.getTotalCentavos(), "Total");
+        verificarIgual(10322.83, orden.calcularTotal(), "Total en colones");
+    }
+
+    private static void desbordeNoCambiaLaOrden() throws Exception {
+        Orden orden = new Orden("ORD-1", CLIENTE, new PagoDePrueba(new AtomicInteger(), () -> { }));
+        orden.agregarItemRegistrado(new Producto("A1", "Caro", 1e16, 0), 1); // 10^18 centavos
+        long total = orden.getTotalCentavos();
+
+        verificarLanza(ArithmeticException.class, () -> orden.agregarItemRegistrado(
+                new Producto("A1", "Caro", 1e16, 0), 9), "Cantidad que desborda la línea");
+        verificarIgual(1, orden.getItem("A1").getCantidad(), "La línea conserva su cantidad");
+        verificarLanza(ArithmeticException.class, () -> orden.agregarItemRegistrado(
+                new Producto("B2", "Más caro", 9e16, 0), 1), "Línea nueva que desborda el subtotal");
+        verificarIgual(1, orden.getItems().size(), "La línea nueva no se agrega");
+        verificar(orden.getItem("B2") == null, "La línea nueva no queda indexada");
+        verificarLanza(ArithmeticException.class, () -> orden.setImpuesto(10), "Impuesto que desborda el total");
+        verificarIgual(0.13, orden.getImpuesto(), "El impuesto no cambia");
+        verificarIgual(total, orden.getTotalCentavos(), "Total sin cambios");
+        verificarIgual(1_000_000_000_000_000_000L, orden.getSubtotalCentavos(), "Subtotal sin cambios");
+    }
+
+    /**
+     * Pago que cuenta los cobros y puede detenerse en medio del cobro.
+     */
+    static class PagoDePrueba implements EstrategiaPago {
+        private final AtomicInteger cobros;
+        private final MiniTestRunner.Prueba alCobrar;
+
+        PagoDePrueba(AtomicInteger cobros, MiniTestRunner.Prueba alCobrar) {
+            this.cobros = cobros;
+            this.alCobrar = alCobrar;
+        }
+
+        @Override
+        public boolean procesarPago(double monto) {
+            try {
+                alCobrar.ejecutar();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            cobros.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public String getMetodo() {
+            return "prueba";
+        }
+    }
+}
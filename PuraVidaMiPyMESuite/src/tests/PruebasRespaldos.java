@@ -0,0 +1,83 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package tests;
+
+import static tests.MiniTestRunner.*;
+
+import data.backups;
+import domain.Producto;
+import infrastructure.AlmacenBinario;
+import infrastructure.AlmacenRegistrosFijos;
+import infrastructure.CifradorAES;
+import infrastructure.IndiceCiego;
+import infrastructure.RegistroOrdenes;
+import infrastructure.RepositorioCSV;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ *
+ * @author Emesis
+ */
+/**
+ * Pruebas de los respaldos incrementales.
+ */
+class PruebasRespaldos {
+
+    static void registrar(MiniTestRunner runner) {
+        runner.ejecutar("respaldos: los orígenes por defecto cubren todos los almacenes",
+                PruebasRespaldos::origenesCubrenLosAlmacenes);
+    }
+
+    private static void origenesCubrenLosAlmacenes() throws Exception {
+        Path base = carpetaTemporal("respaldos");
+        Path datos = base.resolve("data");
+        Producto arroz = new Producto("A1", "Arroz", 1250.0, 10);
+
+        // Cada almacén deja sus archivos, incluido un journal apartado a mitad de compactar
+        RepositorioCSV csv = new RepositorioCSV(datos.resolve("inventario.csv"));
+        csv.guardarProductos(List.of(arroz));
+        csv.registrarStock("A1", 9);
+        csv.rotarJournal();
+        csv.registrarStock("A1", 8);
+        csv.cerrarJournal();
+        AlmacenBinario binario = new AlmacenBinario(datos.resolve("inventario.bin"));
+        binario.guardarProductos(List.of(arroz));
+        binario.registrarStock("A1", 7);
+        binario.cerrarJournal();
+        AlmacenRegistrosFijos fijos = new AlmacenRegistrosFijos(datos.resolve("inventario.dat"));
+        fijos.guardarProductos(List.of(arroz));
+        fijos.cerrarJournal();
+        new RegistroOrdenes(datos.resolve("ordenes"), 1 << 20,
+                new CifradorAES("clave-de-pruebas"), new IndiceCiego("clave-de-pruebas")).close();
+        Files.createDirectories(base.resolve("facturas"));
+        Files.writeString(base.resolve("facturas").resolve("ORD-1.txt"), "=== FACTURA ===\n");
+
+        Set<String> escritos = archivos(base);
+        verificar(escritos.contains("data/inventario.journal.1"), "Journal apartado presente");
+        backups respaldos = new backups(base, carpetaTemporal("destino"), backups.ORIGENES_POR_DEFECTO);
+        try {
+            String instantanea = respaldos.respaldar().getInstantanea();
+            Path restaurado = carpetaTemporal("restaurado");
+            respaldos.restaurar(instantanea, restaurado);
+            verificarIgual(escritos, archivos(restaurado), "Archivos respaldados");
+        } finally {
+            respaldos.detener();
+        }
+    }
+
+    private static Set<String> archivos(Path raiz) throws Exception {
+        try (Stream<Path> contenido = Files.walk(raiz)) {
+            return contenido.filter(Files::isRegularFile)
+                    .map(p -> raiz.relativize(p).toString().replace('\\', '/'))
+                    .collect(Collectors.toCollection(TreeSet::new));
+        }
+    }
+}
@@ -9,7 +9,9 @@ package ui;
  * @author TheJPlay2006
  */
 
+import application.CambioCatalogo;
 import application.Catalogo;
+import application.DespachadorCambiosCatalogo;
 import application.ObservadorCatalogo;
 import domain.Producto;
 import exception.ProductoNoEncontradoException;
@@ -17,7 +19,10 @@ import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 
 public class CatalogoPanel extends JPanel implements ObservadorCatalogo {
     private Catalogo catalogo;
@@ -25,10 +30,13 @@ public class CatalogoPanel extends JPanel implements ObservadorCatalogo {
     private DefaultTableModel modelo;
     private JTextField txtCodigo, txtNombre, txtPrecio, txtStock;
     private JButton btnAgregar, btnEditar, btnEliminar, btnBuscar;
+    private final Map<String, Integer> filasPorCodigo = new HashMap<>();
+    private boolean vistaCompleta;
 
     public CatalogoPanel(Catalogo catalogo) {
         this.catalogo = catalogo;
-        this.catalogo.agregarObservador(this);
+        // Los cambios llegan agrupados por cuadro y en el hilo de Swing
+        this.catalogo.agregarObservador(new DespachadorCambiosCatalogo(this, 16, SwingUtilities::invokeLater));
         setLayout(new BorderLayout());
 
         // Formulario
@@ -145,17 +153,38 @@ public class CatalogoPanel extends JPanel implements ObservadorCatalogo {
         if (nombre != null && !nombre.isEmpty()) {
             List<Producto> resultados = catalogo.buscarPorNombre(nombre);
             actualizarTabla(resultados);
+            vistaCompleta = false;
         }
     }
 
     private void cargarTabla() {
-        actualizarTabla(catalogo.getProductos());
+        actualizarTabla(catalogo.getInstantanea());
+        vistaCompleta = true;
     }
 
     private void actualizarTabla(List<Producto> productos) {
         modelo.setRowCount(0);
         for (Producto p : productos) {
-            modelo.addRow(new Object[]{p.getCodigo(), p.getNombre(), p.getPrecio(), p.getStock()});
+            modelo.addRow(filaDe(p));
+        }
+        reindexarFilas();
+    }
+
+    private Object[] filaDe(Producto p) {
+        return new Object[]{p.getCodigo(), p.getNombre(), p.getPrecio(), p.getStock()};
+    }
+
+    private void reindexarFilas() {
+        filasPorCodigo.clear();
+        reindexarFilas(0);
+    }
+
+    /**
+     * Renumera las filas desde la dada; las anteriores no se movieron.
+     */
+    private void reindexarFilas(int desde) {
+        for (int i = desde; i < modelo.getRowCount(); i++) {
+            filasPorCodigo.put((String) modelo.getValueAt(i, 0), i);
         }
     }
 
@@ -164,11 +193,58 @@ public class CatalogoPanel extends JPanel implements ObservadorCatalogo {
         txtNombre.setText("");
         txtPrecio.setText("");
         txtStock.setText("");
-        cargarTabla();
     }
 
     @Override
     public void catalogoActualizado() {
-        SwingUtilities.invokeLater(this::cargarTabla);
+        if (SwingUtilities.isEventDispatchThread()) {
+            cargarTabla();
+        } else {
+            SwingUtilities.invokeLater(this::cargarTabla);
+        }
+    }
+
+    /**
+     * Aplica solo las filas afectadas. Si la tabla muestra una búsqueda o el lote
+     * es grande, sale más barato recargar la vista completa.
+     */
+    @Override
+    public void catalogoCambiado(List<CambioCatalogo> cambios) {
+        if (!vistaCompleta || cambios.size() > modelo.getRowCount() / 2) {
+            catalogoActualizado();
+            return;
+        }
+        // Las filas eliminadas se quitan juntas al final: quitarlas una por una
+        // obligaría a renumerar todas las siguientes por cada baja
+        TreeSet<Integer> eliminadas = new TreeSet<>();
+        for (CambioCatalogo cambio : cambios) {
+            Integer fila = filasPorCodigo.get(cambio.getCodigo());
+            switch (cambio.getTipo()) {
+                case AGREGADO, ACTUALIZADO -> {
+                    Object[] valores = filaDe(cambio.getNuevo());
+                    if (fila == null) {
+                        modelo.addRow(valores);
+                        filasPorCodigo.put(cambio.getCodigo(), modelo.getRowCount() - 1);
+                    } else {
+                        for (int col = 1; col < valores.length; col++) {
+                            modelo.setValueAt(valores[col], fila, col);
+                        }
+                    }
+                }
+                case ELIMINADO -> {
+                    if (fila != null) {
+                        filasPorCodigo.remove(cambio.getCodigo());
+                        eliminadas.add(fila);
+                    }
+                }
+            }
+        }
+        for (int fila : eliminadas.descendingSet()) {
+            modelo.removeRow(fila);
+        }
+        if (!eliminadas.isEmpty()) {
+            reindexarFilas(eliminadas.first());
+            tabla.clearSelection();
+        }
     }
 }
\ No newline at end of file
@@ -10,6 +10,7 @@ import application.FabricaPagos;
 import domain.Cliente;
 import domain.Orden;
 import domain.ItemOrden;
+import exception.OrdenCobradaException;
 import exception.PagoInvalidoException;
 import exception.StockInsuficienteException;
 import javax.swing.*;
@@ -26,6 +27,8 @@ public class OrdenesPanel extends JPanel {
     private JComboBox<String> comboPago;
     private JTextArea areaResumen;
     private JButton btnAgregarItem, btnAplicarDescuento, btnFinalizar;
+    private Orden ordenActual; // Orden abierta de esta terminal (con stock reservado)
+    private Orden ordenCobrada; // Cobrada pero sin registrar o facturar: "Finalizar" completa su cierre
 
     public OrdenesPanel(GestionOrdenes gestionOrdenes, Catalogo catalogo) {
         this.gestionOrdenes = gestionOrdenes;
@@ -96,7 +99,12 @@ public class OrdenesPanel extends JPanel {
             Cliente cliente = new Cliente(cedula, "Temporal", "N/A", "N/A");
             String tipoPago = (String) comboPago.getSelectedItem();
 
+            if (ordenActual != null) {
+                gestionOrdenes.cancelarOrden(ordenActual); // Libera el stock reservado
+                ordenActual = null;
+            }
             Orden orden = gestionOrdenes.crearOrden(id, cliente, tipoPago);
+            ordenActual = orden;
 
             String codigo = txtCodigoProducto.getText();
             int cantidad = Integer.parseInt(txtCantidad.getText());
@@ -133,9 +141,22 @@ public class OrdenesPanel extends JPanel {
 
     private void finalizarOrden(ActionEvent e) {
         try {
+            if (ordenCobrada != null) {
+                gestionOrdenes.reintentarCierre(ordenCobrada, "facturas/" + ordenCobrada.getId() + ".txt");
+                ordenCobrada = null;
+                JOptionPane.showMessageDialog(this, "Orden finalizada. Factura generada.");
+                return;
+            }
             String ruta = "facturas/" + txtId.getText() + ".txt";
-            gestionOrdenes.finalizarOrden(null, ruta); // Aquí deberías pasar la orden real
+            gestionOrdenes.finalizarOrden(ordenActual, ruta);
+            ordenActual = null;
             JOptionPane.showMessageDialog(this, "Orden finalizada. Factura generada.");
+        } catch (OrdenCobradaException ex) {
+            if (ordenCobrada == null) {
+                ordenCobrada = ordenActual;
+                ordenActual = null;
+            }
+            JOptionPane.showMessageDialog(this, ex.getMessage());
         } catch (Exception ex) {
             JOptionPane.showMessageDialog(this, "Error al finalizar: " + ex.getMessage());
         }